@@ -51,6 +51,7 @@ public class RequestConfig implements Cloneable {
     private final int connectionRequestTimeout;
     private final int connectTimeout;
     private final int socketTimeout;
+    private final int priority;
 
     RequestConfig(
             final boolean expectContinueEnabled,
@@ -67,7 +68,8 @@ public class RequestConfig implements Cloneable {
             final Collection<String> proxyPreferredAuthSchemes,
             final int connectionRequestTimeout,
             final int connectTimeout,
-            final int socketTimeout) {
+            final int socketTimeout,
+            final int priority) {
         super();
         this.expectContinueEnabled = expectContinueEnabled;
         this.proxy = proxy;
@@ -84,6 +86,7 @@ public class RequestConfig implements Cloneable {
         this.connectionRequestTimeout = connectionRequestTimeout;
         this.connectTimeout = connectTimeout;
         this.socketTimeout = socketTimeout;
+        this.priority = priority;
     }
 
     /**
@@ -137,8 +140,18 @@ public class RequestConfig implements Cloneable {
      * should be used only when appropriate. For performance critical
      * operations this check should be disabled.
      * <p/>
-     * Default: <code>true</code>
+     * Default: <code>false</code>. The connection managers shipped with
+     * HttpClient validate connections that have been idle for a while
+     * themselves; custom connection managers that do not should enable
+     * this check explicitly.
+     *
+     * @deprecated (4.3.5) Use
+     *   {@link original.apache.http.impl.conn.PoolingHttpClientConnectionManager#getValidateAfterInactivity()}
+     *   or
+     *   {@link original.apache.http.impl.conn.BasicHttpClientConnectionManager#getValidateAfterInactivity()}
+     *   to validate only connections that have been idle for a while.
      */
+    @Deprecated
     public boolean isStaleConnectionCheckEnabled() {
         return staleConnectionCheckEnabled;
     }
@@ -263,6 +276,22 @@ public class RequestConfig implements Cloneable {
         return socketTimeout;
     }
 
+    /**
+     * Returns the priority with which a connection is requested from the
+     * connection manager. Pending requests of a higher priority get
+     * connections first. Requests of a priority above zero may also use
+     * the connections the pooling connection manager reserves for them.
+     * <p/>
+     * Default: <code>0</code>
+     *
+     * @see original.apache.http.impl.conn.PoolingHttpClientConnectionManager#setDefaultPriorityReserve(int)
+     *
+     * @since 4.3.5
+     */
+    public int getPriority() {
+        return priority;
+    }
+
     @Override
     protected RequestConfig clone() throws CloneNotSupportedException {
         return (RequestConfig) super.clone();
@@ -286,6 +315,7 @@ public class RequestConfig implements Cloneable {
         builder.append(", connectionRequestTimeout=").append(connectionRequestTimeout);
         builder.append(", connectTimeout=").append(connectTimeout);
         builder.append(", socketTimeout=").append(socketTimeout);
+        builder.append(", priority=").append(priority);
         builder.append("]");
         return builder.toString();
     }
@@ -310,7 +340,8 @@ public class RequestConfig implements Cloneable {
             .setProxyPreferredAuthSchemes(config.getProxyPreferredAuthSchemes())
             .setConnectionRequestTimeout(config.getConnectionRequestTimeout())
             .setConnectTimeout(config.getConnectTimeout())
-            .setSocketTimeout(config.getSocketTimeout());
+            .setSocketTimeout(config.getSocketTimeout())
+            .setPriority(config.getPriority());
     }
 
     public static class Builder {
@@ -330,10 +361,11 @@ public class RequestConfig implements Cloneable {
         private int connectionRequestTimeout;
         private int connectTimeout;
         private int socketTimeout;
+        private int priority;
 
         Builder() {
             super();
-            this.staleConnectionCheckEnabled = true;
+            this.staleConnectionCheckEnabled = false;
             this.redirectsEnabled = true;
             this.maxRedirects = 50;
             this.relativeRedirectsAllowed = true;
@@ -358,6 +390,11 @@ public class RequestConfig implements Cloneable {
             return this;
         }
 
+        /**
+         * @deprecated (4.3.5) Use
+         *   {@link original.apache.http.impl.conn.PoolingHttpClientConnectionManager#setValidateAfterInactivity(int)}
+         */
+        @Deprecated
         public Builder setStaleConnectionCheckEnabled(final boolean staleConnectionCheckEnabled) {
             this.staleConnectionCheckEnabled = staleConnectionCheckEnabled;
             return this;
@@ -418,6 +455,14 @@ public class RequestConfig implements Cloneable {
             return this;
         }
 
+        /**
+         * @since 4.3.5
+         */
+        public Builder setPriority(final int priority) {
+            this.priority = priority;
+            return this;
+        }
+
         public RequestConfig build() {
             return new RequestConfig(
                     expectContinueEnabled,
@@ -434,7 +479,8 @@ public class RequestConfig implements Cloneable {
                     proxyPreferredAuthSchemes,
                     connectionRequestTimeout,
                     connectTimeout,
-                    socketTimeout);
+                    socketTimeout,
+                    priority);
         }
 
     }
@@ -32,6 +32,7 @@ import original.apache.http.HttpException;
 import original.apache.http.HttpRequest;
 import original.apache.http.HttpRequestInterceptor;
 import original.apache.http.annotation.Immutable;
+import original.apache.http.message.EncodedHeader;
 import original.apache.http.protocol.HttpContext;
 
 /**
@@ -46,6 +47,8 @@ import original.apache.http.protocol.HttpContext;
 @Immutable
 public class RequestAcceptEncoding implements HttpRequestInterceptor {
 
+    private static final EncodedHeader ACCEPT_ENCODING = new EncodedHeader("Accept-Encoding", "gzip,deflate");
+
     /**
      * Adds the header {@code "Accept-Encoding: gzip,deflate"} to the request.
      */
@@ -55,7 +58,7 @@ public class RequestAcceptEncoding implements HttpRequestInterceptor {
 
         /* Signal support for Accept-Encoding transfer encodings. */
         if (!request.containsHeader("Accept-Encoding")) {
-            request.addHeader("Accept-Encoding", "gzip,deflate");
+            request.addHeader(ACCEPT_ENCODING);
         }
     }
 
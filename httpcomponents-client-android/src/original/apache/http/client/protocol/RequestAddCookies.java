@@ -120,15 +120,6 @@ public class RequestAddCookies implements HttpRequestInterceptor {
             return;
         }
 
-        final RequestConfig config = clientContext.getRequestConfig();
-        String policy = config.getCookieSpec();
-        if (policy == null) {
-            policy = CookieSpecs.BEST_MATCH;
-        }
-        if (Logger.isLoggable(TAG, Logger.DEBUG)) {
-            Logger.d(TAG, "CookieSpec selected: " + policy);
-        }
-
         URI requestURI = null;
         if (request instanceof HttpUriRequest) {
             requestURI = ((HttpUriRequest) request).getURI();
@@ -151,14 +142,17 @@ public class RequestAddCookies implements HttpRequestInterceptor {
                 !TextUtils.isEmpty(path) ? path : "/",
                 route.isSecure());
 
-        // Get an instance of the selected cookie policy
-        final CookieSpecProvider provider = registry.lookup(policy);
-        if (provider == null) {
-            throw new HttpException("Unsupported cookie policy: " + policy);
-        }
-        final CookieSpec cookieSpec = provider.create(clientContext);
         // Get all cookies available in the HTTP state
         final List<Cookie> cookies = new ArrayList<Cookie>(cookieStore.getCookies());
+        if (cookies.isEmpty()) {
+            // Nothing to match, leave creating the cookie spec to the
+            // response interceptor in case the response sets a cookie
+            context.removeAttribute(HttpClientContext.COOKIE_SPEC);
+            context.setAttribute(HttpClientContext.COOKIE_ORIGIN, cookieOrigin);
+            return;
+        }
+        // Get an instance of the selected cookie policy
+        final CookieSpec cookieSpec = createCookieSpec(registry, clientContext);
         // Find cookies matching the given origin
         final List<Cookie> matchedCookies = new ArrayList<Cookie>();
         final Date now = new Date();
@@ -208,4 +202,22 @@ public class RequestAddCookies implements HttpRequestInterceptor {
         context.setAttribute(HttpClientContext.COOKIE_ORIGIN, cookieOrigin);
     }
 
+    static CookieSpec createCookieSpec(
+            final Lookup<CookieSpecProvider> registry,
+            final HttpClientContext clientContext) throws HttpException {
+        final RequestConfig config = clientContext.getRequestConfig();
+        String policy = config.getCookieSpec();
+        if (policy == null) {
+            policy = CookieSpecs.BEST_MATCH;
+        }
+        if (Logger.isLoggable(TAG, Logger.DEBUG)) {
+            Logger.d(TAG, "CookieSpec selected: " + policy);
+        }
+        final CookieSpecProvider provider = registry.lookup(policy);
+        if (provider == null) {
+            throw new HttpException("Unsupported cookie policy: " + policy);
+        }
+        return provider.create(clientContext);
+    }
+
 }
@@ -36,6 +36,8 @@ import original.apache.http.HttpRequest;
 import original.apache.http.HttpRequestInterceptor;
 import original.apache.http.annotation.Immutable;
 import original.apache.http.client.params.ClientPNames;
+import original.apache.http.message.BasicHeader;
+import original.apache.http.message.EncodedHeader;
 import original.apache.http.protocol.HttpContext;
 import original.apache.http.util.Args;
 
@@ -48,14 +50,24 @@ import original.apache.http.util.Args;
 @Immutable
 public class RequestDefaultHeaders implements HttpRequestInterceptor {
 
-    private final Collection<? extends Header> defaultHeaders;
+    private final Header[] defaultHeaders;
 
     /**
      * @since 4.3
      */
     public RequestDefaultHeaders(final Collection<? extends Header> defaultHeaders) {
         super();
-        this.defaultHeaders = defaultHeaders;
+        if (defaultHeaders != null) {
+            // Plain headers are encoded once here rather than for every request
+            this.defaultHeaders = new Header[defaultHeaders.size()];
+            int i = 0;
+            for (final Header header : defaultHeaders) {
+                this.defaultHeaders[i++] = header.getClass() == BasicHeader.class ?
+                        new EncodedHeader(header) : header;
+            }
+        } else {
+            this.defaultHeaders = null;
+        }
     }
 
     public RequestDefaultHeaders() {
@@ -73,16 +85,17 @@ public class RequestDefaultHeaders implements HttpRequestInterceptor {
 
         // Add default headers
         @SuppressWarnings("unchecked")
-        Collection<? extends Header> defHeaders = (Collection<? extends Header>)
+        final Collection<? extends Header> defHeaders = (Collection<? extends Header>)
             request.getParams().getParameter(ClientPNames.DEFAULT_HEADERS);
-        if (defHeaders == null) {
-            defHeaders = this.defaultHeaders;
-        }
 
         if (defHeaders != null) {
             for (final Header defHeader : defHeaders) {
                 request.addHeader(defHeader);
             }
+        } else if (this.defaultHeaders != null) {
+            for (final Header defHeader : this.defaultHeaders) {
+                request.addHeader(defHeader);
+            }
         }
     }
 
@@ -38,9 +38,11 @@ import original.apache.http.HttpResponse;
 import original.apache.http.HttpResponseInterceptor;
 import original.apache.http.annotation.Immutable;
 import original.apache.http.client.CookieStore;
+import original.apache.http.config.Lookup;
 import original.apache.http.cookie.Cookie;
 import original.apache.http.cookie.CookieOrigin;
 import original.apache.http.cookie.CookieSpec;
+import original.apache.http.cookie.CookieSpecProvider;
 import original.apache.http.cookie.MalformedCookieException;
 import original.apache.http.cookie.SM;
 import original.apache.http.protocol.HttpContext;
@@ -68,14 +70,6 @@ public class ResponseProcessCookies implements HttpResponseInterceptor {
 
         final HttpClientContext clientContext = HttpClientContext.adapt(context);
 
-        // Obtain actual CookieSpec instance
-        final CookieSpec cookieSpec = clientContext.getCookieSpec();
-        if (cookieSpec == null) {
-            if (Logger.isLoggable(TAG, Logger.DEBUG)) {
-                Logger.d(TAG, "Cookie spec not specified in HTTP context");
-            }
-            return;
-        }
         // Obtain cookie store
         final CookieStore cookieStore = clientContext.getCookieStore();
         if (cookieStore == null) {
@@ -92,6 +86,21 @@ public class ResponseProcessCookies implements HttpResponseInterceptor {
             }
             return;
         }
+        // Obtain actual CookieSpec instance, created here if the request
+        // carried no cookie
+        CookieSpec cookieSpec = clientContext.getCookieSpec();
+        if (cookieSpec == null) {
+            final Lookup<CookieSpecProvider> registry = clientContext.getCookieSpecRegistry();
+            if (registry == null || !(response.containsHeader(SM.SET_COOKIE)
+                    || response.containsHeader(SM.SET_COOKIE2))) {
+                if (Logger.isLoggable(TAG, Logger.DEBUG)) {
+                    Logger.d(TAG, "Cookie spec not specified in HTTP context");
+                }
+                return;
+            }
+            cookieSpec = RequestAddCookies.createCookieSpec(registry, clientContext);
+            context.setAttribute(HttpClientContext.COOKIE_SPEC, cookieSpec);
+        }
         HeaderIterator it = response.headerIterator(SM.SET_COOKIE);
         processCookies(it, cookieSpec, cookieOrigin, cookieStore);
 
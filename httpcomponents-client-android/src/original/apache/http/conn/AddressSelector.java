@@ -0,0 +1,74 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.conn;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+import original.apache.http.HttpHost;
+
+/**
+ * Strategy deciding in which order the resolved addresses of a host are
+ * tried when a new connection is opened. The outcome of each connection
+ * attempt is reported back, so that implementations may take the health
+ * of individual addresses into account.
+ *
+ * @since 4.3.5
+ */
+public interface AddressSelector {
+
+    /**
+     * Returns the addresses to connect to, in the order they should be
+     * tried.
+     *
+     * @param host the host the addresses have been resolved for.
+     * @param addresses the resolved addresses. Must not be modified.
+     * @return the addresses to try, not necessarily all of the given ones,
+     *   but at least one.
+     */
+    InetAddress[] select(HttpHost host, InetAddress[] addresses);
+
+    /**
+     * Reports a TCP connection established to the given address, whether or
+     * not TLS could be layered over it afterwards.
+     *
+     * @param address the address connected to.
+     * @param millis the time it took to set up the TCP connection in
+     *   milliseconds.
+     */
+    void connected(InetAddress address, long millis);
+
+    /**
+     * Reports a failed attempt to set up a TCP connection to the given
+     * address.
+     *
+     * @param address the address that could not be connected to.
+     * @param cause the cause of the failure.
+     */
+    void failed(InetAddress address, IOException cause);
+
+}
@@ -0,0 +1,51 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.conn;
+
+import original.apache.http.conn.routing.HttpRoute;
+
+/**
+ * {@link HttpClientConnectionManager} that serves connection requests by
+ * priority. Pending requests of a higher priority get connections first.
+ *
+ * @since 4.3.5
+ */
+public interface PriorityHttpClientConnectionManager extends HttpClientConnectionManager {
+
+    /**
+     * Returns a new {@link ConnectionRequest} served with the given priority.
+     * Requests of priority <code>0</code> are served as requests made with
+     * {@link #requestConnection(HttpRoute, Object)}.
+     *
+     * @param route HTTP route of the requested connection.
+     * @param state expected state of the connection or <code>null</code>
+     *              if the connection is not expected to carry any state.
+     * @param priority priority of the request.
+     */
+    ConnectionRequest requestConnection(HttpRoute route, Object state, int priority);
+
+}
@@ -0,0 +1,95 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.conn.socket;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import original.apache.http.HttpHost;
+import original.apache.http.annotation.ThreadSafe;
+import original.apache.http.protocol.HttpContext;
+
+/**
+ * {@link LayeredConnectionSocketFactory} that creates the actual factory
+ * the first time a socket is asked for, so that clients never connecting
+ * to a secure route do not pay for setting up TLS.
+ * <p/>
+ * The actual factory can be obtained with {@link #getDelegate()}, for
+ * instance to get at the settings and statistics of an
+ * {@link original.apache.http.conn.ssl.SSLConnectionSocketFactory}.
+ *
+ * @since 4.3.5
+ */
+@ThreadSafe
+public abstract class LazyLayeredConnectionSocketFactory implements LayeredConnectionSocketFactory {
+
+    private volatile LayeredConnectionSocketFactory socketFactory;
+
+    protected abstract LayeredConnectionSocketFactory create();
+
+    /**
+     * Returns the actual factory, creating it if need be.
+     */
+    public LayeredConnectionSocketFactory getDelegate() {
+        LayeredConnectionSocketFactory sf = this.socketFactory;
+        if (sf == null) {
+            synchronized (this) {
+                sf = this.socketFactory;
+                if (sf == null) {
+                    sf = create();
+                    this.socketFactory = sf;
+                }
+            }
+        }
+        return sf;
+    }
+
+    public Socket createSocket(final HttpContext context) throws IOException {
+        return getDelegate().createSocket(context);
+    }
+
+    public Socket connectSocket(
+            final int connectTimeout,
+            final Socket sock,
+            final HttpHost host,
+            final InetSocketAddress remoteAddress,
+            final InetSocketAddress localAddress,
+            final HttpContext context) throws IOException {
+        return getDelegate().connectSocket(
+                connectTimeout, sock, host, remoteAddress, localAddress, context);
+    }
+
+    public Socket createLayeredSocket(
+            final Socket socket,
+            final String target,
+            final int port,
+            final HttpContext context) throws IOException {
+        return getDelegate().createLayeredSocket(socket, target, port, context);
+    }
+
+}
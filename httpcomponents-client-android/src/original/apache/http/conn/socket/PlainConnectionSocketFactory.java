@@ -30,6 +30,7 @@ package original.apache.http.conn.socket;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 
 import original.apache.http.HttpHost;
 import original.apache.http.annotation.Immutable;
@@ -37,6 +38,11 @@ import original.apache.http.protocol.HttpContext;
 
 /**
  * The default class for creating plain (unencrypted) sockets.
+ * <p/>
+ * Sockets backed by a {@link SocketChannel} may be requested with
+ * {@link #PlainConnectionSocketFactory(boolean)}. They let connections check
+ * for staleness with a non-blocking read instead of waiting for a read
+ * timeout.
  *
  * @since 4.3
  */
@@ -49,12 +55,28 @@ public class PlainConnectionSocketFactory implements ConnectionSocketFactory {
         return INSTANCE;
     }
 
-    public PlainConnectionSocketFactory() {
+    private final boolean channels;
+
+    /**
+     * Creates a socket factory.
+     *
+     * @param channels whether to create sockets backed by a {@link SocketChannel},
+     *   which connections created with a {@link original.apache.http.impl.io.DirectBufferPool}
+     *   do their I/O on directly.
+     *
+     * @since 4.3.5
+     */
+    public PlainConnectionSocketFactory(final boolean channels) {
         super();
+        this.channels = channels;
+    }
+
+    public PlainConnectionSocketFactory() {
+        this(false);
     }
 
     public Socket createSocket(final HttpContext context) throws IOException {
-        return new Socket();
+        return this.channels ? SocketChannel.open().socket() : new Socket();
     }
 
     public Socket connectSocket(
@@ -0,0 +1,171 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.conn.socket;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import original.apache.http.HttpHost;
+import original.apache.http.annotation.ThreadSafe;
+import original.apache.http.protocol.HttpContext;
+import original.apache.http.util.Args;
+
+/**
+ * Socket factory connecting to selected hosts through Unix domain sockets
+ * rather than TCP, for instance to reach a local proxy without going
+ * through the TCP stack.
+ * <p>
+ * Hosts are mapped to the addresses of socket files, or of sockets in the
+ * abstract namespace. Connections to hosts without a mapping are delegated
+ * to another factory, by default {@link PlainConnectionSocketFactory}, so
+ * that this factory can be registered in place of the plain one:
+ * <pre>
+ * UnixDomainConnectionSocketFactory sf = new UnixDomainConnectionSocketFactory();
+ * sf.register(new HttpHost("sidecar", 80), "/run/sidecar.sock");
+ * Registry&lt;ConnectionSocketFactory&gt; registry = RegistryBuilder.&lt;ConnectionSocketFactory&gt;create()
+ *     .register("http", sf)
+ *     .build();
+ * </pre>
+ * Host names of mapped hosts are not resolved. Requests still carry the
+ * host name, and connections to a mapped host are pooled and kept alive
+ * by route as usual. Connecting to a Unix domain socket does not wait,
+ * so the connect timeout does not apply.
+ * <p>
+ * As the socket to connect is created before the host is known, connecting
+ * to a mapped host with a socket from {@link #createSocket(HttpContext)}
+ * wastes a socket of the fallback factory. Callers aware of the mapping,
+ * such as the connection managers, pass <code>null</code> instead and set
+ * the socket timeout on the socket returned.
+ *
+ * @since 4.3.5
+ */
+@ThreadSafe
+public class UnixDomainConnectionSocketFactory implements ConnectionSocketFactory {
+
+    private final ConnectionSocketFactory fallback;
+    private final ConcurrentMap<String, LocalSocketAddress> addresses;
+
+    /**
+     * @param fallback factory to connect to hosts without a mapping with.
+     *   May be <code>null</code>, in which case
+     *   {@link PlainConnectionSocketFactory} is used.
+     */
+    public UnixDomainConnectionSocketFactory(final ConnectionSocketFactory fallback) {
+        super();
+        this.fallback = fallback != null ? fallback : PlainConnectionSocketFactory.INSTANCE;
+        this.addresses = new ConcurrentHashMap<String, LocalSocketAddress>();
+    }
+
+    public UnixDomainConnectionSocketFactory() {
+        this(null);
+    }
+
+    private static String getKey(final String hostname, final int port) {
+        return hostname.toLowerCase(Locale.ENGLISH) + ":" + port;
+    }
+
+    /**
+     * Maps the given host to the given socket address. A host without
+     * a port stands for all ports of the host.
+     */
+    public void register(final HttpHost host, final LocalSocketAddress address) {
+        Args.notNull(host, "HTTP host");
+        Args.notNull(address, "Socket address");
+        this.addresses.put(getKey(host.getHostName(), host.getPort()), address);
+    }
+
+    /**
+     * Maps the given host to the socket file at the given path.
+     */
+    public void register(final HttpHost host, final String path) {
+        Args.notBlank(path, "Socket path");
+        register(host, new LocalSocketAddress(path, LocalSocketAddress.Namespace.FILESYSTEM));
+    }
+
+    public void unregister(final HttpHost host) {
+        Args.notNull(host, "HTTP host");
+        this.addresses.remove(getKey(host.getHostName(), host.getPort()));
+    }
+
+    /**
+     * Returns the socket address the given host is mapped to, or
+     * <code>null</code> if connections to the host go through TCP.
+     */
+    public LocalSocketAddress getAddress(final HttpHost host) {
+        Args.notNull(host, "HTTP host");
+        LocalSocketAddress address = this.addresses.get(getKey(host.getHostName(), host.getPort()));
+        if (address == null && host.getPort() >= 0) {
+            address = this.addresses.get(getKey(host.getHostName(), -1));
+        }
+        return address;
+    }
+
+    public Socket createSocket(final HttpContext context) throws IOException {
+        return this.fallback.createSocket(context);
+    }
+
+    public Socket connectSocket(
+            final int connectTimeout,
+            final Socket socket,
+            final HttpHost host,
+            final InetSocketAddress remoteAddress,
+            final InetSocketAddress localAddress,
+            final HttpContext context) throws IOException {
+        Args.notNull(host, "HTTP host");
+        final LocalSocketAddress address = getAddress(host);
+        if (address == null) {
+            return this.fallback.connectSocket(
+                    connectTimeout, socket, host, remoteAddress, localAddress, context);
+        }
+        // Take over the timeout of the unconnected socket, if given, which is
+        // of no further use
+        int soTimeout = 0;
+        if (socket != null) {
+            soTimeout = socket.getSoTimeout();
+            socket.close();
+        }
+        final LocalSocket localSocket = new LocalSocket();
+        try {
+            localSocket.connect(address);
+            localSocket.setSoTimeout(soTimeout);
+            return new UnixDomainSocket(localSocket, address);
+        } catch (final IOException ex) {
+            try {
+                localSocket.close();
+            } catch (final IOException ignore) {
+            }
+            throw ex;
+        }
+    }
+
+}
@@ -0,0 +1,276 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.conn.socket;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketImpl;
+
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+
+/**
+ * {@link Socket} backed by a connected {@link LocalSocket}, so that a Unix
+ * domain socket can be bound to the connection classes, which expect a
+ * {@link Socket}. TCP specific options are ignored. The socket has no
+ * internet address; its remote socket address is the path of the socket
+ * file.
+ *
+ * @since 4.3.5
+ */
+class UnixDomainSocket extends Socket {
+
+    private final LocalSocket localSocket;
+    private final SocketAddress remoteAddress;
+
+    UnixDomainSocket(final LocalSocket localSocket, final LocalSocketAddress address) throws SocketException {
+        super((SocketImpl) null);
+        this.localSocket = localSocket;
+        this.remoteAddress = new PathAddress(address.getName());
+    }
+
+    @Override
+    public void connect(final SocketAddress endpoint, final int timeout) throws IOException {
+        throw new SocketException("Unix domain socket is already connected");
+    }
+
+    @Override
+    public void bind(final SocketAddress bindpoint) throws IOException {
+        throw new SocketException("Unix domain socket cannot be bound");
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return this.localSocket.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return this.localSocket.getOutputStream();
+    }
+
+    @Override
+    public void setSoTimeout(final int timeout) throws SocketException {
+        try {
+            this.localSocket.setSoTimeout(timeout);
+        } catch (final SocketException ex) {
+            throw ex;
+        } catch (final IOException ex) {
+            throw new SocketException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public int getSoTimeout() throws SocketException {
+        try {
+            return this.localSocket.getSoTimeout();
+        } catch (final SocketException ex) {
+            throw ex;
+        } catch (final IOException ex) {
+            throw new SocketException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public void setSendBufferSize(final int size) throws SocketException {
+        try {
+            this.localSocket.setSendBufferSize(size);
+        } catch (final SocketException ex) {
+            throw ex;
+        } catch (final IOException ex) {
+            throw new SocketException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public int getSendBufferSize() throws SocketException {
+        try {
+            return this.localSocket.getSendBufferSize();
+        } catch (final SocketException ex) {
+            throw ex;
+        } catch (final IOException ex) {
+            throw new SocketException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public void setReceiveBufferSize(final int size) throws SocketException {
+        try {
+            this.localSocket.setReceiveBufferSize(size);
+        } catch (final SocketException ex) {
+            throw ex;
+        } catch (final IOException ex) {
+            throw new SocketException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public int getReceiveBufferSize() throws SocketException {
+        try {
+            return this.localSocket.getReceiveBufferSize();
+        } catch (final SocketException ex) {
+            throw ex;
+        } catch (final IOException ex) {
+            throw new SocketException(ex.getMessage());
+        }
+    }
+
+    @Override
+    public void setTcpNoDelay(final boolean on) {
+    }
+
+    @Override
+    public boolean getTcpNoDelay() {
+        return false;
+    }
+
+    @Override
+    public void setKeepAlive(final boolean on) {
+    }
+
+    @Override
+    public boolean getKeepAlive() {
+        return false;
+    }
+
+    @Override
+    public void setReuseAddress(final boolean on) {
+    }
+
+    @Override
+    public boolean getReuseAddress() {
+        return false;
+    }
+
+    @Override
+    public void setSoLinger(final boolean on, final int linger) {
+    }
+
+    @Override
+    public int getSoLinger() {
+        return -1;
+    }
+
+    @Override
+    public InetAddress getInetAddress() {
+        return null;
+    }
+
+    @Override
+    public InetAddress getLocalAddress() {
+        return null;
+    }
+
+    @Override
+    public int getPort() {
+        return -1;
+    }
+
+    @Override
+    public int getLocalPort() {
+        return -1;
+    }
+
+    @Override
+    public SocketAddress getRemoteSocketAddress() {
+        return this.remoteAddress;
+    }
+
+    @Override
+    public SocketAddress getLocalSocketAddress() {
+        return this.remoteAddress;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return this.localSocket.isConnected();
+    }
+
+    @Override
+    public boolean isBound() {
+        return this.localSocket.isConnected();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return this.localSocket.isClosed();
+    }
+
+    @Override
+    public boolean isInputShutdown() {
+        return this.localSocket.isInputShutdown();
+    }
+
+    @Override
+    public boolean isOutputShutdown() {
+        return this.localSocket.isOutputShutdown();
+    }
+
+    @Override
+    public void shutdownInput() throws IOException {
+        this.localSocket.shutdownInput();
+    }
+
+    @Override
+    public void shutdownOutput() throws IOException {
+        this.localSocket.shutdownOutput();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.localSocket.close();
+    }
+
+    @Override
+    public String toString() {
+        return "UnixDomainSocket[path=" + this.remoteAddress + "]";
+    }
+
+    static class PathAddress extends SocketAddress {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String path;
+
+        PathAddress(final String path) {
+            super();
+            this.path = path;
+        }
+
+        @Override
+        public String toString() {
+            return this.path;
+        }
+
+    }
+
+}
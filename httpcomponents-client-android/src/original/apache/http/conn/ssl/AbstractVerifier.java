@@ -85,6 +85,9 @@ public abstract class AbstractVerifier implements X509HostnameVerifier {
 
     private final static String TAG = "HttpClient";
 
+    static final int SUBJECT_ALT_DNS = 2;
+    static final int SUBJECT_ALT_IP = 7;
+
     public AbstractVerifier() {
         super();
     }
@@ -151,6 +154,11 @@ public abstract class AbstractVerifier implements X509HostnameVerifier {
 
     public final void verify(final String host, final X509Certificate cert)
           throws SSLException {
+        final HostnameVerificationCache cache = getVerificationCache();
+        if (cache != null) {
+            cache.verify(this, host, cert);
+            return;
+        }
         final String[] cns = getCNs(cert);
         final String[] subjectAlts = getSubjectAlts(cert, host);
         verify(host, cns, subjectAlts);
@@ -248,6 +256,14 @@ public abstract class AbstractVerifier implements X509HostnameVerifier {
         return Arrays.binarySearch(BAD_COUNTRY_2LDS, parts[1]) < 0;
     }
 
+    /**
+     * Returns the cache of verification results to use, or <code>null</code>
+     * if results are not to be cached.
+     */
+    HostnameVerificationCache getVerificationCache() {
+        return null;
+    }
+
     boolean validCountryWildcard(final String cn) {
         final String parts[] = cn.split("\\.");
         if (parts.length != 3 || parts[2].length() != 2) {
@@ -293,15 +309,13 @@ public abstract class AbstractVerifier implements X509HostnameVerifier {
      * @param hostname
      * @return Array of SubjectALT DNS or IP names stored in the certificate.
      */
-    private static String[] getSubjectAlts(
+    static String[] getSubjectAlts(
             final X509Certificate cert, final String hostname) {
-        final int subjectType;
-        if (isIPAddress(hostname)) {
-            subjectType = 7;
-        } else {
-            subjectType = 2;
-        }
+        return getSubjectAlts(cert, isIPAddress(hostname) ? SUBJECT_ALT_IP : SUBJECT_ALT_DNS);
+    }
 
+    static String[] getSubjectAlts(
+            final X509Certificate cert, final int subjectType) {
         final LinkedList<String> subjectAltList = new LinkedList<String>();
         Collection<List<?>> c = null;
         try {
@@ -361,7 +375,7 @@ public abstract class AbstractVerifier implements X509HostnameVerifier {
         return count;
     }
 
-    private static boolean isIPAddress(final String hostname) {
+    static boolean isIPAddress(final String hostname) {
         return hostname != null &&
             (InetAddressUtils.isIPv4Address(hostname) ||
                     InetAddressUtils.isIPv6Address(hostname));
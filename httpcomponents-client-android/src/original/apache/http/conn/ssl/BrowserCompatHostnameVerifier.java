@@ -47,6 +47,8 @@ import original.apache.http.annotation.Immutable;
 @Immutable
 public class BrowserCompatHostnameVerifier extends AbstractVerifier {
 
+    private final HostnameVerificationCache cache = new HostnameVerificationCache();
+
     public final void verify(
             final String host,
             final String[] cns,
@@ -59,6 +61,11 @@ public class BrowserCompatHostnameVerifier extends AbstractVerifier {
         return true;
     }
 
+    @Override
+    HostnameVerificationCache getVerificationCache() {
+        return this.cache;
+    }
+
     @Override
     public final String toString() {
         return "BROWSER_COMPATIBLE";
@@ -0,0 +1,150 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.conn.ssl;
+
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.net.ssl.SSLException;
+
+import original.apache.http.annotation.GuardedBy;
+import original.apache.http.annotation.ThreadSafe;
+
+/**
+ * Bounded cache of hostname verification results.
+ * <p/>
+ * Certificates are identified by their encoded form, which is what
+ * {@link java.security.cert.Certificate#equals(Object)} compares and
+ * providers hash once per certificate, rather than by a digest that
+ * would have to be computed for every connection. For each
+ * certificate the names to check against are extracted once, and the
+ * outcome of verifying a host name against them is kept, so that
+ * connections to a host presenting a known certificate skip both the
+ * parsing and the matching. Only verifiers whose outcome depends on
+ * the host name and the certificate names alone may use the cache.
+ *
+ * @since 4.3.5
+ */
+@ThreadSafe
+class HostnameVerificationCache {
+
+    private static final int MAX_CERTIFICATES = 100;
+    private static final int MAX_HOSTS_PER_CERTIFICATE = 100;
+
+    @GuardedBy("this")
+    private final Map<X509Certificate, CertificateEntry> certificates;
+
+    HostnameVerificationCache() {
+        super();
+        this.certificates = new LinkedHashMap<X509Certificate, CertificateEntry>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<X509Certificate, CertificateEntry> eldest) {
+                return size() > MAX_CERTIFICATES;
+            }
+
+        };
+    }
+
+    void verify(
+            final AbstractVerifier verifier,
+            final String host,
+            final X509Certificate cert) throws SSLException {
+        CertificateEntry entry;
+        synchronized (this) {
+            entry = this.certificates.get(cert);
+        }
+        if (entry == null) {
+            entry = new CertificateEntry(cert);
+            synchronized (this) {
+                this.certificates.put(cert, entry);
+            }
+        }
+        Outcome outcome = entry.outcomes.get(host);
+        if (outcome == null) {
+            try {
+                verifier.verify(host, entry.cns,
+                        AbstractVerifier.isIPAddress(host) ? entry.ipSubjectAlts : entry.dnsSubjectAlts);
+                outcome = Outcome.VERIFIED;
+            } catch (final SSLException ex) {
+                outcome = new Outcome(false,
+                        ex.getMessage() != null ? ex.getMessage() : "Hostname verification failed");
+            }
+            if (entry.outcomes.size() < MAX_HOSTS_PER_CERTIFICATE) {
+                entry.outcomes.put(host, outcome);
+            }
+        }
+        if (!outcome.verified) {
+            throw new SSLException(outcome.message);
+        }
+    }
+
+    synchronized void clear() {
+        this.certificates.clear();
+    }
+
+    static class CertificateEntry {
+
+        final String[] cns;
+        final String[] dnsSubjectAlts;
+        final String[] ipSubjectAlts;
+        final ConcurrentMap<String, Outcome> outcomes;
+
+        CertificateEntry(final X509Certificate cert) {
+            super();
+            this.cns = AbstractVerifier.getCNs(cert);
+            this.dnsSubjectAlts = AbstractVerifier.getSubjectAlts(cert, AbstractVerifier.SUBJECT_ALT_DNS);
+            this.ipSubjectAlts = AbstractVerifier.getSubjectAlts(cert, AbstractVerifier.SUBJECT_ALT_IP);
+            this.outcomes = new ConcurrentHashMap<String, Outcome>();
+        }
+
+    }
+
+    /**
+     * Outcome of verifying a host name, failures keeping their message.
+     */
+    static class Outcome {
+
+        static final Outcome VERIFIED = new Outcome(true, null);
+
+        final boolean verified;
+        final String message;
+
+        Outcome(final boolean verified, final String message) {
+            super();
+            this.verified = verified;
+            this.message = message;
+        }
+
+    }
+
+}
@@ -35,6 +35,7 @@ import org.kman.apache.http.logging.Logger;
 import original.apache.http.conn.ssl.X509HostnameVerifier;
 
 import original.apache.http.HttpHost;
+import original.apache.http.annotation.GuardedBy;
 import original.apache.http.annotation.ThreadSafe;
 import original.apache.http.conn.socket.LayeredConnectionSocketFactory;
 import original.apache.http.protocol.HttpContext;
@@ -43,11 +44,17 @@ import original.apache.http.util.TextUtils;
 
 import javax.net.SocketFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocket;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Layered socket factory for TLS/SSL connections.
@@ -119,6 +126,15 @@ import java.net.Socket;
  *      </p>
  *     </li>
  *   </ul>
+ * <p>
+ * Sockets are always created with the target host name and port, so that
+ * the SSL provider can resume a session established with the same host
+ * earlier. The factory keeps track of the latest session of each host and
+ * port, and invalidates sessions older than the session time to live as
+ * well as those of the least recently connected hosts beyond the session
+ * cache size. Handshake times, the number of full and abbreviated
+ * handshakes and the negotiated protocol and cipher suite are recorded per
+ * host and port for as many hosts, see {@link #getHandshakeStats(String, int)}.
  *
  * @since 4.0
  */
@@ -140,6 +156,16 @@ public class SSLConnectionSocketFactory implements LayeredConnectionSocketFactor
     public static final X509HostnameVerifier STRICT_HOSTNAME_VERIFIER
         = new StrictHostnameVerifier();
 
+    /**
+     * @since 4.3.5
+     */
+    public static final int DEFAULT_SESSION_CACHE_SIZE = 100;
+
+    /**
+     * @since 4.3.5
+     */
+    public static final long DEFAULT_SESSION_TIME_TO_LIVE = 3600000;
+
     /**
      * Obtains default SSL socket factory with an SSL context based on the standard JSSE
      * trust material (<code>cacerts</code> file in the security properties directory).
@@ -181,6 +207,11 @@ public class SSLConnectionSocketFactory implements LayeredConnectionSocketFactor
     private final X509HostnameVerifier hostnameVerifier;
     private final String[] supportedProtocols;
     private final String[] supportedCipherSuites;
+    private final SessionCache sessionCache;
+    private final HandshakeRecords handshakeRecords;
+    private final HandshakeRecord totalHandshakeRecord;
+    private volatile boolean adjustSessionContext;
+    private volatile SSLSessionContext sessionContext;
 
     public SSLConnectionSocketFactory(final SSLContext sslContext) {
         this(sslContext, BROWSER_COMPATIBLE_HOSTNAME_VERIFIER);
@@ -216,6 +247,110 @@ public class SSLConnectionSocketFactory implements LayeredConnectionSocketFactor
         this.supportedProtocols = supportedProtocols;
         this.supportedCipherSuites = supportedCipherSuites;
         this.hostnameVerifier = hostnameVerifier != null ? hostnameVerifier : BROWSER_COMPATIBLE_HOSTNAME_VERIFIER;
+        this.sessionCache = new SessionCache(DEFAULT_SESSION_CACHE_SIZE, DEFAULT_SESSION_TIME_TO_LIVE);
+        this.handshakeRecords = new HandshakeRecords(DEFAULT_SESSION_CACHE_SIZE);
+        this.totalHandshakeRecord = new HandshakeRecord();
+    }
+
+    /**
+     * Sets the maximum number of hosts whose sessions are kept for
+     * resumption. The sessions of the least recently connected hosts
+     * beyond this number are invalidated. Handshake statistics are kept
+     * for as many hosts.
+     * <p/>
+     * A session may only be resumed for as long as the session context of
+     * the SSL provider keeps it as well, see
+     * {@link #setAdjustSessionContext(boolean)}.
+     *
+     * @since 4.3.5
+     */
+    public void setSessionCacheSize(final int size) {
+        Args.positive(size, "Session cache size");
+        this.sessionCache.setMaxSize(size);
+        this.handshakeRecords.setMaxSize(size);
+        this.sessionContext = null;
+    }
+
+    /**
+     * @since 4.3.5
+     */
+    public int getSessionCacheSize() {
+        return this.sessionCache.getMaxSize();
+    }
+
+    /**
+     * Sets the time a session may be resumed for after it has been
+     * established by a full handshake.
+     *
+     * @since 4.3.5
+     */
+    public void setSessionTimeToLive(final long timeToLive, final TimeUnit tunit) {
+        Args.positive(timeToLive, "Session time to live");
+        Args.notNull(tunit, "Time unit");
+        this.sessionCache.setTimeToLive(tunit.toMillis(timeToLive));
+        this.sessionContext = null;
+    }
+
+    /**
+     * Returns the session time to live in milliseconds.
+     *
+     * @since 4.3.5
+     */
+    public long getSessionTimeToLive() {
+        return this.sessionCache.getTimeToLive();
+    }
+
+    /**
+     * Sets whether the session context of the SSL provider is to be made to
+     * keep at least as many sessions for at least as long as this factory
+     * does. Disabled by default.
+     * <p/>
+     * Note that the session context is shared by all sockets created with
+     * the same {@link SSLContext}, which for the default context means all
+     * SSL sockets of the process. Its cache size and session timeout are
+     * only ever increased, never reset.
+     *
+     * @since 4.3.5
+     */
+    public void setAdjustSessionContext(final boolean adjustSessionContext) {
+        this.adjustSessionContext = adjustSessionContext;
+        this.sessionContext = null;
+    }
+
+    /**
+     * @since 4.3.5
+     */
+    public boolean isAdjustSessionContext() {
+        return this.adjustSessionContext;
+    }
+
+    /**
+     * Invalidates all sessions kept for resumption.
+     *
+     * @since 4.3.5
+     */
+    public void clearSessionCache() {
+        this.sessionCache.clear();
+    }
+
+    /**
+     * Returns the handshake statistics of the given host and port.
+     *
+     * @since 4.3.5
+     */
+    public SSLHandshakeStats getHandshakeStats(final String host, final int port) {
+        Args.notNull(host, "Host name");
+        final HandshakeRecord record = this.handshakeRecords.get(host + ":" + port);
+        return record != null ? record.getStats() : new SSLHandshakeStats(0, 0, 0, null, null);
+    }
+
+    /**
+     * Returns the handshake statistics of all hosts.
+     *
+     * @since 4.3.5
+     */
+    public SSLHandshakeStats getTotalHandshakeStats() {
+        return this.totalHandshakeRecord.getStats();
     }
 
     /**
@@ -257,8 +392,7 @@ public class SSLConnectionSocketFactory implements LayeredConnectionSocketFactor
         // Setup SSL layering if necessary
         if (sock instanceof SSLSocket) {
             final SSLSocket sslsock = (SSLSocket) sock;
-            sslsock.startHandshake();
-            verifyHostname(sslsock, host.getHostName());
+            handshake(sslsock, host.getHostName(), remoteAddress.getPort());
             return sock;
         } else {
             return createLayeredSocket(sock, host.getHostName(), remoteAddress.getPort(), context);
@@ -295,9 +429,53 @@ public class SSLConnectionSocketFactory implements LayeredConnectionSocketFactor
         }
         // End of Android specific code
 
+        handshake(sslsock, target, port);
+        return sslsock;
+    }
+
+    private void handshake(final SSLSocket sslsock, final String target, final int port) throws IOException {
+        final String key = target + ":" + port;
+        this.sessionCache.expire(key);
+        final long start = System.currentTimeMillis();
         sslsock.startHandshake();
+        final long elapsed = System.currentTimeMillis() - start;
+        final SSLSession session = sslsock.getSession();
+        // A resumed session was created by the handshake it is resumed from
+        final boolean resumed = session.getCreationTime() < start;
+        this.handshakeRecords.obtain(key).handshake(elapsed, resumed, session);
+        this.totalHandshakeRecord.handshake(elapsed, resumed, session);
+        if (Logger.isLoggable(TAG, Logger.DEBUG)) {
+            Logger.d(TAG, (resumed ? "Abbreviated" : "Full") + " handshake with " + key
+                    + " in " + elapsed + " ms: " + session.getProtocol() + " " + session.getCipherSuite());
+        }
         verifyHostname(sslsock, target);
-        return sslsock;
+        if (this.adjustSessionContext) {
+            configureSessionContext(session);
+        }
+        this.sessionCache.put(key, session);
+    }
+
+    /**
+     * Makes sure the session context of the provider keeps at least as many
+     * sessions for at least as long as this factory does.
+     */
+    private void configureSessionContext(final SSLSession session) {
+        final SSLSessionContext context = session.getSessionContext();
+        if (context == null || context == this.sessionContext) {
+            return;
+        }
+        final int size = this.sessionCache.getMaxSize();
+        final int cacheSize = context.getSessionCacheSize();
+        if (cacheSize != 0 && cacheSize < size) {
+            context.setSessionCacheSize(size);
+        }
+        final int timeout = (int) Math.min(Integer.MAX_VALUE,
+                TimeUnit.MILLISECONDS.toSeconds(this.sessionCache.getTimeToLive()));
+        final int sessionTimeout = context.getSessionTimeout();
+        if (sessionTimeout != 0 && sessionTimeout < timeout) {
+            context.setSessionTimeout(timeout);
+        }
+        this.sessionContext = context;
     }
 
     X509HostnameVerifier getHostnameVerifier() {
@@ -310,9 +488,165 @@ public class SSLConnectionSocketFactory implements LayeredConnectionSocketFactor
             // verifyHostName() didn't blowup - good!
         } catch (final IOException iox) {
             // close the socket before re-throwing the exception
+            // do not let the session be resumed without verification
+            sslsock.getSession().invalidate();
             try { sslsock.close(); } catch (final Exception x) { /*ignore*/ }
             throw iox;
         }
     }
 
+    /**
+     * Latest session of each host and port, in order of last use.
+     */
+    static class SessionCache {
+
+        @GuardedBy("this")
+        private final LinkedHashMap<String, SSLSession> sessions;
+        @GuardedBy("this")
+        private int maxSize;
+        @GuardedBy("this")
+        private long timeToLive;
+
+        SessionCache(final int maxSize, final long timeToLive) {
+            super();
+            this.sessions = new LinkedHashMap<String, SSLSession>(16, 0.75f, true);
+            this.maxSize = maxSize;
+            this.timeToLive = timeToLive;
+        }
+
+        synchronized int getMaxSize() {
+            return this.maxSize;
+        }
+
+        synchronized void setMaxSize(final int maxSize) {
+            this.maxSize = maxSize;
+            trim();
+        }
+
+        synchronized long getTimeToLive() {
+            return this.timeToLive;
+        }
+
+        synchronized void setTimeToLive(final long timeToLive) {
+            this.timeToLive = timeToLive;
+        }
+
+        /**
+         * Invalidates the session of the given host and port if it has
+         * outlived the time to live, forcing a full handshake.
+         */
+        synchronized void expire(final String key) {
+            final SSLSession session = this.sessions.get(key);
+            if (session != null
+                    && System.currentTimeMillis() - session.getCreationTime() > this.timeToLive) {
+                this.sessions.remove(key);
+                session.invalidate();
+            }
+        }
+
+        synchronized void put(final String key, final SSLSession session) {
+            if (session.isValid()) {
+                this.sessions.put(key, session);
+                trim();
+            }
+        }
+
+        private void trim() {
+            final Iterator<Map.Entry<String, SSLSession>> it = this.sessions.entrySet().iterator();
+            while (this.sessions.size() > this.maxSize && it.hasNext()) {
+                final SSLSession session = it.next().getValue();
+                it.remove();
+                session.invalidate();
+            }
+        }
+
+        synchronized void clear() {
+            for (final SSLSession session: this.sessions.values()) {
+                session.invalidate();
+            }
+            this.sessions.clear();
+        }
+
+    }
+
+    /**
+     * Handshake records of the most recently connected hosts and ports.
+     */
+    static class HandshakeRecords {
+
+        @GuardedBy("this")
+        private final LinkedHashMap<String, HandshakeRecord> records;
+        @GuardedBy("this")
+        private int maxSize;
+
+        HandshakeRecords(final int maxSize) {
+            super();
+            this.records = new LinkedHashMap<String, HandshakeRecord>(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        synchronized void setMaxSize(final int maxSize) {
+            this.maxSize = maxSize;
+            trim();
+        }
+
+        synchronized HandshakeRecord get(final String key) {
+            return this.records.get(key);
+        }
+
+        /**
+         * Returns the record of the given host and port, creating it if need
+         * be.
+         */
+        synchronized HandshakeRecord obtain(final String key) {
+            HandshakeRecord record = this.records.get(key);
+            if (record == null) {
+                record = new HandshakeRecord();
+                this.records.put(key, record);
+                trim();
+            }
+            return record;
+        }
+
+        private void trim() {
+            final Iterator<String> it = this.records.keySet().iterator();
+            while (this.records.size() > this.maxSize && it.hasNext()) {
+                it.next();
+                it.remove();
+            }
+        }
+
+    }
+
+    static class HandshakeRecord {
+
+        @GuardedBy("this")
+        private long fullHandshakes;
+        @GuardedBy("this")
+        private long abbreviatedHandshakes;
+        @GuardedBy("this")
+        private long handshakeTime;
+        @GuardedBy("this")
+        private String protocol;
+        @GuardedBy("this")
+        private String cipherSuite;
+
+        synchronized void handshake(final long millis, final boolean resumed, final SSLSession session) {
+            if (resumed) {
+                this.abbreviatedHandshakes++;
+            } else {
+                this.fullHandshakes++;
+            }
+            this.handshakeTime += millis;
+            this.protocol = session.getProtocol();
+            this.cipherSuite = session.getCipherSuite();
+        }
+
+        synchronized SSLHandshakeStats getStats() {
+            return new SSLHandshakeStats(this.fullHandshakes, this.abbreviatedHandshakes,
+                    this.handshakeTime, this.protocol, this.cipherSuite);
+        }
+
+    }
+
 }
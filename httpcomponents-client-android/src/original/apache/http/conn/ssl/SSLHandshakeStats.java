@@ -0,0 +1,125 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.conn.ssl;
+
+import original.apache.http.annotation.Immutable;
+
+/**
+ * TLS handshake statistics of a host.
+ * <p>
+ * A handshake is abbreviated when it resumes a session established by an
+ * earlier full handshake, sparing the key exchange and certificate
+ * verification.
+ * </p>
+ *
+ * @since 4.3.5
+ */
+@Immutable
+public class SSLHandshakeStats {
+
+    private final long fullHandshakes;
+    private final long abbreviatedHandshakes;
+    private final long handshakeTime;
+    private final String protocol;
+    private final String cipherSuite;
+
+    public SSLHandshakeStats(
+            final long fullHandshakes,
+            final long abbreviatedHandshakes,
+            final long handshakeTime,
+            final String protocol,
+            final String cipherSuite) {
+        super();
+        this.fullHandshakes = fullHandshakes;
+        this.abbreviatedHandshakes = abbreviatedHandshakes;
+        this.handshakeTime = handshakeTime;
+        this.protocol = protocol;
+        this.cipherSuite = cipherSuite;
+    }
+
+    /**
+     * Gets the number of handshakes that established a new session.
+     */
+    public long getFullHandshakes() {
+        return this.fullHandshakes;
+    }
+
+    /**
+     * Gets the number of handshakes that resumed an existing session.
+     */
+    public long getAbbreviatedHandshakes() {
+        return this.abbreviatedHandshakes;
+    }
+
+    /**
+     * Gets the time spent in handshakes in milliseconds.
+     */
+    public long getHandshakeTime() {
+        return this.handshakeTime;
+    }
+
+    /**
+     * Gets the average time of a handshake in milliseconds, or
+     * <code>0</code> if there was no handshake yet.
+     */
+    public long getAverageHandshakeTime() {
+        final long count = this.fullHandshakes + this.abbreviatedHandshakes;
+        return count > 0 ? this.handshakeTime / count : 0;
+    }
+
+    /**
+     * Gets the protocol negotiated by the latest handshake.
+     */
+    public String getProtocol() {
+        return this.protocol;
+    }
+
+    /**
+     * Gets the cipher suite negotiated by the latest handshake.
+     */
+    public String getCipherSuite() {
+        return this.cipherSuite;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[full: ");
+        buffer.append(this.fullHandshakes);
+        buffer.append("; abbreviated: ");
+        buffer.append(this.abbreviatedHandshakes);
+        buffer.append("; time: ");
+        buffer.append(this.handshakeTime);
+        buffer.append("; protocol: ");
+        buffer.append(this.protocol);
+        buffer.append("; cipher suite: ");
+        buffer.append(this.cipherSuite);
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+}
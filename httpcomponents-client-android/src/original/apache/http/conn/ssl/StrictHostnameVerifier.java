@@ -54,6 +54,8 @@ import original.apache.http.annotation.Immutable;
 @Immutable
 public class StrictHostnameVerifier extends AbstractVerifier {
 
+    private final HostnameVerificationCache cache = new HostnameVerificationCache();
+
     public final void verify(
             final String host,
             final String[] cns,
@@ -61,6 +63,11 @@ public class StrictHostnameVerifier extends AbstractVerifier {
         verify(host, cns, subjectAlts, true);
     }
 
+    @Override
+    HostnameVerificationCache getVerificationCache() {
+        return this.cache;
+    }
+
     @Override
     public final String toString() {
         return "STRICT";
@@ -28,11 +28,13 @@
 package original.apache.http.impl.client;
 
 import java.io.Closeable;
+import java.io.IOException;
 import java.net.ProxySelector;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLSocketFactory;
@@ -71,9 +73,11 @@ import original.apache.http.config.SocketConfig;
 import original.apache.http.conn.ConnectionKeepAliveStrategy;
 import original.apache.http.conn.HttpClientConnectionManager;
 import original.apache.http.conn.SchemePortResolver;
+import original.apache.http.conn.routing.HttpRoute;
 import original.apache.http.conn.routing.HttpRoutePlanner;
 import original.apache.http.conn.socket.ConnectionSocketFactory;
 import original.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import original.apache.http.conn.socket.LazyLayeredConnectionSocketFactory;
 import original.apache.http.conn.socket.PlainConnectionSocketFactory;
 import original.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import original.apache.http.conn.ssl.X509HostnameVerifier;
@@ -108,7 +112,6 @@ import original.apache.http.protocol.RequestContent;
 import original.apache.http.protocol.RequestTargetHost;
 import original.apache.http.protocol.RequestUserAgent;
 import original.apache.http.util.TextUtils;
-import original.apache.http.util.VersionInfo;
 import android.net.SSLCertificateSocketFactory;
 
 /**
@@ -191,6 +194,14 @@ public class HttpClientBuilder {
     private boolean cookieManagementDisabled;
     private boolean authCachingDisabled;
     private boolean connectionStateDisabled;
+    private boolean evictExpiredConnections;
+    private boolean evictIdleConnections;
+    private long maxIdleTime;
+    private TimeUnit maxIdleTimeUnit;
+    private List<HttpRoute> prewarmRoutes;
+    private int prewarmCount;
+    private long prewarmTimeout;
+    private TimeUnit prewarmTimeUnit;
 
     private int maxConnTotal = 0;
     private int maxConnPerRoute = 0;
@@ -198,19 +209,12 @@ public class HttpClientBuilder {
     private List<Closeable> closeables;
     
     /*
-     * kman: put this in a nested class so it's not initialized on demand (very slow),
-     * and hopefully not at all if the client app supplied a user agent
-     */
-    private static class DefaultUserAgent {
-		static final String DEFAULT_USER_AGENT;
-		static {
-			final VersionInfo vi = VersionInfo.loadVersionInfo
-					("original.apache.http.client", HttpClientBuilder.class.getClassLoader());
-			final String release = (vi != null) ?
-					vi.getRelease() : VersionInfo.UNAVAILABLE;
-			DEFAULT_USER_AGENT = "Apache-HttpClient/" + release + " (java 1.5)";
-		}
-	}
+     * kman: a compile time constant rather than loaded with VersionInfo, which
+     * reads a resource from the class path (very slow) that this port does not
+     * package anyway
+     */
+    private static final String RELEASE = "4.3.5";
+    private static final String DEFAULT_USER_AGENT = "Apache-HttpClient/" + RELEASE + " (java 1.5)";
     
     public static final String NO_USER_AGENT = new String(); 
 
@@ -652,6 +656,68 @@ public class HttpClientBuilder {
         return this;
     }
 
+    /**
+     * Makes this instance of HttpClient proactively evict expired connections from the
+     * connection pool using a background thread.
+     * <p/>
+     * One MUST explicitly close HttpClient with {@link CloseableHttpClient#close()} in order
+     * to stop and release the background thread.
+     *
+     * @see #evictIdleConnections(long, TimeUnit)
+     */
+    public final HttpClientBuilder evictExpiredConnections() {
+        evictExpiredConnections = true;
+        return this;
+    }
+
+    /**
+     * Makes this instance of HttpClient proactively evict idle connections from the
+     * connection pool using a background thread. Expired connections are evicted as well.
+     * <p/>
+     * One MUST explicitly close HttpClient with {@link CloseableHttpClient#close()} in order
+     * to stop and release the background thread.
+     *
+     * @param maxIdleTime maximum time persistent connections can stay idle while kept alive
+     * in the connection pool. Connections whose inactivity period exceeds this value will
+     * get closed and evicted from the pool.
+     * @param maxIdleTimeUnit time unit for the above parameter.
+     *
+     * @see #evictExpiredConnections()
+     */
+    public final HttpClientBuilder evictIdleConnections(final long maxIdleTime, final TimeUnit maxIdleTimeUnit) {
+        this.evictIdleConnections = true;
+        this.maxIdleTime = maxIdleTime;
+        this.maxIdleTimeUnit = maxIdleTimeUnit;
+        return this;
+    }
+
+    /**
+     * Makes this instance of HttpClient open connections to the given routes
+     * in the background as soon as it is built, so that the first requests
+     * to those routes do not have to pay the connection setup cost.
+     * <p/>
+     * Please note this value applies only if the connection manager is
+     * a {@link PoolingHttpClientConnectionManager}.
+     *
+     * @param routes routes to open connections to.
+     * @param count number of connections to open per route.
+     * @param timeout timeout to lease and to connect each connection.
+     * @param tunit time unit for the above parameter.
+     *
+     * @see PoolingHttpClientConnectionManager#prewarm(List, int, long, TimeUnit,
+     *   original.apache.http.concurrent.FutureCallback)
+     *
+     * @since 4.3.5
+     */
+    public final HttpClientBuilder prewarmConnections(
+            final List<HttpRoute> routes, final int count, final long timeout, final TimeUnit tunit) {
+        this.prewarmRoutes = routes != null ? new ArrayList<HttpRoute>(routes) : null;
+        this.prewarmCount = count;
+        this.prewarmTimeout = timeout;
+        this.prewarmTimeUnit = tunit;
+        return this;
+    }
+
     /**
      * Use system properties when creating and configuring default
      * implementations.
@@ -705,30 +771,31 @@ public class HttpClientBuilder {
         if (connManager == null) {
             LayeredConnectionSocketFactory sslSocketFactory = this.sslSocketFactory;
             if (sslSocketFactory == null) {
-                final String[] supportedProtocols = systemProperties ? split(
-                        System.getProperty("https.protocols")) : null;
-                final String[] supportedCipherSuites = systemProperties ? split(
-                        System.getProperty("https.cipherSuites")) : null;
-                X509HostnameVerifier hostnameVerifier = this.hostnameVerifier;
-                if (hostnameVerifier == null) {
-                    hostnameVerifier = SSLConnectionSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER;
-                }
-                if (sslcontext != null) {
-                    sslSocketFactory = new SSLConnectionSocketFactory(
-                            sslcontext, supportedProtocols, supportedCipherSuites, hostnameVerifier);
-                } else {
-                    if (systemProperties) {
-                        if (systemProperties) {
-                            sslSocketFactory = new SSLConnectionSocketFactory(
-                                    (SSLSocketFactory) SSLCertificateSocketFactory.getDefault(0),
-                                    supportedProtocols, supportedCipherSuites, hostnameVerifier);
+                // Set up TLS on the first connection to a secure route
+                final boolean systemProperties = this.systemProperties;
+                final SSLContext sslcontext = this.sslcontext;
+                final X509HostnameVerifier hostnameVerifier = this.hostnameVerifier;
+                sslSocketFactory = new LazyLayeredConnectionSocketFactory() {
+
+                    @Override
+                    protected LayeredConnectionSocketFactory create() {
+                        final String[] supportedProtocols = systemProperties ? split(
+                                System.getProperty("https.protocols")) : null;
+                        final String[] supportedCipherSuites = systemProperties ? split(
+                                System.getProperty("https.cipherSuites")) : null;
+                        final X509HostnameVerifier verifier = hostnameVerifier != null ? hostnameVerifier :
+                            SSLConnectionSocketFactory.BROWSER_COMPATIBLE_HOSTNAME_VERIFIER;
+                        if (sslcontext != null) {
+                            return new SSLConnectionSocketFactory(
+                                    sslcontext, supportedProtocols, supportedCipherSuites, verifier);
                         } else {
-                            sslSocketFactory = new SSLConnectionSocketFactory(
+                            return new SSLConnectionSocketFactory(
                                     (SSLSocketFactory) SSLCertificateSocketFactory.getDefault(0),
-                                    hostnameVerifier);
+                                    supportedProtocols, supportedCipherSuites, verifier);
                         }
                     }
-                }
+
+                };
             }
             @SuppressWarnings("resource")
             final PoolingHttpClientConnectionManager poolingmgr = new PoolingHttpClientConnectionManager(
@@ -814,7 +881,7 @@ public class HttpClientBuilder {
                     userAgent = System.getProperty("http.agent");
                 }
                 if (userAgent == null) {
-                    userAgent = DefaultUserAgent.DEFAULT_USER_AGENT;
+                    userAgent = DEFAULT_USER_AGENT;
                 }
             }
 
@@ -912,25 +979,40 @@ public class HttpClientBuilder {
             execChain = new BackoffStrategyExec(execChain, connectionBackoffStrategy, backoffManager);
         }
 
+        // Populate the default registries when first used
         Lookup<AuthSchemeProvider> authSchemeRegistry = this.authSchemeRegistry;
         if (authSchemeRegistry == null) {
-            authSchemeRegistry = RegistryBuilder.<AuthSchemeProvider>create()
-                .register(AuthSchemes.BASIC, new BasicSchemeFactory())
-                .register(AuthSchemes.DIGEST, new DigestSchemeFactory())
-                .register(AuthSchemes.NTLM, new NTLMSchemeFactory())
-                .build();
+            authSchemeRegistry = new LazyLookup<AuthSchemeProvider>() {
+
+                @Override
+                protected Lookup<AuthSchemeProvider> create() {
+                    return RegistryBuilder.<AuthSchemeProvider>create()
+                        .register(AuthSchemes.BASIC, new BasicSchemeFactory())
+                        .register(AuthSchemes.DIGEST, new DigestSchemeFactory())
+                        .register(AuthSchemes.NTLM, new NTLMSchemeFactory())
+                        .build();
+                }
+
+            };
         }
         Lookup<CookieSpecProvider> cookieSpecRegistry = this.cookieSpecRegistry;
         if (cookieSpecRegistry == null) {
-            cookieSpecRegistry = RegistryBuilder.<CookieSpecProvider>create()
-                .register(CookieSpecs.BEST_MATCH, new BestMatchSpecFactory())
-                .register(CookieSpecs.STANDARD, new RFC2965SpecFactory())
-                .register(CookieSpecs.BROWSER_COMPATIBILITY, new BrowserCompatSpecFactory())
-                .register(CookieSpecs.NETSCAPE, new NetscapeDraftSpecFactory())
-                .register(CookieSpecs.IGNORE_COOKIES, new IgnoreSpecFactory())
-                .register("rfc2109", new RFC2109SpecFactory())
-                .register("rfc2965", new RFC2965SpecFactory())
-                .build();
+            cookieSpecRegistry = new LazyLookup<CookieSpecProvider>() {
+
+                @Override
+                protected Lookup<CookieSpecProvider> create() {
+                    return RegistryBuilder.<CookieSpecProvider>create()
+                        .register(CookieSpecs.BEST_MATCH, new BestMatchSpecFactory())
+                        .register(CookieSpecs.STANDARD, new RFC2965SpecFactory())
+                        .register(CookieSpecs.BROWSER_COMPATIBILITY, new BrowserCompatSpecFactory())
+                        .register(CookieSpecs.NETSCAPE, new NetscapeDraftSpecFactory())
+                        .register(CookieSpecs.IGNORE_COOKIES, new IgnoreSpecFactory())
+                        .register("rfc2109", new RFC2109SpecFactory())
+                        .register("rfc2965", new RFC2965SpecFactory())
+                        .build();
+                }
+
+            };
         }
 
         CookieStore defaultCookieStore = this.cookieStore;
@@ -947,6 +1029,31 @@ public class HttpClientBuilder {
             }
         }
 
+        if (prewarmRoutes != null && !prewarmRoutes.isEmpty()
+                && connManager instanceof PoolingHttpClientConnectionManager) {
+            ((PoolingHttpClientConnectionManager) connManager).prewarm(
+                    prewarmRoutes, prewarmCount, prewarmTimeout,
+                    prewarmTimeUnit != null ? prewarmTimeUnit : TimeUnit.MILLISECONDS, null);
+        }
+
+        List<Closeable> closeablesCopy = closeables != null ? new ArrayList<Closeable>(closeables) : null;
+        if (evictExpiredConnections || evictIdleConnections) {
+            final IdleConnectionEvictor connectionEvictor = new IdleConnectionEvictor(connManager,
+                    evictIdleConnections ? maxIdleTime : 0,
+                    evictIdleConnections ? maxIdleTimeUnit : null);
+            if (closeablesCopy == null) {
+                closeablesCopy = new ArrayList<Closeable>(1);
+            }
+            closeablesCopy.add(new Closeable() {
+
+                public void close() throws IOException {
+                    connectionEvictor.shutdown();
+                }
+
+            });
+            connectionEvictor.start();
+        }
+
         return new InternalHttpClient(
                 execChain,
                 connManager,
@@ -956,7 +1063,7 @@ public class HttpClientBuilder {
                 defaultCookieStore,
                 defaultCredentialsProvider,
                 defaultRequestConfig != null ? defaultRequestConfig : RequestConfig.DEFAULT,
-                closeables != null ? new ArrayList<Closeable>(closeables) : null);
+                closeablesCopy);
     }
 
 }
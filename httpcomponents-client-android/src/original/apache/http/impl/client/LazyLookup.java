@@ -0,0 +1,59 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.impl.client;
+
+import original.apache.http.annotation.ThreadSafe;
+import original.apache.http.config.Lookup;
+
+/**
+ * {@link Lookup} that builds the actual lookup the first time an item is
+ * looked up, so that registries a client never uses are never populated.
+ *
+ * @since 4.3.5
+ */
+@ThreadSafe
+abstract class LazyLookup<I> implements Lookup<I> {
+
+    private volatile Lookup<I> lookup;
+
+    protected abstract Lookup<I> create();
+
+    public I lookup(final String name) {
+        Lookup<I> l = this.lookup;
+        if (l == null) {
+            synchronized (this) {
+                l = this.lookup;
+                if (l == null) {
+                    l = create();
+                    this.lookup = l;
+                }
+            }
+        }
+        return l.lookup(name);
+    }
+
+}
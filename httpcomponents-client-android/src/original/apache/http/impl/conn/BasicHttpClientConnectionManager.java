@@ -54,6 +54,7 @@ import original.apache.http.conn.routing.HttpRoute;
 import original.apache.http.conn.socket.ConnectionSocketFactory;
 import original.apache.http.conn.socket.PlainConnectionSocketFactory;
 import original.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import original.apache.http.io.BufferRecycler;
 import original.apache.http.protocol.HttpContext;
 import original.apache.http.util.Args;
 import original.apache.http.util.Asserts;
@@ -107,6 +108,9 @@ public class BasicHttpClientConnectionManager implements HttpClientConnectionMan
     @GuardedBy("this")
     private ConnectionConfig connConfig;
 
+    @GuardedBy("this")
+    private int validateAfterInactivity;
+
     private final AtomicBoolean isShutdown;
 
     private static Registry<ConnectionSocketFactory> getDefaultRegistry() {
@@ -128,6 +132,7 @@ public class BasicHttpClientConnectionManager implements HttpClientConnectionMan
         this.expiry = Long.MAX_VALUE;
         this.socketConfig = SocketConfig.DEFAULT;
         this.connConfig = ConnectionConfig.DEFAULT;
+        this.validateAfterInactivity = 2000;
         this.isShutdown = new AtomicBoolean(false);
     }
 
@@ -183,6 +188,28 @@ public class BasicHttpClientConnectionManager implements HttpClientConnectionMan
         this.connConfig = connConfig != null ? connConfig : ConnectionConfig.DEFAULT;
     }
 
+    /**
+     * @see #setValidateAfterInactivity(int)
+     *
+     * @since 4.3.5
+     */
+    public synchronized int getValidateAfterInactivity() {
+        return validateAfterInactivity;
+    }
+
+    /**
+     * Defines period of inactivity in milliseconds after which the persistent
+     * connection must be re-validated prior to being leased to the consumer.
+     * Non-positive value passed to this method disables connection validation.
+     * <p/>
+     * Default: 2000 milliseconds
+     *
+     * @since 4.3.5
+     */
+    public synchronized void setValidateAfterInactivity(final int ms) {
+        this.validateAfterInactivity = ms;
+    }
+
     public final ConnectionRequest requestConnection(
             final HttpRoute route,
             final Object state) {
@@ -243,6 +270,17 @@ public class BasicHttpClientConnectionManager implements HttpClientConnectionMan
         }
     }
 
+    private void checkInactivity() {
+        if (this.conn != null && this.validateAfterInactivity > 0
+                && this.updated + this.validateAfterInactivity <= System.currentTimeMillis()
+                && this.conn.isStale()) {
+            if (Logger.isLoggable(TAG, Logger.DEBUG)) {
+                Logger.d(TAG, "Stale connection detected");
+            }
+            closeConnection();
+        }
+    }
+
     synchronized HttpClientConnection getConnection(final HttpRoute route, final Object state) {
         Asserts.check(!this.isShutdown.get(), "Connection manager has been shut down");
         if (Logger.isLoggable(TAG, Logger.DEBUG)) {
@@ -255,6 +293,7 @@ public class BasicHttpClientConnectionManager implements HttpClientConnectionMan
         this.route = route;
         this.state = state;
         checkExpiry();
+        checkInactivity();
         if (this.conn == null) {
             this.conn = this.connFactory.create(route, this.connConfig);
         }
@@ -282,6 +321,10 @@ public class BasicHttpClientConnectionManager implements HttpClientConnectionMan
                 this.conn = null;
                 this.expiry = Long.MAX_VALUE;
             } else {
+                // Do not hold on to the session buffers while idle
+                if (this.conn instanceof BufferRecycler) {
+                    ((BufferRecycler) this.conn).recycleBuffers();
+                }
                 this.state = state;
                 if (Logger.isLoggable(TAG, Logger.DEBUG)) {
                     final String s;
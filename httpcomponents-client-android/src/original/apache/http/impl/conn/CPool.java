@@ -35,6 +35,7 @@ import original.apache.http.conn.ManagedHttpClientConnection;
 import original.apache.http.conn.routing.HttpRoute;
 import original.apache.http.pool.AbstractConnPool;
 import original.apache.http.pool.ConnFactory;
+import original.apache.http.pool.PoolBudget;
 
 /**
  * @since 4.3
@@ -56,10 +57,24 @@ class CPool extends AbstractConnPool<HttpRoute, ManagedHttpClientConnection, CPo
         this.tunit = tunit;
     }
 
+    public CPool(
+            final ConnFactory<HttpRoute, ManagedHttpClientConnection> connFactory,
+            final int defaultMaxPerRoute, final PoolBudget budget,
+            final long timeToLive, final TimeUnit tunit) {
+        super(connFactory, defaultMaxPerRoute, budget);
+        this.timeToLive = timeToLive;
+        this.tunit = tunit;
+    }
+
     @Override
     protected CPoolEntry createEntry(final HttpRoute route, final ManagedHttpClientConnection conn) {
         final String id = Long.toString(COUNTER.getAndIncrement());
         return new CPoolEntry(id, route, conn, this.timeToLive, this.tunit);
     }
 
+    @Override
+    protected boolean validate(final CPoolEntry entry) {
+        return !entry.getConnection().isStale();
+    }
+
 }
@@ -32,6 +32,7 @@ import java.util.concurrent.TimeUnit;
 
 import org.kman.apache.http.logging.Logger;
 import original.apache.http.HttpClientConnection;
+import original.apache.http.HttpConnectionMetrics;
 import original.apache.http.annotation.ThreadSafe;
 import original.apache.http.conn.ManagedHttpClientConnection;
 import original.apache.http.conn.routing.HttpRoute;
@@ -46,6 +47,9 @@ class CPoolEntry extends PoolEntry<HttpRoute, ManagedHttpClientConnection> {
     private final static String TAG = "HttpClient";
 
     private volatile boolean routeComplete;
+    private long leased;
+    private long receivedBytes;
+    private long responses;
 
     public CPoolEntry(
             final String id,
@@ -63,6 +67,34 @@ class CPoolEntry extends PoolEntry<HttpRoute, ManagedHttpClientConnection> {
         return this.routeComplete;
     }
 
+    /**
+     * Notes the time of the lease and the transfer counts of the connection
+     * at that time, to tell the transfers of the lease from earlier ones.
+     */
+    void markLeased() {
+        final HttpConnectionMetrics metrics = getConnection().getMetrics();
+        this.leased = System.currentTimeMillis();
+        this.receivedBytes = metrics.getReceivedBytesCount();
+        this.responses = metrics.getResponseCount();
+    }
+
+    /**
+     * Reports the transfers of the lease to the given tuner, if any, and
+     * forgets the lease. Nothing is reported if the lease was not noted by
+     * {@link #markLeased()}, as when the tuner was set while the connection
+     * was leased.
+     */
+    void reportTransfer(final ReceiveBufferTuner tuner) {
+        if (tuner != null && this.leased != 0) {
+            final HttpConnectionMetrics metrics = getConnection().getMetrics();
+            tuner.update(getRoute(),
+                    metrics.getReceivedBytesCount() - this.receivedBytes,
+                    metrics.getResponseCount() - this.responses,
+                    System.currentTimeMillis() - this.leased);
+        }
+        this.leased = 0;
+    }
+
     public void closeConnection() throws IOException {
         final HttpClientConnection conn = getConnection();
         conn.close();
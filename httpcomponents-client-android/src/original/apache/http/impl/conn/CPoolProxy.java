@@ -238,6 +238,14 @@ class CPoolProxy implements ManagedHttpClientConnection, HttpContext {
         return entry;
     }
 
+    /**
+     * Returns the pool entry of the given proxy or <code>null</code> if
+     * the proxy has been detached.
+     */
+    static CPoolEntry peekPoolEntry(final HttpClientConnection proxy) {
+        return getProxy(proxy).getPoolEntry();
+    }
+
     public static CPoolEntry detach(final HttpClientConnection conn) {
         return getProxy(conn).detach();
     }
@@ -0,0 +1,455 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.impl.conn;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.kman.apache.http.logging.Logger;
+import original.apache.http.annotation.Immutable;
+import original.apache.http.annotation.ThreadSafe;
+import original.apache.http.conn.DnsResolver;
+import original.apache.http.util.Args;
+
+/**
+ * {@link DnsResolver} that caches the results of another resolver.
+ * <p/>
+ * Resolved addresses are kept for a time to live, which may be set per host.
+ * Failed lookups are cached as well for a usually shorter period, so that
+ * an unknown host does not cause a lookup per connection attempt. Once
+ * the addresses of a host have expired, they are still returned for a
+ * grace period while they are refreshed by a background executor
+ * (stale-while-revalidate). Should the refresh fail, the stale addresses
+ * keep being returned until the grace period is over.
+ * <p/>
+ * The number of host names cached is bounded. Results past their grace
+ * period are dropped first when the bound is exceeded.
+ * <p/>
+ * At most one lookup per host name is in progress at any time. Threads
+ * asking for a host being looked up wait for the result of that lookup
+ * rather than starting their own.
+ *
+ * @since 4.3.5
+ */
+@ThreadSafe
+public class CachingDnsResolver implements DnsResolver {
+
+    private final static String TAG = "HttpClient";
+
+    private final DnsResolver resolver;
+    private final long timeToLive;
+    private final long negativeTimeToLive;
+    private final long staleTimeToLive;
+    private final int maxEntries;
+    private final Executor executor;
+    private final ConcurrentMap<String, CacheEntry> cache;
+    private final ConcurrentMap<String, Long> hostTimeToLive;
+    private final ConcurrentMap<String, Lookup> lookups;
+    private final AtomicLong hits;
+    private final AtomicLong staleHits;
+    private final AtomicLong misses;
+    private final AtomicLong refreshes;
+
+    private static Executor createDefaultExecutor() {
+        // No core threads, so that idle threads go away without
+        // allowCoreThreadTimeOut, which is not available before API 9.
+        // Refreshes beyond two at a time are rejected and simply skipped.
+        return new ThreadPoolExecutor(
+                0, 2, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                new ThreadFactory() {
+
+                    public Thread newThread(final Runnable r) {
+                        final Thread thread = new Thread(r, "DNS refresh");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+
+                });
+    }
+
+    /**
+     * Creates a caching resolver.
+     *
+     * @param resolver the resolver to look host names up with.
+     * @param timeToLive time resolved addresses are cached for.
+     * @param negativeTimeToLive time failed lookups are cached for. Zero
+     *   disables caching of failed lookups.
+     * @param staleTimeToLive time expired addresses are still returned for
+     *   while they are being refreshed. Zero disables background refresh.
+     * @param tunit the unit of the times.
+     * @param executor executor to run background refreshes on. May be
+     *   <code>null</code>, in which case a small pool of daemon threads
+     *   is used.
+     * @param maxEntries the maximum number of host names to cache results
+     *   for. Once exceeded, results past their grace period are dropped
+     *   first, then those closest to expiry.
+     */
+    public CachingDnsResolver(
+            final DnsResolver resolver,
+            final long timeToLive,
+            final long negativeTimeToLive,
+            final long staleTimeToLive,
+            final TimeUnit tunit,
+            final Executor executor,
+            final int maxEntries) {
+        super();
+        Args.notNull(resolver, "DNS resolver");
+        Args.notNull(tunit, "Time unit");
+        this.resolver = resolver;
+        this.timeToLive = tunit.toMillis(Args.notNegative(timeToLive, "Time to live"));
+        this.negativeTimeToLive = tunit.toMillis(Args.notNegative(negativeTimeToLive, "Negative time to live"));
+        this.staleTimeToLive = tunit.toMillis(Args.notNegative(staleTimeToLive, "Stale time to live"));
+        this.executor = executor != null ? executor : createDefaultExecutor();
+        this.maxEntries = Args.positive(maxEntries, "Max entries");
+        this.cache = new ConcurrentHashMap<String, CacheEntry>();
+        this.hostTimeToLive = new ConcurrentHashMap<String, Long>();
+        this.lookups = new ConcurrentHashMap<String, Lookup>();
+        this.hits = new AtomicLong();
+        this.staleHits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.refreshes = new AtomicLong();
+    }
+
+    /**
+     * Creates a caching resolver holding the results of up to 1000 host names.
+     *
+     * @see #CachingDnsResolver(DnsResolver, long, long, long, TimeUnit, Executor, int)
+     */
+    public CachingDnsResolver(
+            final DnsResolver resolver,
+            final long timeToLive,
+            final long negativeTimeToLive,
+            final long staleTimeToLive,
+            final TimeUnit tunit,
+            final Executor executor) {
+        this(resolver, timeToLive, negativeTimeToLive, staleTimeToLive, tunit, executor, 1000);
+    }
+
+    /**
+     * Creates a resolver caching addresses for 60 seconds and failed lookups
+     * for 10 seconds, and returning expired addresses for another 60 seconds
+     * while they are refreshed.
+     */
+    public CachingDnsResolver(final DnsResolver resolver) {
+        this(resolver, 60, 10, 60, TimeUnit.SECONDS, null);
+    }
+
+    /**
+     * Creates a resolver caching the results of {@link SystemDefaultDnsResolver}.
+     */
+    public CachingDnsResolver() {
+        this(SystemDefaultDnsResolver.INSTANCE);
+    }
+
+    /**
+     * Sets the time the resolved addresses of the given host are cached for,
+     * overriding the default time to live. Takes effect with the next lookup
+     * of the host.
+     */
+    public void setTimeToLive(final String host, final long timeToLive, final TimeUnit tunit) {
+        Args.notNull(host, "Host name");
+        Args.notNegative(timeToLive, "Time to live");
+        Args.notNull(tunit, "Time unit");
+        this.hostTimeToLive.put(host, Long.valueOf(tunit.toMillis(timeToLive)));
+    }
+
+    private long getTimeToLive(final String host) {
+        final Long v = this.hostTimeToLive.get(host);
+        return v != null ? v.longValue() : this.timeToLive;
+    }
+
+    public InetAddress[] resolve(final String host) throws UnknownHostException {
+        Args.notNull(host, "Host name");
+        final CacheEntry entry = this.cache.get(host);
+        if (entry != null) {
+            final long now = System.currentTimeMillis();
+            if (now < entry.expiry) {
+                this.hits.incrementAndGet();
+                return entry.getAddresses();
+            }
+            if (entry.addresses != null && now < entry.expiry + this.staleTimeToLive) {
+                this.staleHits.incrementAndGet();
+                refresh(host);
+                return entry.getAddresses();
+            }
+        }
+        this.misses.incrementAndGet();
+        Lookup lookup = new Lookup(host);
+        final Lookup existing = this.lookups.putIfAbsent(host, lookup);
+        if (existing != null) {
+            lookup = existing;
+        } else {
+            lookup.run();
+        }
+        return lookup.getAddresses();
+    }
+
+    private void refresh(final String host) {
+        final Lookup lookup = new Lookup(host);
+        if (this.lookups.putIfAbsent(host, lookup) != null) {
+            return;
+        }
+        this.refreshes.incrementAndGet();
+        try {
+            this.executor.execute(lookup);
+        } catch (final RejectedExecutionException ex) {
+            this.lookups.remove(host, lookup);
+        }
+    }
+
+    /**
+     * Drops the cached result of the given host.
+     */
+    public void remove(final String host) {
+        Args.notNull(host, "Host name");
+        this.cache.remove(host);
+    }
+
+    /**
+     * Drops all cached results.
+     */
+    public void clear() {
+        this.cache.clear();
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache before expiry.
+     */
+    public long getHitCount() {
+        return this.hits.get();
+    }
+
+    /**
+     * Returns the number of lookups answered with expired addresses while
+     * they were being refreshed.
+     */
+    public long getStaleHitCount() {
+        return this.staleHits.get();
+    }
+
+    /**
+     * Returns the number of lookups that had to wait for the underlying
+     * resolver.
+     */
+    public long getMissCount() {
+        return this.misses.get();
+    }
+
+    /**
+     * Returns the number of background refreshes started.
+     */
+    public long getRefreshCount() {
+        return this.refreshes.get();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[hosts: ");
+        buffer.append(this.cache.size());
+        buffer.append("][hits: ");
+        buffer.append(this.hits.get());
+        buffer.append("][stale hits: ");
+        buffer.append(this.staleHits.get());
+        buffer.append("][misses: ");
+        buffer.append(this.misses.get());
+        buffer.append("][refreshes: ");
+        buffer.append(this.refreshes.get());
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+    @Immutable
+    static class CacheEntry {
+
+        final InetAddress[] addresses;
+        final String failure;
+        final long expiry;
+
+        CacheEntry(final InetAddress[] addresses, final String failure, final long expiry) {
+            super();
+            this.addresses = addresses;
+            this.failure = failure;
+            this.expiry = expiry;
+        }
+
+        InetAddress[] getAddresses() throws UnknownHostException {
+            if (this.addresses == null) {
+                throw new UnknownHostException(this.failure);
+            }
+            return this.addresses.clone();
+        }
+
+    }
+
+    /**
+     * Lookup of a single host name, which other threads asking for the same
+     * host may wait for.
+     */
+    class Lookup extends FutureTask<InetAddress[]> {
+
+        private final String host;
+
+        Lookup(final String host) {
+            super(new Callable<InetAddress[]>() {
+
+                public InetAddress[] call() throws UnknownHostException {
+                    return lookup(host);
+                }
+
+            });
+            this.host = host;
+        }
+
+        @Override
+        protected void done() {
+            lookups.remove(this.host, this);
+        }
+
+        InetAddress[] getAddresses() throws UnknownHostException {
+            boolean interrupted = false;
+            try {
+                for (;;) {
+                    try {
+                        return get().clone();
+                    } catch (final InterruptedException ex) {
+                        interrupted = true;
+                    }
+                }
+            } catch (final ExecutionException ex) {
+                final Throwable cause = ex.getCause();
+                if (cause instanceof UnknownHostException) {
+                    throw new UnknownHostException(cause.getMessage());
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                } else {
+                    final UnknownHostException uhe = new UnknownHostException(this.host);
+                    uhe.initCause(cause);
+                    throw uhe;
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+    }
+
+    private void store(final String host, final CacheEntry entry) {
+        this.cache.put(host, entry);
+        if (this.cache.size() > this.maxEntries) {
+            prune();
+        }
+    }
+
+    /**
+     * Drops the results past their grace period and, should that not be
+     * enough, the results closest to expiry, leaving room for a quarter of
+     * the maximum number of entries so that pruning does not happen on every
+     * lookup.
+     */
+    private synchronized void prune() {
+        if (this.cache.size() <= this.maxEntries) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        final List<Map.Entry<String, CacheEntry>> live = new ArrayList<Map.Entry<String, CacheEntry>>(
+                this.cache.size());
+        for (final Iterator<Map.Entry<String, CacheEntry>> it = this.cache.entrySet().iterator(); it.hasNext(); ) {
+            final Map.Entry<String, CacheEntry> e = it.next();
+            final CacheEntry entry = e.getValue();
+            final long grace = entry.addresses != null ? this.staleTimeToLive : 0;
+            if (now >= entry.expiry + grace) {
+                it.remove();
+            } else {
+                live.add(e);
+            }
+        }
+        final int target = this.maxEntries - this.maxEntries / 4;
+        if (live.size() > target) {
+            Collections.sort(live, new Comparator<Map.Entry<String, CacheEntry>>() {
+
+                public int compare(final Map.Entry<String, CacheEntry> e1, final Map.Entry<String, CacheEntry> e2) {
+                    final long x = e1.getValue().expiry;
+                    final long y = e2.getValue().expiry;
+                    return x < y ? -1 : (x == y ? 0 : 1);
+                }
+
+            });
+            for (int i = 0; i < live.size() - target; i++) {
+                final Map.Entry<String, CacheEntry> e = live.get(i);
+                this.cache.remove(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    private InetAddress[] lookup(final String host) throws UnknownHostException {
+        try {
+            final InetAddress[] addresses = this.resolver.resolve(host);
+            if (addresses == null || addresses.length == 0) {
+                throw new UnknownHostException(host + " cannot be resolved");
+            }
+            store(host, new CacheEntry(
+                    addresses.clone(), null, System.currentTimeMillis() + getTimeToLive(host)));
+            return addresses;
+        } catch (final UnknownHostException ex) {
+            final long now = System.currentTimeMillis();
+            final CacheEntry entry = this.cache.get(host);
+            if (entry != null && entry.addresses != null && now < entry.expiry + this.staleTimeToLive) {
+                // Keep returning the stale addresses until the grace period is over
+                if (Logger.isLoggable(TAG, Logger.DEBUG)) {
+                    Logger.d(TAG, "Refreshing the addresses of " + host + " failed", ex);
+                }
+            } else if (this.negativeTimeToLive > 0) {
+                store(host, new CacheEntry(null, ex.getMessage(), now + this.negativeTimeToLive));
+            }
+            throw ex;
+        }
+    }
+
+}
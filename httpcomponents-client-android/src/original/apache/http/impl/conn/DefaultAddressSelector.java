@@ -0,0 +1,57 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.impl.conn;
+
+import java.io.IOException;
+import java.net.InetAddress;
+
+import original.apache.http.HttpHost;
+import original.apache.http.annotation.Immutable;
+import original.apache.http.conn.AddressSelector;
+
+/**
+ * Default {@link AddressSelector}, which tries addresses in the order they
+ * have been resolved in.
+ *
+ * @since 4.3.5
+ */
+@Immutable
+public class DefaultAddressSelector implements AddressSelector {
+
+    public static final DefaultAddressSelector INSTANCE = new DefaultAddressSelector();
+
+    public InetAddress[] select(final HttpHost host, final InetAddress[] addresses) {
+        return addresses;
+    }
+
+    public void connected(final InetAddress address, final long millis) {
+    }
+
+    public void failed(final InetAddress address, final IOException cause) {
+    }
+
+}
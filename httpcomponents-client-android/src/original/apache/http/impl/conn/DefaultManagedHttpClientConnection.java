@@ -45,6 +45,8 @@ import original.apache.http.config.MessageConstraints;
 import original.apache.http.conn.ManagedHttpClientConnection;
 import original.apache.http.entity.ContentLengthStrategy;
 import original.apache.http.impl.DefaultBHttpClientConnection;
+import original.apache.http.impl.io.DirectBufferPool;
+import original.apache.http.io.BufferAllocator;
 import original.apache.http.io.HttpMessageParserFactory;
 import original.apache.http.io.HttpMessageWriterFactory;
 import original.apache.http.protocol.HttpContext;
@@ -62,6 +64,9 @@ public class DefaultManagedHttpClientConnection extends DefaultBHttpClientConnec
 
     private volatile boolean shutdown;
 
+    /**
+     * @since 4.3.5
+     */
     public DefaultManagedHttpClientConnection(
             final String id,
             final int buffersize,
@@ -72,14 +77,32 @@ public class DefaultManagedHttpClientConnection extends DefaultBHttpClientConnec
             final ContentLengthStrategy incomingContentStrategy,
             final ContentLengthStrategy outgoingContentStrategy,
             final HttpMessageWriterFactory<HttpRequest> requestWriterFactory,
-            final HttpMessageParserFactory<HttpResponse> responseParserFactory) {
+            final HttpMessageParserFactory<HttpResponse> responseParserFactory,
+            final DirectBufferPool bufferPool,
+            final BufferAllocator allocator) {
         super(buffersize, fragmentSizeHint, chardecoder, charencoder,
                 constraints, incomingContentStrategy, outgoingContentStrategy,
-                requestWriterFactory, responseParserFactory);
+                requestWriterFactory, responseParserFactory, bufferPool, allocator);
         this.id = id;
         this.attributes = new ConcurrentHashMap<String, Object>();
     }
 
+    public DefaultManagedHttpClientConnection(
+            final String id,
+            final int buffersize,
+            final int fragmentSizeHint,
+            final CharsetDecoder chardecoder,
+            final CharsetEncoder charencoder,
+            final MessageConstraints constraints,
+            final ContentLengthStrategy incomingContentStrategy,
+            final ContentLengthStrategy outgoingContentStrategy,
+            final HttpMessageWriterFactory<HttpRequest> requestWriterFactory,
+            final HttpMessageParserFactory<HttpResponse> responseParserFactory) {
+        this(id, buffersize, fragmentSizeHint, chardecoder, charencoder,
+                constraints, incomingContentStrategy, outgoingContentStrategy,
+                requestWriterFactory, responseParserFactory, null, null);
+    }
+
     public DefaultManagedHttpClientConnection(
             final String id,
             final int buffersize) {
@@ -0,0 +1,393 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.impl.conn;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.kman.apache.http.logging.Logger;
+import original.apache.http.HttpHost;
+import original.apache.http.annotation.GuardedBy;
+import original.apache.http.annotation.ThreadSafe;
+import original.apache.http.conn.AddressSelector;
+import original.apache.http.util.Args;
+
+/**
+ * {@link AddressSelector} that spreads connections across the addresses of
+ * a host and steers them away from addresses that fail.
+ * <p/>
+ * The addresses of a host are rotated with each connection, or shuffled
+ * if so configured, so that new connections are spread evenly. Connect
+ * latency and failure rate are tracked per address as exponentially
+ * weighted moving averages. An address that fails to connect is put on
+ * penalty for a period doubling with each consecutive failure, up to
+ * a maximum. Addresses on penalty are tried only after all others, those
+ * whose penalty ends first going first, so that they are still used as
+ * a last resort. A successful connection clears the penalty.
+ * <p/>
+ * Addresses not on penalty are spread over as long as they perform alike.
+ * Those that fail often or take much longer to connect to than the fastest
+ * one are tried after the others, best score first.
+ * <p/>
+ * Statistics are kept for a bounded number of host names and addresses.
+ * Once exceeded, the statistics of the addresses not used for the longest
+ * time are dropped.
+ *
+ * @since 4.3.5
+ */
+@ThreadSafe
+public class HealthAwareAddressSelector implements AddressSelector {
+
+    private final static String TAG = "HttpClient";
+
+    private static final double ALPHA = 0.2;
+
+    /** Failure rate from which an address is tried after the others. */
+    private static final double FAILING = 0.5;
+
+    /** How much slower than the fastest address an address may be. */
+    private static final double SLOW_FACTOR = 3;
+    private static final long SLOW_MARGIN = 20;
+
+    private static final int MAX_ENTRIES = 1024;
+
+    private static final Comparator<Penalized> PENALTY_ORDER = new Comparator<Penalized>() {
+
+        public int compare(final Penalized p1, final Penalized p2) {
+            return p1.until < p2.until ? -1 : (p1.until == p2.until ? 0 : 1);
+        }
+
+    };
+
+    private static final Comparator<Scored> SCORE_ORDER = new Comparator<Scored>() {
+
+        public int compare(final Scored s1, final Scored s2) {
+            return Double.compare(s1.score, s2.score);
+        }
+
+    };
+
+    private final boolean randomize;
+    private final long basePenalty;
+    private final long maxPenalty;
+    private final ConcurrentMap<String, AtomicInteger> rotation;
+    private final ConcurrentMap<InetAddress, AddressHealth> health;
+    private final Random random;
+
+    /**
+     * Creates a selector.
+     *
+     * @param randomize <code>true</code> to shuffle the addresses of a host
+     *   rather than rotate them.
+     * @param basePenalty penalty after a first failure.
+     * @param maxPenalty maximum penalty after consecutive failures.
+     * @param tunit the unit of the penalties.
+     */
+    public HealthAwareAddressSelector(
+            final boolean randomize,
+            final long basePenalty,
+            final long maxPenalty,
+            final TimeUnit tunit) {
+        super();
+        Args.notNull(tunit, "Time unit");
+        this.randomize = randomize;
+        this.basePenalty = tunit.toMillis(Args.notNegative(basePenalty, "Base penalty"));
+        this.maxPenalty = tunit.toMillis(Args.notNegative(maxPenalty, "Max penalty"));
+        this.rotation = new ConcurrentHashMap<String, AtomicInteger>();
+        this.health = new ConcurrentHashMap<InetAddress, AddressHealth>();
+        this.random = new Random();
+    }
+
+    /**
+     * Creates a selector rotating addresses with a penalty of one second
+     * after a first failure and of at most one minute.
+     */
+    public HealthAwareAddressSelector() {
+        this(false, 1, 60, TimeUnit.SECONDS);
+    }
+
+    public InetAddress[] select(final HttpHost host, final InetAddress[] addresses) {
+        final int n = addresses.length;
+        if (n <= 1) {
+            return addresses;
+        }
+        final InetAddress[] ordered = new InetAddress[n];
+        if (this.randomize) {
+            System.arraycopy(addresses, 0, ordered, 0, n);
+            for (int i = n - 1; i > 0; i--) {
+                final int j;
+                synchronized (this.random) {
+                    j = this.random.nextInt(i + 1);
+                }
+                final InetAddress tmp = ordered[i];
+                ordered[i] = ordered[j];
+                ordered[j] = tmp;
+            }
+        } else {
+            AtomicInteger counter = this.rotation.get(host.getHostName());
+            if (counter == null) {
+                if (this.rotation.size() >= MAX_ENTRIES) {
+                    // Counters only spread load, rotation simply starts over
+                    this.rotation.clear();
+                }
+                counter = new AtomicInteger();
+                final AtomicInteger existing = this.rotation.putIfAbsent(host.getHostName(), counter);
+                if (existing != null) {
+                    counter = existing;
+                }
+            }
+            final int offset = (counter.getAndIncrement() & 0x7fffffff) % n;
+            for (int i = 0; i < n; i++) {
+                ordered[i] = addresses[(offset + i) % n];
+            }
+        }
+        // Move addresses on penalty to the end and those performing worse
+        // than the others before them, keeping the order of the rest
+        final long now = System.currentTimeMillis();
+        final double[] latencies = new double[n];
+        final double[] failureRates = new double[n];
+        final long[] penalties = new long[n];
+        double fastest = -1;
+        for (int i = 0; i < n; i++) {
+            final AddressHealth h = this.health.get(ordered[i]);
+            if (h != null) {
+                synchronized (h) {
+                    latencies[i] = h.getLatency();
+                    failureRates[i] = h.getFailureRate();
+                    penalties[i] = h.getPenaltyUntil();
+                }
+            } else {
+                latencies[i] = -1;
+            }
+            if (penalties[i] <= now && failureRates[i] < FAILING && latencies[i] >= 0
+                    && (fastest < 0 || latencies[i] < fastest)) {
+                fastest = latencies[i];
+            }
+        }
+        final InetAddress[] result = new InetAddress[n];
+        final List<Scored> degraded = new ArrayList<Scored>();
+        final List<Penalized> penalized = new ArrayList<Penalized>();
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            if (penalties[i] > now) {
+                penalized.add(new Penalized(ordered[i], penalties[i]));
+            } else if (failureRates[i] >= FAILING
+                    || (fastest >= 0 && latencies[i] > fastest * SLOW_FACTOR + SLOW_MARGIN)) {
+                degraded.add(new Scored(ordered[i],
+                        Math.max(latencies[i], 0) * (1 + failureRates[i] / (1 - FAILING))));
+            } else {
+                result[k++] = ordered[i];
+            }
+        }
+        if (k == n) {
+            return ordered;
+        }
+        Collections.sort(degraded, SCORE_ORDER);
+        for (final Scored entry: degraded) {
+            result[k++] = entry.address;
+        }
+        Collections.sort(penalized, PENALTY_ORDER);
+        for (final Penalized entry: penalized) {
+            result[k++] = entry.address;
+        }
+        return result;
+    }
+
+    private AddressHealth getHealth(final InetAddress address) {
+        AddressHealth h = this.health.get(address);
+        if (h == null) {
+            if (this.health.size() >= MAX_ENTRIES) {
+                prune();
+            }
+            h = new AddressHealth();
+            final AddressHealth existing = this.health.putIfAbsent(address, h);
+            if (existing != null) {
+                h = existing;
+            }
+        }
+        return h;
+    }
+
+    /**
+     * Drops the statistics of the addresses not used for the longest time,
+     * leaving room for a quarter of the maximum number of entries.
+     */
+    private synchronized void prune() {
+        if (this.health.size() < MAX_ENTRIES) {
+            return;
+        }
+        final List<Map.Entry<InetAddress, AddressHealth>> entries =
+                new ArrayList<Map.Entry<InetAddress, AddressHealth>>(this.health.entrySet());
+        final long[] updated = new long[entries.size()];
+        for (int i = 0; i < updated.length; i++) {
+            updated[i] = entries.get(i).getValue().getUpdated();
+        }
+        final long[] sorted = updated.clone();
+        Arrays.sort(sorted);
+        final long threshold = sorted[updated.length - (MAX_ENTRIES - MAX_ENTRIES / 4)];
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] < threshold) {
+                final Map.Entry<InetAddress, AddressHealth> e = entries.get(i);
+                this.health.remove(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    public void connected(final InetAddress address, final long millis) {
+        getHealth(address).connected(millis);
+    }
+
+    public void failed(final InetAddress address, final IOException cause) {
+        final long penalty = getHealth(address).failed(this.basePenalty, this.maxPenalty);
+        if (Logger.isLoggable(TAG, Logger.DEBUG)) {
+            Logger.d(TAG, "Address " + address + " deprioritized for " + penalty + " ms");
+        }
+    }
+
+    /**
+     * Returns the average connect latency to the given address in
+     * milliseconds, or <code>-1</code> if no connection has been
+     * established to it yet.
+     */
+    public double getLatency(final InetAddress address) {
+        final AddressHealth h = this.health.get(address);
+        return h != null ? h.getLatency() : -1;
+    }
+
+    /**
+     * Returns the recent rate of failed connection attempts to the given
+     * address, between <code>0</code> and <code>1</code>.
+     */
+    public double getFailureRate(final InetAddress address) {
+        final AddressHealth h = this.health.get(address);
+        return h != null ? h.getFailureRate() : 0;
+    }
+
+    /**
+     * Determines whether the given address is currently on penalty.
+     */
+    public boolean isPenalized(final InetAddress address) {
+        final AddressHealth h = this.health.get(address);
+        return h != null && h.getPenaltyUntil() > System.currentTimeMillis();
+    }
+
+    /**
+     * Forgets all statistics collected.
+     */
+    public void reset() {
+        this.health.clear();
+        this.rotation.clear();
+    }
+
+    static class AddressHealth {
+
+        @GuardedBy("this")
+        private double latency = -1;
+        @GuardedBy("this")
+        private double failureRate;
+        @GuardedBy("this")
+        private int consecutiveFailures;
+        @GuardedBy("this")
+        private long penaltyUntil;
+        @GuardedBy("this")
+        private long updated;
+
+        synchronized void connected(final long millis) {
+            this.updated = System.currentTimeMillis();
+            this.latency = this.latency < 0 ? millis : this.latency + ALPHA * (millis - this.latency);
+            this.failureRate -= ALPHA * this.failureRate;
+            this.consecutiveFailures = 0;
+            this.penaltyUntil = 0;
+        }
+
+        synchronized long failed(final long basePenalty, final long maxPenalty) {
+            this.updated = System.currentTimeMillis();
+            this.failureRate += ALPHA * (1 - this.failureRate);
+            if (this.consecutiveFailures < 30) {
+                this.consecutiveFailures++;
+            }
+            final long penalty = Math.min(maxPenalty, basePenalty << (this.consecutiveFailures - 1));
+            this.penaltyUntil = System.currentTimeMillis() + penalty;
+            return penalty;
+        }
+
+        synchronized double getLatency() {
+            return this.latency;
+        }
+
+        synchronized double getFailureRate() {
+            return this.failureRate;
+        }
+
+        synchronized long getPenaltyUntil() {
+            return this.penaltyUntil;
+        }
+
+        synchronized long getUpdated() {
+            return this.updated;
+        }
+
+    }
+
+    static class Scored {
+
+        final InetAddress address;
+        final double score;
+
+        Scored(final InetAddress address, final double score) {
+            super();
+            this.address = address;
+            this.score = score;
+        }
+
+    }
+
+    static class Penalized {
+
+        final InetAddress address;
+        final long until;
+
+        Penalized(final InetAddress address, final long until) {
+            super();
+            this.address = address;
+            this.until = until;
+        }
+
+    }
+
+}
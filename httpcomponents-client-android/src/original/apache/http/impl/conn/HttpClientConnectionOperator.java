@@ -27,12 +27,26 @@
 package original.apache.http.impl.conn;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.ConnectException;
+import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSocket;
 
 import org.kman.apache.http.logging.Logger;
 
@@ -43,6 +57,7 @@ import original.apache.http.annotation.Immutable;
 import original.apache.http.client.protocol.HttpClientContext;
 import original.apache.http.config.Lookup;
 import original.apache.http.config.SocketConfig;
+import original.apache.http.conn.AddressSelector;
 import original.apache.http.conn.DnsResolver;
 import original.apache.http.conn.HttpHostConnectException;
 import original.apache.http.conn.ManagedHttpClientConnection;
@@ -50,6 +65,10 @@ import original.apache.http.conn.SchemePortResolver;
 import original.apache.http.conn.UnsupportedSchemeException;
 import original.apache.http.conn.socket.ConnectionSocketFactory;
 import original.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import original.apache.http.conn.socket.LazyLayeredConnectionSocketFactory;
+import original.apache.http.conn.socket.UnixDomainConnectionSocketFactory;
+import original.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import original.apache.http.impl.BHttpConnectionBase;
 import original.apache.http.protocol.HttpContext;
 import original.apache.http.util.Args;
 
@@ -60,14 +79,44 @@ class HttpClientConnectionOperator {
 
     private final static String TAG = "HttpClient";
 
+    private static final byte[] LOOPBACK = new byte[] { 127, 0, 0, 1 };
+
+    private static final int CONNECT_THREADS = 8;
+
+    /**
+     * Runs the attempts of racing connects, shared by all operators. Threads
+     * are created on demand and let go of after a minute of idleness.
+     */
+    private static final ThreadPoolExecutor CONNECT_EXECUTOR = new ThreadPoolExecutor(
+            0, CONNECT_THREADS, 60, TimeUnit.SECONDS,
+            new SynchronousQueue<Runnable>(),
+            new ThreadFactory() {
+
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "Connect attempt");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+
+            });
+
     private final Lookup<ConnectionSocketFactory> socketFactoryRegistry;
     private final SchemePortResolver schemePortResolver;
     private final DnsResolver dnsResolver;
+    private final AddressSelector addressSelector;
 
     HttpClientConnectionOperator(
             final Lookup<ConnectionSocketFactory> socketFactoryRegistry,
             final SchemePortResolver schemePortResolver,
             final DnsResolver dnsResolver) {
+        this(socketFactoryRegistry, schemePortResolver, dnsResolver, null);
+    }
+
+    HttpClientConnectionOperator(
+            final Lookup<ConnectionSocketFactory> socketFactoryRegistry,
+            final SchemePortResolver schemePortResolver,
+            final DnsResolver dnsResolver,
+            final AddressSelector addressSelector) {
         super();
         Args.notNull(socketFactoryRegistry, "Socket factory registry");
         this.socketFactoryRegistry = socketFactoryRegistry;
@@ -75,6 +124,8 @@ class HttpClientConnectionOperator {
             DefaultSchemePortResolver.INSTANCE;
         this.dnsResolver = dnsResolver != null ? dnsResolver :
             SystemDefaultDnsResolver.INSTANCE;
+        this.addressSelector = addressSelector != null ? addressSelector :
+            DefaultAddressSelector.INSTANCE;
     }
 
     @SuppressWarnings("unchecked")
@@ -95,55 +146,69 @@ class HttpClientConnectionOperator {
             final SocketConfig socketConfig,
             final HttpContext context) throws IOException {
         final Lookup<ConnectionSocketFactory> registry = getSocketFactoryRegistry(context);
-        final ConnectionSocketFactory sf = registry.lookup(host.getSchemeName());
+        ConnectionSocketFactory sf = registry.lookup(host.getSchemeName());
         if (sf == null) {
             throw new UnsupportedSchemeException(host.getSchemeName() +
                     " protocol is not supported");
         }
-        final InetAddress[] addresses = this.dnsResolver.resolve(host.getHostName());
+        if (sf instanceof LazyLayeredConnectionSocketFactory) {
+            // Connect with the actual factory, so that an SSL one is recognized
+            sf = ((LazyLayeredConnectionSocketFactory) sf).getDelegate();
+        }
         final int port = this.schemePortResolver.resolve(host);
+        if (sf instanceof UnixDomainConnectionSocketFactory
+                && ((UnixDomainConnectionSocketFactory) sf).getAddress(host) != null) {
+            // Connected through a socket file, there is neither an address to
+            // resolve nor a TCP socket to set up
+            final InetSocketAddress remoteAddress = new InetSocketAddress(
+                    InetAddress.getByAddress(host.getHostName(), LOOPBACK), port);
+            final Socket sock = sf.connectSocket(
+                    connectTimeout, null, host, remoteAddress, localAddress, context);
+            sock.setSoTimeout(socketConfig.getSoTimeout());
+            conn.bind(sock);
+            if (Logger.isLoggable(TAG, Logger.DEBUG)) {
+                Logger.d(TAG, "Connection established " + conn);
+            }
+            return;
+        }
+        final InetAddress[] addresses = this.addressSelector.select(
+                host, this.dnsResolver.resolve(host.getHostName()));
+        if (socketConfig.getConnectAttemptDelay() > 0 && addresses.length > 1) {
+            race(conn, sf, host, interleave(addresses), port, localAddress, connectTimeout,
+                    socketConfig, context);
+            return;
+        }
         for (int i = 0; i < addresses.length; i++) {
             final InetAddress address = addresses[i];
             final boolean last = i == addresses.length - 1;
 
-            Socket sock = sf.createSocket(context);
-            sock.setSoTimeout(socketConfig.getSoTimeout());
-            sock.setReuseAddress(socketConfig.isSoReuseAddress());
-            sock.setTcpNoDelay(socketConfig.isTcpNoDelay());
-
-            // Fails in ARC runtime (Chrome / Chrome OS)
-            try {
-                sock.setKeepAlive(socketConfig.isSoKeepAlive());
-            }
-            catch (IOException x) {
-                Logger.w(TAG, "Ignoring exception in setKeepAlive", x);
-            }
-
-            final int linger = socketConfig.getSoLinger();
-            if (linger >= 0) {
-                sock.setSoLinger(linger > 0, linger);
-            }
+            Socket sock = createSocket(sf, socketConfig, context);
             conn.bind(sock);
 
             final InetSocketAddress remoteAddress = new InetSocketAddress(address, port);
             if (Logger.isLoggable(TAG, Logger.DEBUG)) {
                 Logger.d(TAG, "Connecting to " + remoteAddress);
             }
+            final ConnectAttempt attempt = new ConnectAttempt(
+                    sf, sock, host, remoteAddress, localAddress, connectTimeout, context, null);
             try {
-                sock = sf.connectSocket(
-                        connectTimeout, sock, host, remoteAddress, localAddress, context);
+                sock = attempt.connect();
+                this.addressSelector.connected(address, attempt.getMillis());
                 conn.bind(sock);
                 if (Logger.isLoggable(TAG, Logger.DEBUG)) {
                     Logger.d(TAG, "Connection established " + conn);
                 }
                 return;
             } catch (final SocketTimeoutException ex) {
+                attempt.report(this.addressSelector, ex);
                 if (last) {
                     final ConnectTimeoutException cex = new ConnectTimeoutException(
                             getConnectTimeoutMessage(ex, host, addresses));
                     cex.initCause(ex);
+                    throw cex;
                 }
             } catch (final ConnectException ex) {
+                attempt.report(this.addressSelector, ex);
                 if (last) {
                     final String msg = ex.getMessage();
                     if ("Connection timed out".equals(msg)) {
@@ -155,6 +220,9 @@ class HttpClientConnectionOperator {
                         throw new HttpHostConnectException(host, ex);
                     }
                 }
+            } catch (final IOException ex) {
+                attempt.report(this.addressSelector, ex);
+                throw ex;
             }
             if (Logger.isLoggable(TAG, Logger.DEBUG)) {
                 Logger.d(TAG, "Connect to " + remoteAddress + " timed out. " +
@@ -163,6 +231,182 @@ class HttpClientConnectionOperator {
         }
     }
 
+    private Socket createSocket(
+            final ConnectionSocketFactory sf,
+            final SocketConfig socketConfig,
+            final HttpContext context) throws IOException {
+        final Socket sock = sf.createSocket(context);
+        sock.setSoTimeout(socketConfig.getSoTimeout());
+        sock.setReuseAddress(socketConfig.isSoReuseAddress());
+        sock.setTcpNoDelay(socketConfig.isTcpNoDelay());
+        // Buffer sizes have to be set before connecting to affect the window scale
+        if (socketConfig.getSndBufSize() > 0) {
+            sock.setSendBufferSize(socketConfig.getSndBufSize());
+        }
+        if (socketConfig.getRcvBufSize() > 0) {
+            sock.setReceiveBufferSize(socketConfig.getRcvBufSize());
+        }
+
+        // Fails in ARC runtime (Chrome / Chrome OS)
+        try {
+            sock.setKeepAlive(socketConfig.isSoKeepAlive());
+        }
+        catch (IOException x) {
+            Logger.w(TAG, "Ignoring exception in setKeepAlive", x);
+        }
+
+        final int linger = socketConfig.getSoLinger();
+        if (linger >= 0) {
+            sock.setSoLinger(linger > 0, linger);
+        }
+        return sock;
+    }
+
+    /**
+     * Orders the given addresses so that address families alternate,
+     * starting with the family of the first address. The order of the
+     * addresses of each family is preserved.
+     */
+    static InetAddress[] interleave(final InetAddress[] addresses) {
+        final boolean firstIsV6 = addresses[0] instanceof Inet6Address;
+        final List<InetAddress> preferred = new ArrayList<InetAddress>(addresses.length);
+        final List<InetAddress> other = new ArrayList<InetAddress>(addresses.length);
+        for (final InetAddress address: addresses) {
+            if ((address instanceof Inet6Address) == firstIsV6) {
+                preferred.add(address);
+            } else {
+                other.add(address);
+            }
+        }
+        final InetAddress[] result = new InetAddress[addresses.length];
+        int n = 0;
+        for (int i = 0; n < result.length; i++) {
+            if (i < preferred.size()) {
+                result[n++] = preferred.get(i);
+            }
+            if (i < other.size()) {
+                result[n++] = other.get(i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Races connection attempts to the given addresses (Happy Eyeballs).
+     * An attempt is started whenever the previous one has failed or the
+     * connection attempt delay has passed without it completing. The first
+     * socket connected is bound to the connection, all other attempts are
+     * aborted and their sockets closed.
+     * <p/>
+     * Attempts are run on a small shared executor, or on the calling thread
+     * if all of its threads are busy. While the race is on, the connection
+     * is bound to a stand-in socket, so that shutting the connection down
+     * aborts all attempts.
+     */
+    private void race(
+            final ManagedHttpClientConnection conn,
+            final ConnectionSocketFactory sf,
+            final HttpHost host,
+            final InetAddress[] addresses,
+            final int port,
+            final InetSocketAddress localAddress,
+            final int connectTimeout,
+            final SocketConfig socketConfig,
+            final HttpContext context) throws IOException {
+        final int delay = socketConfig.getConnectAttemptDelay();
+        final BlockingQueue<ConnectAttempt> completed = new LinkedBlockingQueue<ConnectAttempt>();
+        final List<ConnectAttempt> attempts = new ArrayList<ConnectAttempt>(addresses.length);
+        ConnectAttempt winner = null;
+        IOException lastFailure = null;
+        int running = 0;
+        final RaceSocket raceSocket = new RaceSocket();
+        conn.bind(raceSocket);
+        try {
+            for (;;) {
+                if (attempts.size() < addresses.length) {
+                    final InetSocketAddress remoteAddress = new InetSocketAddress(
+                            addresses[attempts.size()], port);
+                    final Socket sock = createSocket(sf, socketConfig, context);
+                    final ConnectAttempt attempt = new ConnectAttempt(
+                            sf, sock, host, remoteAddress, localAddress, connectTimeout, context, completed);
+                    attempts.add(attempt);
+                    if (!raceSocket.register(attempt)) {
+                        throw new InterruptedIOException("Connection already shutdown");
+                    }
+                    if (Logger.isLoggable(TAG, Logger.DEBUG)) {
+                        Logger.d(TAG, "Connecting to " + remoteAddress);
+                    }
+                    try {
+                        CONNECT_EXECUTOR.execute(attempt);
+                    } catch (final RejectedExecutionException ex) {
+                        attempt.run();
+                    }
+                    running++;
+                }
+                final ConnectAttempt attempt;
+                if (attempts.size() < addresses.length) {
+                    attempt = completed.poll(delay, TimeUnit.MILLISECONDS);
+                    if (attempt == null) {
+                        // Give the next address a try in parallel
+                        continue;
+                    }
+                } else {
+                    attempt = completed.take();
+                }
+                running--;
+                if (raceSocket.isClosed()) {
+                    throw new InterruptedIOException("Connection already shutdown");
+                }
+                if (attempt.getFailure() == null) {
+                    this.addressSelector.connected(
+                            attempt.getRemoteAddress().getAddress(), attempt.getMillis());
+                    winner = attempt;
+                    break;
+                }
+                lastFailure = attempt.getFailure();
+                attempt.report(this.addressSelector, lastFailure);
+                if (Logger.isLoggable(TAG, Logger.DEBUG)) {
+                    Logger.d(TAG, "Connect to " + attempt.getRemoteAddress() + " failed: " +
+                            lastFailure.getMessage());
+                }
+                if (running == 0 && attempts.size() == addresses.length) {
+                    break;
+                }
+            }
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while connecting to " + host.toHostString());
+        } finally {
+            for (final ConnectAttempt attempt: attempts) {
+                if (attempt != winner) {
+                    attempt.cancel();
+                }
+            }
+            if (winner == null) {
+                raceSocket.close();
+            }
+        }
+        if (winner != null) {
+            conn.bind(winner.getSocket());
+            if (Logger.isLoggable(TAG, Logger.DEBUG)) {
+                Logger.d(TAG, "Connection established " + conn);
+            }
+            return;
+        }
+        if (lastFailure instanceof SocketTimeoutException
+                || (lastFailure instanceof ConnectException
+                        && "Connection timed out".equals(lastFailure.getMessage()))) {
+            final ConnectTimeoutException cex = new ConnectTimeoutException(
+                    getConnectTimeoutMessage(lastFailure, host, addresses));
+            cex.initCause(lastFailure);
+            throw cex;
+        } else if (lastFailure instanceof ConnectException) {
+            throw new HttpHostConnectException(host, (ConnectException) lastFailure);
+        } else {
+            throw lastFailure;
+        }
+    }
+
     private static String getConnectTimeoutMessage(
             final IOException cause,
             final HttpHost host,
@@ -191,10 +435,205 @@ class HttpClientConnectionOperator {
                     " protocol does not support connection upgrade");
         }
         final LayeredConnectionSocketFactory lsf = (LayeredConnectionSocketFactory) sf;
+        // The tunnel may have been set up on the socket channel in non-blocking
+        // mode, which the layered socket cannot read from
+        if (conn instanceof BHttpConnectionBase) {
+            ((BHttpConnectionBase) conn).releaseChannel();
+        }
         Socket sock = conn.getSocket();
         final int port = this.schemePortResolver.resolve(host);
         sock = lsf.createLayeredSocket(sock, host.getHostName(), port, context);
         conn.bind(sock);
     }
 
+    /**
+     * Stands in for the socket of a connection while connect attempts race.
+     * Closing it, as shutting the connection down does, aborts all attempts
+     * registered with it.
+     */
+    static class RaceSocket extends Socket {
+
+        private final List<ConnectAttempt> attempts;
+
+        RaceSocket() {
+            super();
+            this.attempts = new ArrayList<ConnectAttempt>();
+        }
+
+        /**
+         * Registers an attempt to be aborted on close.
+         *
+         * @return <code>false</code> if closed already, in which case the
+         *   attempt has been aborted.
+         */
+        synchronized boolean register(final ConnectAttempt attempt) {
+            if (isClosed()) {
+                attempt.cancel();
+                return false;
+            }
+            this.attempts.add(attempt);
+            return true;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            super.close();
+            for (final ConnectAttempt attempt: this.attempts) {
+                attempt.cancel();
+            }
+        }
+
+    }
+
+    /**
+     * Attempt to connect a socket to a single address. While racing, each
+     * attempt is run on the connect executor.
+     * <p/>
+     * The time taken to set up the TCP connection is kept apart from the
+     * time taken to layer TLS over it, so that only the former is reported
+     * to the {@link AddressSelector}, and a failed TLS handshake or hostname
+     * verification is not held against the address.
+     */
+    static class ConnectAttempt implements Runnable {
+
+        private final ConnectionSocketFactory sf;
+        private final HttpHost host;
+        private final InetSocketAddress remoteAddress;
+        private final InetSocketAddress localAddress;
+        private final int connectTimeout;
+        private final HttpContext context;
+        private final BlockingQueue<ConnectAttempt> completed;
+        private final Socket initialSocket;
+        private volatile Socket socket;
+        private volatile IOException failure;
+        private volatile boolean cancelled;
+        private volatile long millis;
+
+        ConnectAttempt(
+                final ConnectionSocketFactory sf,
+                final Socket sock,
+                final HttpHost host,
+                final InetSocketAddress remoteAddress,
+                final InetSocketAddress localAddress,
+                final int connectTimeout,
+                final HttpContext context,
+                final BlockingQueue<ConnectAttempt> completed) {
+            super();
+            this.sf = sf;
+            this.initialSocket = sock;
+            this.socket = sock;
+            this.host = host;
+            this.remoteAddress = remoteAddress;
+            this.localAddress = localAddress;
+            this.connectTimeout = connectTimeout;
+            this.context = context;
+            this.completed = completed;
+            this.millis = -1;
+        }
+
+        public void run() {
+            try {
+                this.socket = connect();
+                if (this.cancelled) {
+                    // Lost the race while the socket was being layered
+                    closeQuietly(this.socket);
+                }
+            } catch (final IOException ex) {
+                this.failure = ex;
+            } catch (final RuntimeException ex) {
+                final IOException iox = new IOException(ex.getMessage());
+                iox.initCause(ex);
+                this.failure = iox;
+            }
+            this.completed.add(this);
+        }
+
+        /**
+         * Connects the socket, recording the time the TCP connection took
+         * to set up.
+         */
+        Socket connect() throws IOException {
+            final long start = System.currentTimeMillis();
+            if (this.sf instanceof SSLConnectionSocketFactory && !(this.initialSocket instanceof SSLSocket)) {
+                // Same as SSLConnectionSocketFactory#connectSocket, in two steps
+                if (this.localAddress != null) {
+                    this.initialSocket.bind(this.localAddress);
+                }
+                try {
+                    this.initialSocket.connect(this.remoteAddress, this.connectTimeout);
+                } catch (final IOException ex) {
+                    closeQuietly(this.initialSocket);
+                    throw ex;
+                }
+                this.millis = System.currentTimeMillis() - start;
+                return ((SSLConnectionSocketFactory) this.sf).createLayeredSocket(
+                        this.initialSocket, this.host.getHostName(), this.remoteAddress.getPort(),
+                        this.context);
+            }
+            try {
+                final Socket sock = this.sf.connectSocket(this.connectTimeout, this.initialSocket,
+                        this.host, this.remoteAddress, this.localAddress, this.context);
+                this.millis = System.currentTimeMillis() - start;
+                return sock;
+            } catch (final IOException ex) {
+                if (this.initialSocket.isConnected()) {
+                    // Failed after the TCP connection was set up
+                    this.millis = System.currentTimeMillis() - start;
+                }
+                throw ex;
+            }
+        }
+
+        /**
+         * Reports the outcome of this failed attempt to the selector. If the
+         * TCP connection was set up, the address is reported as connected
+         * to. TLS failures are not held against the address.
+         */
+        void report(final AddressSelector addressSelector, final IOException ex) {
+            if (this.millis >= 0) {
+                addressSelector.connected(this.remoteAddress.getAddress(), this.millis);
+            } else if (!(ex instanceof SSLException)) {
+                addressSelector.failed(this.remoteAddress.getAddress(), ex);
+            }
+        }
+
+        InetSocketAddress getRemoteAddress() {
+            return this.remoteAddress;
+        }
+
+        Socket getSocket() {
+            return this.socket;
+        }
+
+        /**
+         * Returns the time the TCP connection took to set up in milliseconds,
+         * or <code>-1</code> if it was not set up.
+         */
+        long getMillis() {
+            return this.millis;
+        }
+
+        IOException getFailure() {
+            return this.failure;
+        }
+
+        /**
+         * Aborts the attempt, closing its socket whether or not it has been
+         * connected yet.
+         */
+        void cancel() {
+            this.cancelled = true;
+            closeQuietly(this.initialSocket);
+            closeQuietly(this.socket);
+        }
+
+        private static void closeQuietly(final Socket sock) {
+            try {
+                sock.close();
+            } catch (final IOException ignore) {
+            }
+        }
+
+    }
+
 }
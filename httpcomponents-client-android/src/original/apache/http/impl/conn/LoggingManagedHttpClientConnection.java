@@ -34,6 +34,8 @@ import original.apache.http.HttpResponse;
 import original.apache.http.annotation.NotThreadSafe;
 import original.apache.http.config.MessageConstraints;
 import original.apache.http.entity.ContentLengthStrategy;
+import original.apache.http.impl.io.DirectBufferPool;
+import original.apache.http.io.BufferAllocator;
 import original.apache.http.io.HttpMessageParserFactory;
 import original.apache.http.io.HttpMessageWriterFactory;
 
@@ -41,6 +43,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
 
@@ -61,10 +64,12 @@ class LoggingManagedHttpClientConnection extends DefaultManagedHttpClientConnect
             final ContentLengthStrategy incomingContentStrategy,
             final ContentLengthStrategy outgoingContentStrategy,
             final HttpMessageWriterFactory<HttpRequest> requestWriterFactory,
-            final HttpMessageParserFactory<HttpResponse> responseParserFactory) {
+            final HttpMessageParserFactory<HttpResponse> responseParserFactory,
+            final DirectBufferPool bufferPool,
+            final BufferAllocator allocator) {
         super(id, buffersize, fragmentSizeHint, chardecoder, charencoder,
                 constraints, incomingContentStrategy, outgoingContentStrategy,
-                requestWriterFactory, responseParserFactory);
+                requestWriterFactory, responseParserFactory, bufferPool, allocator);
         this.wire = new Wire(id);
     }
 
@@ -84,6 +89,12 @@ class LoggingManagedHttpClientConnection extends DefaultManagedHttpClientConnect
         super.shutdown();
     }
 
+    @Override
+    protected SocketChannel getSocketChannel(final Socket socket) {
+        // Wire logging needs the socket streams
+        return this.wire.enabled() ? null : super.getSocketChannel(socket);
+    }
+
     @Override
     protected InputStream getSocketInputStream(final Socket socket) throws IOException {
         InputStream in = super.getSocketInputStream(socket);
@@ -41,6 +41,7 @@ import original.apache.http.conn.HttpConnectionFactory;
 import original.apache.http.conn.ManagedHttpClientConnection;
 import original.apache.http.conn.routing.HttpRoute;
 import original.apache.http.impl.io.DefaultHttpRequestWriterFactory;
+import original.apache.http.impl.io.DirectBufferPool;
 import original.apache.http.io.HttpMessageParserFactory;
 import original.apache.http.io.HttpMessageWriterFactory;
 
@@ -58,15 +59,34 @@ public class ManagedHttpClientConnectionFactory
 
     private final HttpMessageWriterFactory<HttpRequest> requestWriterFactory;
     private final HttpMessageParserFactory<HttpResponse> responseParserFactory;
+    private final DirectBufferPool bufferPool;
 
+    /**
+     * Creates a connection factory.
+     *
+     * @param bufferPool pool of direct buffers. If not <code>null</code>, connections
+     *   do their I/O directly on the {@link java.nio.channels.SocketChannel} of sockets
+     *   that have one, such as those created by a {@link original.apache.http.conn.socket.PlainConnectionSocketFactory}
+     *   set to use channels.
+     *
+     * @since 4.3.5
+     */
     public ManagedHttpClientConnectionFactory(
             final HttpMessageWriterFactory<HttpRequest> requestWriterFactory,
-            final HttpMessageParserFactory<HttpResponse> responseParserFactory) {
+            final HttpMessageParserFactory<HttpResponse> responseParserFactory,
+            final DirectBufferPool bufferPool) {
         super();
         this.requestWriterFactory = requestWriterFactory != null ? requestWriterFactory :
             DefaultHttpRequestWriterFactory.INSTANCE;
         this.responseParserFactory = responseParserFactory != null ? responseParserFactory :
             DefaultHttpResponseParserFactory.INSTANCE;
+        this.bufferPool = bufferPool;
+    }
+
+    public ManagedHttpClientConnectionFactory(
+            final HttpMessageWriterFactory<HttpRequest> requestWriterFactory,
+            final HttpMessageParserFactory<HttpResponse> responseParserFactory) {
+        this(requestWriterFactory, responseParserFactory, null);
     }
 
     public ManagedHttpClientConnectionFactory(
@@ -106,7 +126,9 @@ public class ManagedHttpClientConnectionFactory
                 null,
                 null,
                 requestWriterFactory,
-                responseParserFactory);
+                responseParserFactory,
+                bufferPool,
+                cconfig.getBufferAllocator());
     }
 
 }
@@ -29,37 +29,53 @@ package original.apache.http.impl.conn;
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.kman.apache.http.logging.Logger;
 import original.apache.http.HttpClientConnection;
 import original.apache.http.HttpHost;
+import original.apache.http.annotation.GuardedBy;
 import original.apache.http.annotation.ThreadSafe;
+import original.apache.http.concurrent.BasicFuture;
+import original.apache.http.concurrent.FutureCallback;
 import original.apache.http.config.ConnectionConfig;
 import original.apache.http.config.Lookup;
 import original.apache.http.config.Registry;
 import original.apache.http.config.RegistryBuilder;
 import original.apache.http.config.SocketConfig;
+import original.apache.http.conn.AddressSelector;
 import original.apache.http.conn.ConnectionPoolTimeoutException;
 import original.apache.http.conn.ConnectionRequest;
 import original.apache.http.conn.DnsResolver;
-import original.apache.http.conn.HttpClientConnectionManager;
 import original.apache.http.conn.HttpConnectionFactory;
 import original.apache.http.conn.ManagedHttpClientConnection;
+import original.apache.http.conn.PriorityHttpClientConnectionManager;
 import original.apache.http.conn.SchemePortResolver;
 import original.apache.http.conn.routing.HttpRoute;
 import original.apache.http.conn.socket.ConnectionSocketFactory;
 import original.apache.http.conn.socket.PlainConnectionSocketFactory;
 import original.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import original.apache.http.io.BufferRecycler;
 import original.apache.http.pool.ConnFactory;
 import original.apache.http.pool.ConnPoolControl;
 import original.apache.http.pool.PoolStats;
+import original.apache.http.protocol.BasicHttpContext;
 import original.apache.http.protocol.HttpContext;
 import original.apache.http.util.Args;
 import original.apache.http.util.Asserts;
@@ -84,15 +100,23 @@ import original.apache.http.util.Asserts;
  */
 @ThreadSafe
 public class PoolingHttpClientConnectionManager
-    implements HttpClientConnectionManager, ConnPoolControl<HttpRoute>, Closeable {
+    implements PriorityHttpClientConnectionManager, ConnPoolControl<HttpRoute>, Closeable {
 
     private final static String TAG = "HttpClient";
 
+    private static final int PREWARM_THREADS = 4;
+
     private final ConfigData configData;
     private final CPool pool;
     private final HttpClientConnectionOperator connectionOperator;
     private final AtomicBoolean isShutDown;
 
+    @GuardedBy("this")
+    private ThreadPoolExecutor prewarmExecutor;
+
+    @GuardedBy("this")
+    private int prewarmJobs;
+
     private static Registry<ConnectionSocketFactory> getDefaultRegistry() {
         return RegistryBuilder.<ConnectionSocketFactory>create()
                 .register("http", PlainConnectionSocketFactory.getSocketFactory())
@@ -143,12 +167,43 @@ public class PoolingHttpClientConnectionManager
             final SchemePortResolver schemePortResolver,
             final DnsResolver dnsResolver,
             final long timeToLive, final TimeUnit tunit) {
+        this(socketFactoryRegistry, connFactory, schemePortResolver, dnsResolver, null,
+                timeToLive, tunit);
+    }
+
+    /**
+     * @param addressSelector orders the resolved addresses of a host before
+     *   they are connected to, and is told the outcome of each attempt. May be
+     *   <code>null</code>, in which case addresses are tried in the order
+     *   returned by the DNS resolver.
+     *
+     * @since 4.3.5
+     */
+    public PoolingHttpClientConnectionManager(
+            final Registry<ConnectionSocketFactory> socketFactoryRegistry,
+            final HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> connFactory,
+            final SchemePortResolver schemePortResolver,
+            final DnsResolver dnsResolver,
+            final AddressSelector addressSelector,
+            final long timeToLive, final TimeUnit tunit) {
         super();
         this.configData = new ConfigData();
         this.pool = new CPool(
                 new InternalConnectionFactory(this.configData, connFactory), 2, 20, timeToLive, tunit);
+        this.pool.setValidateAfterInactivity(2000);
         this.connectionOperator = new HttpClientConnectionOperator(
-                socketFactoryRegistry, schemePortResolver, dnsResolver);
+                socketFactoryRegistry, schemePortResolver, dnsResolver, addressSelector);
+        this.isShutDown = new AtomicBoolean(false);
+    }
+
+    PoolingHttpClientConnectionManager(
+            final CPool pool,
+            final ConfigData configData,
+            final HttpClientConnectionOperator connectionOperator) {
+        super();
+        this.configData = configData;
+        this.pool = pool;
+        this.connectionOperator = connectionOperator;
         this.isShutDown = new AtomicBoolean(false);
     }
 
@@ -213,11 +268,26 @@ public class PoolingHttpClientConnectionManager
     public ConnectionRequest requestConnection(
             final HttpRoute route,
             final Object state) {
+        return requestConnection(route, state, 0);
+    }
+
+    /**
+     * Returns a new {@link ConnectionRequest} served with the given priority.
+     * Pending requests of a higher priority get connections first. Requests
+     * of a priority above zero may also use the connections reserved with
+     * {@link #setPriorityReserve(HttpRoute, int)}.
+     *
+     * @since 4.3.5
+     */
+    public ConnectionRequest requestConnection(
+            final HttpRoute route,
+            final Object state,
+            final int priority) {
         Args.notNull(route, "HTTP route");
         if (Logger.isLoggable(TAG, Logger.DEBUG)) {
             Logger.d(TAG, "Connection request: " + format(route, state) + formatStats(route));
         }
-        final Future<CPoolEntry> future = this.pool.lease(route, state, null);
+        final Future<CPoolEntry> future = this.pool.lease(route, state, priority, null);
         return new ConnectionRequest() {
 
             public boolean cancel() {
@@ -245,6 +315,9 @@ public class PoolingHttpClientConnectionManager
                 throw new InterruptedException();
             }
             Asserts.check(entry.getConnection() != null, "Pool entry with no connection");
+            if (this.configData.getReceiveBufferTuner() != null) {
+                entry.markLeased();
+            }
             if (Logger.isLoggable(TAG, Logger.DEBUG)) {
                 Logger.d(TAG, "Connection leased: " + format(entry) + formatStats(entry.getRoute()));
             }
@@ -265,8 +338,13 @@ public class PoolingHttpClientConnectionManager
                 return;
             }
             final ManagedHttpClientConnection conn = entry.getConnection();
+            entry.reportTransfer(this.configData.getReceiveBufferTuner());
             try {
                 if (conn.isOpen()) {
+                    // Do not hold on to the session buffers while idle
+                    if (conn instanceof BufferRecycler) {
+                        ((BufferRecycler) conn).recycleBuffers();
+                    }
                     entry.setState(state);
                     entry.updateExpiry(keepalive, tunit != null ? tunit : TimeUnit.MILLISECONDS);
                     if (Logger.isLoggable(TAG, Logger.DEBUG)) {
@@ -314,6 +392,13 @@ public class PoolingHttpClientConnectionManager
         if (socketConfig == null) {
             socketConfig = SocketConfig.DEFAULT;
         }
+        final ReceiveBufferTuner tuner = this.configData.getReceiveBufferTuner();
+        if (tuner != null) {
+            final int rcvBufSize = tuner.getReceiveBufferSize(route);
+            if (rcvBufSize > socketConfig.getRcvBufSize()) {
+                socketConfig = SocketConfig.copy(socketConfig).setRcvBufSize(rcvBufSize).build();
+            }
+        }
         this.connectionOperator.connect(
                 conn, host, localAddress, connectTimeout, socketConfig, context);
     }
@@ -344,11 +429,333 @@ public class PoolingHttpClientConnectionManager
         }
     }
 
+    /**
+     * Opens up to <code>count</code> connections to the given route in parallel
+     * and keeps them in the pool as available connections, so that requests
+     * executed later do not have to pay the connection setup cost. Idle
+     * connections already in the pool are counted towards <code>count</code>.
+     * The number of connections is capped by the per route and total limits,
+     * and by the capacity the pool has to spare when this method is called.
+     * Each connection is opened as soon as it has been leased and released to
+     * the pool as soon as it has been opened.
+     * <p/>
+     * Connections are opened by a small pool of background threads shared by
+     * all pre-warming requests of this connection manager.
+     * <p/>
+     * Tunnelled routes cannot be pre-warmed, as completing them requires
+     * a request to be executed through the proxy.
+     *
+     * @param route the route to open connections to.
+     * @param count the number of connections to open.
+     * @param timeout the timeout to lease and to connect each connection. If
+     *   not positive, connections are leased without waiting for the pool to
+     *   free up capacity, and connecting does not time out.
+     * @param tunit the unit of the timeout.
+     * @param callback callback to be notified of completion. May be <code>null</code>.
+     * @return future completed once all connection attempts have finished.
+     *
+     * @since 4.3.5
+     */
+    public Future<PrewarmResult> prewarm(
+            final HttpRoute route,
+            final int count,
+            final long timeout, final TimeUnit tunit,
+            final FutureCallback<PrewarmResult> callback) {
+        Args.notNull(route, "HTTP route");
+        Args.check(!route.isTunnelled(), "Tunnelled routes cannot be pre-warmed");
+        Args.notNull(tunit, "Time unit");
+        Asserts.check(!this.isShutDown.get(), "Connection manager has been shut down");
+        final int n = Math.min(count, Math.min(getMaxPerRoute(route), getMaxTotal()));
+        final BasicFuture<PrewarmResult> future = new BasicFuture<PrewarmResult>(callback);
+        if (n <= 0) {
+            future.completed(new PrewarmResult(route, 0, 0, null));
+            return future;
+        }
+        final PoolStats totals = this.pool.getTotalStats();
+        final PoolStats stats = this.pool.getStats(route);
+        final int available = Math.min(stats.getAvailable(), n);
+        final int routeSpare = stats.getMax() - stats.getLeased() - stats.getAvailable() - stats.getPending();
+        // Idle connections of other routes are closed to make room if need be
+        final int totalSpare = totals.getMax() - totals.getLeased() - totals.getPending();
+        final int missing = Math.min(n - available, Math.min(routeSpare, totalSpare));
+        if (missing <= 0) {
+            future.completed(new PrewarmResult(route, n, available, null));
+            return future;
+        }
+        if (Logger.isLoggable(TAG, Logger.DEBUG)) {
+            Logger.d(TAG, "Pre-warming " + missing + " connection(s): " + format(route, null));
+        }
+        prewarmRoute(route, n, available + missing, timeout, tunit, future);
+        return future;
+    }
+
+    /**
+     * @since 4.3.5
+     */
+    public Future<PrewarmResult> prewarm(
+            final HttpRoute route,
+            final int count,
+            final long timeout, final TimeUnit tunit) {
+        return prewarm(route, count, timeout, tunit, null);
+    }
+
+    /**
+     * Pre-warms connections to each of the given routes.
+     *
+     * @return future completed once all routes have been pre-warmed, with
+     *   the results in the same order as the routes.
+     *
+     * @see #prewarm(HttpRoute, int, long, TimeUnit, FutureCallback)
+     *
+     * @since 4.3.5
+     */
+    public Future<List<PrewarmResult>> prewarm(
+            final List<HttpRoute> routes,
+            final int count,
+            final long timeout, final TimeUnit tunit,
+            final FutureCallback<List<PrewarmResult>> callback) {
+        Args.notNull(routes, "Routes");
+        Args.notNull(tunit, "Time unit");
+        // Check all routes up front so that no pre-warming is left orphaned
+        for (final HttpRoute route: routes) {
+            Args.notNull(route, "HTTP route");
+            Args.check(!route.isTunnelled(), "Tunnelled routes cannot be pre-warmed");
+        }
+        Asserts.check(!this.isShutDown.get(), "Connection manager has been shut down");
+        final BasicFuture<List<PrewarmResult>> future = new BasicFuture<List<PrewarmResult>>(callback);
+        final int n = routes.size();
+        if (n == 0) {
+            future.completed(Collections.<PrewarmResult>emptyList());
+            return future;
+        }
+        final PrewarmResult[] results = new PrewarmResult[n];
+        final AtomicInteger remaining = new AtomicInteger(n);
+        for (int i = 0; i < n; i++) {
+            final int index = i;
+            prewarm(routes.get(i), count, timeout, tunit, new FutureCallback<PrewarmResult>() {
+
+                public void completed(final PrewarmResult result) {
+                    results[index] = result;
+                    if (remaining.decrementAndGet() == 0) {
+                        future.completed(Arrays.asList(results));
+                    }
+                }
+
+                public void failed(final Exception ex) {
+                    future.failed(ex);
+                }
+
+                public void cancelled() {
+                    future.cancel();
+                }
+
+            });
+        }
+        return future;
+    }
+
+    /**
+     * Runs a pre-warming job on the pre-warming executor, which is created
+     * on demand and shut down again once it has no jobs left, so that no
+     * idle threads are kept around.
+     */
+    private synchronized void executePrewarm(final Runnable job) {
+        Asserts.check(!this.isShutDown.get(), "Connection manager has been shut down");
+        if (this.prewarmExecutor == null) {
+            this.prewarmExecutor = new ThreadPoolExecutor(
+                    PREWARM_THREADS, PREWARM_THREADS, 0, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+
+                        public Thread newThread(final Runnable r) {
+                            final Thread thread = new Thread(r, "Connection pre-warm");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+
+                    });
+        }
+        this.prewarmJobs++;
+        this.prewarmExecutor.execute(new Runnable() {
+
+            public void run() {
+                try {
+                    job.run();
+                } finally {
+                    prewarmDone();
+                }
+            }
+
+        });
+    }
+
+    private synchronized void prewarmDone() {
+        this.prewarmJobs--;
+        if (this.prewarmJobs == 0 && this.prewarmExecutor != null) {
+            this.prewarmExecutor.shutdown();
+            this.prewarmExecutor = null;
+        }
+    }
+
+    private void prewarmRoute(
+            final HttpRoute route,
+            final int requested,
+            final int count,
+            final long timeout, final TimeUnit tunit,
+            final BasicFuture<PrewarmResult> future) {
+        final PrewarmTask task = new PrewarmTask(route, requested, count, timeout, tunit, future);
+        final int workers = Math.min(count, PREWARM_THREADS);
+        try {
+            for (int i = 0; i < workers; i++) {
+                task.workers.incrementAndGet();
+                try {
+                    executePrewarm(task);
+                } catch (final IllegalStateException ex) {
+                    // Shut down in the meantime
+                    task.workers.decrementAndGet();
+                    task.failed(ex);
+                    break;
+                }
+            }
+        } finally {
+            task.finish();
+        }
+    }
+
+    /**
+     * Pre-warms a route with a few workers, each of which leases a connection,
+     * opens it right away and releases it to the pool as soon as it has been
+     * opened. Open connections handed out by the pool, which may be ones just
+     * pre-warmed, are held until the route is done so that every lease yields
+     * a distinct connection. Leases never wait without a deadline.
+     */
+    class PrewarmTask implements Runnable {
+
+        private final HttpRoute route;
+        private final int requested;
+        private final long timeout;
+        private final TimeUnit tunit;
+        private final BasicFuture<PrewarmResult> future;
+        private final AtomicInteger remaining;
+        private final AtomicInteger workers;
+        private final Set<CPoolEntry> warm;
+        private final List<HttpClientConnection> held;
+        private final List<Exception> failures;
+
+        PrewarmTask(
+                final HttpRoute route,
+                final int requested,
+                final int count,
+                final long timeout, final TimeUnit tunit,
+                final BasicFuture<PrewarmResult> future) {
+            super();
+            this.route = route;
+            this.requested = requested;
+            this.timeout = timeout;
+            this.tunit = tunit;
+            this.future = future;
+            this.remaining = new AtomicInteger(count);
+            // Held by the submitter until all workers have been started
+            this.workers = new AtomicInteger(1);
+            this.warm = Collections.synchronizedSet(new HashSet<CPoolEntry>());
+            this.held = Collections.synchronizedList(new ArrayList<HttpClientConnection>());
+            this.failures = Collections.synchronizedList(new ArrayList<Exception>());
+        }
+
+        public void run() {
+            final long leaseTimeout = this.timeout > 0 ? this.tunit.toMillis(this.timeout) : 1;
+            try {
+                while (claim() && !this.future.isCancelled()) {
+                    final HttpClientConnection conn;
+                    try {
+                        conn = requestConnection(this.route, null).get(leaseTimeout, TimeUnit.MILLISECONDS);
+                    } catch (final Exception ex) {
+                        failed(ex);
+                        break;
+                    }
+                    final CPoolEntry entry = CPoolProxy.getPoolEntry(conn);
+                    if (conn.isOpen()) {
+                        this.held.add(conn);
+                        if (!this.warm.add(entry)) {
+                            // Pre-warmed by another worker, does not use up a lease
+                            this.remaining.incrementAndGet();
+                        }
+                        continue;
+                    }
+                    // Recorded before release so that leasing it again is noticed
+                    this.warm.add(entry);
+                    try {
+                        prewarmConnection(conn, this.route, this.timeout, this.tunit);
+                    } catch (final IOException ex) {
+                        this.warm.remove(entry);
+                        failed(ex);
+                    }
+                }
+            } finally {
+                finish();
+            }
+        }
+
+        private boolean claim() {
+            for (;;) {
+                final int n = this.remaining.get();
+                if (n <= 0) {
+                    return false;
+                }
+                if (this.remaining.compareAndSet(n, n - 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void failed(final Exception ex) {
+            if (Logger.isLoggable(TAG, Logger.DEBUG)) {
+                Logger.d(TAG, "Pre-warming failed: " + format(this.route, null), ex);
+            }
+            this.failures.add(ex);
+        }
+
+        void finish() {
+            if (this.workers.decrementAndGet() > 0) {
+                return;
+            }
+            for (final HttpClientConnection conn: this.held) {
+                releaseConnection(conn, null, 0, TimeUnit.MILLISECONDS);
+            }
+            this.future.completed(new PrewarmResult(
+                    this.route, this.requested, this.warm.size(), new ArrayList<Exception>(this.failures)));
+        }
+
+    }
+
+    /**
+     * Opens a leased connection and releases it to the pool right away.
+     */
+    private void prewarmConnection(
+            final HttpClientConnection conn,
+            final HttpRoute route,
+            final long timeout, final TimeUnit tunit) throws IOException {
+        try {
+            final HttpContext context = new BasicHttpContext();
+            connect(conn, route, timeout > 0 ? (int) tunit.toMillis(timeout) : 0, context);
+            routeComplete(conn, route, context);
+        } finally {
+            releaseConnection(conn, null, 0, TimeUnit.MILLISECONDS);
+        }
+    }
+
     public void shutdown() {
         if (this.isShutDown.compareAndSet(false, true)) {
             if (Logger.isLoggable(TAG, Logger.DEBUG)) {
                 Logger.d(TAG, "Connection manager is shutting down");
             }
+            synchronized (this) {
+                // Pending jobs still run and fail to lease from the shut down pool
+                if (this.prewarmExecutor != null) {
+                    this.prewarmExecutor.shutdown();
+                    this.prewarmExecutor = null;
+                }
+            }
             try {
                 this.pool.shutdown();
             } catch (final IOException ex) {
@@ -398,6 +805,115 @@ public class PoolingHttpClientConnectionManager
         this.pool.setMaxPerRoute(route, max);
     }
 
+    /**
+     * @since 4.3.5
+     */
+    public int getDefaultPriorityReserve() {
+        return this.pool.getDefaultPriorityReserve();
+    }
+
+    /**
+     * Sets the number of connections per route that only requests of
+     * a priority above zero may use.
+     *
+     * @see original.apache.http.client.config.RequestConfig#getPriority()
+     * @since 4.3.5
+     */
+    public void setDefaultPriorityReserve(final int reserve) {
+        this.pool.setDefaultPriorityReserve(reserve);
+    }
+
+    /**
+     * @since 4.3.5
+     */
+    public int getPriorityReserve(final HttpRoute route) {
+        return this.pool.getPriorityReserve(route);
+    }
+
+    /**
+     * @since 4.3.5
+     */
+    public void setPriorityReserve(final HttpRoute route, final int reserve) {
+        this.pool.setPriorityReserve(route, reserve);
+    }
+
+    /**
+     * @since 4.3.5
+     */
+    public int getMinPerRoute(final HttpRoute route) {
+        return this.pool.getMinPerRoute(route);
+    }
+
+    /**
+     * Guarantees the given route a minimum number of connections that other
+     * routes cannot take from it. The maximum total is shared by all routes
+     * less the sum of these minimums.
+     *
+     * @since 4.3.5
+     */
+    public void setMinPerRoute(final HttpRoute route, final int min) {
+        this.pool.setMinPerRoute(route, min);
+    }
+
+    /**
+     * @since 4.3.5
+     */
+    public int getRouteWeight(final HttpRoute route) {
+        return this.pool.getRouteWeight(route);
+    }
+
+    /**
+     * Sets the weight of the given route in fair share mode.
+     *
+     * @see #setFairShare(boolean)
+     * @since 4.3.5
+     */
+    public void setRouteWeight(final HttpRoute route, final int weight) {
+        this.pool.setRouteWeight(route, weight);
+    }
+
+    /**
+     * @since 4.3.5
+     */
+    public boolean isFairShare() {
+        return this.pool.isFairShare();
+    }
+
+    /**
+     * Enables or disables fair sharing of the maximum total between routes.
+     * In fair share mode, requests waiting for a connection because the
+     * maximum total has been reached are served across routes in proportion
+     * to the route weights. A route holding more than its share gives up
+     * the connections it releases while other routes wait, so that a slow
+     * route cannot starve the others.
+     *
+     * @since 4.3.5
+     */
+    public void setFairShare(final boolean fairShare) {
+        this.pool.setFairShare(fairShare);
+    }
+
+    /**
+     * @since 4.3.5
+     */
+    public boolean isThreadAffinity() {
+        return this.pool.isThreadAffinity();
+    }
+
+    /**
+     * Enables or disables thread affinity. With thread affinity, a persistent
+     * connection released while no other request waits for a connection is
+     * kept aside for the releasing thread, whose next request to the same
+     * route reuses it without contending for the pool locks. Connections
+     * kept aside are returned to the pool as soon as other requests need
+     * them, or when idle or expired connections are closed.
+     *
+     * @since 4.3.5
+     */
+    public void setThreadAffinity(final boolean threadAffinity) {
+        this.pool.setThreadAffinity(threadAffinity);
+    }
+
     public PoolStats getTotalStats() {
         return this.pool.getTotalStats();
     }
@@ -406,6 +922,30 @@ public class PoolingHttpClientConnectionManager
         return this.pool.getStats(route);
     }
 
+    /**
+     * @see #setValidateAfterInactivity(int)
+     *
+     * @since 4.3.5
+     */
+    public int getValidateAfterInactivity() {
+        return this.pool.getValidateAfterInactivity();
+    }
+
+    /**
+     * Defines period of inactivity in milliseconds after which persistent connections must
+     * be re-validated prior to being leased to the consumer. Non-positive value passed
+     * to this method disables connection validation. Connections used more recently are
+     * leased without being checked for staleness. This check helps detect connections that
+     * have become stale (half-closed) while kept inactive in the pool.
+     * <p/>
+     * Default: 2000 milliseconds
+     *
+     * @since 4.3.5
+     */
+    public void setValidateAfterInactivity(final int ms) {
+        this.pool.setValidateAfterInactivity(ms);
+    }
+
     public SocketConfig getDefaultSocketConfig() {
         return this.configData.getDefaultSocketConfig();
     }
@@ -438,12 +978,32 @@ public class PoolingHttpClientConnectionManager
         this.configData.setConnectionConfig(host, connectionConfig);
     }
 
+    /**
+     * @since 4.3.5
+     */
+    public ReceiveBufferTuner getReceiveBufferTuner() {
+        return this.configData.getReceiveBufferTuner();
+    }
+
+    /**
+     * Sets the tuner sizing the receive buffers of new connections from
+     * the transfers of released ones. A buffer size chosen by the tuner
+     * overrides a smaller one of the socket configuration. May be
+     * <code>null</code>, which is the default, to disable tuning.
+     *
+     * @since 4.3.5
+     */
+    public void setReceiveBufferTuner(final ReceiveBufferTuner receiveBufferTuner) {
+        this.configData.setReceiveBufferTuner(receiveBufferTuner);
+    }
+
     static class ConfigData {
 
         private final Map<HttpHost, SocketConfig> socketConfigMap;
         private final Map<HttpHost, ConnectionConfig> connectionConfigMap;
         private volatile SocketConfig defaultSocketConfig;
         private volatile ConnectionConfig defaultConnectionConfig;
+        private volatile ReceiveBufferTuner receiveBufferTuner;
 
         ConfigData() {
             super();
@@ -483,6 +1043,14 @@ public class PoolingHttpClientConnectionManager
             this.connectionConfigMap.put(host, connectionConfig);
         }
 
+        public ReceiveBufferTuner getReceiveBufferTuner() {
+            return this.receiveBufferTuner;
+        }
+
+        public void setReceiveBufferTuner(final ReceiveBufferTuner receiveBufferTuner) {
+            this.receiveBufferTuner = receiveBufferTuner;
+        }
+
     }
 
     static class InternalConnectionFactory implements ConnFactory<HttpRoute, ManagedHttpClientConnection> {
@@ -0,0 +1,109 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.impl.conn;
+
+import java.util.Collections;
+import java.util.List;
+
+import original.apache.http.annotation.Immutable;
+import original.apache.http.conn.routing.HttpRoute;
+
+/**
+ * Outcome of pre-warming connections to a route.
+ *
+ * @see PoolingHttpClientConnectionManager#prewarm(HttpRoute, int, long, java.util.concurrent.TimeUnit)
+ *
+ * @since 4.3.5
+ */
+@Immutable
+public class PrewarmResult {
+
+    private final HttpRoute route;
+    private final int requested;
+    private final int succeeded;
+    private final List<Exception> failures;
+
+    public PrewarmResult(
+            final HttpRoute route,
+            final int requested,
+            final int succeeded,
+            final List<Exception> failures) {
+        super();
+        this.route = route;
+        this.requested = requested;
+        this.succeeded = succeeded;
+        this.failures = failures != null ? Collections.unmodifiableList(failures) :
+            Collections.<Exception>emptyList();
+    }
+
+    public HttpRoute getRoute() {
+        return this.route;
+    }
+
+    /**
+     * Gets the number of connections attempted, after the per route and
+     * total limits have been applied.
+     */
+    public int getRequested() {
+        return this.requested;
+    }
+
+    /**
+     * Gets the number of connections open and available in the pool
+     * once pre-warming completed.
+     */
+    public int getSucceeded() {
+        return this.succeeded;
+    }
+
+    /**
+     * Gets the exceptions thrown by failed connection attempts.
+     */
+    public List<Exception> getFailures() {
+        return this.failures;
+    }
+
+    public boolean isSuccessful() {
+        return this.failures.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[route: ");
+        buffer.append(this.route);
+        buffer.append("; requested: ");
+        buffer.append(this.requested);
+        buffer.append("; succeeded: ");
+        buffer.append(this.succeeded);
+        buffer.append("; failed: ");
+        buffer.append(this.failures.size());
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+}
@@ -0,0 +1,231 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.impl.conn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.kman.apache.http.logging.Logger;
+import original.apache.http.annotation.GuardedBy;
+import original.apache.http.annotation.ThreadSafe;
+import original.apache.http.conn.routing.HttpRoute;
+import original.apache.http.util.Args;
+
+/**
+ * Sizes the receive buffers of new connections per route from the
+ * transfers observed on earlier connections of the route.
+ * <p/>
+ * Whenever a connection is released, the bytes it received and the
+ * responses it read while leased are reported, along with the time it was
+ * leased for. Per route, the average response size and the throughput are
+ * tracked as exponentially weighted moving averages. The receive buffer of
+ * the route is then grown to hold what arrives in {@link #WINDOW_MILLIS}
+ * at the observed throughput, as long as responses are that large, rounded
+ * up to a power of two and capped at a maximum. As the throughput of a
+ * connection limited by its receive buffer grows with the buffer, the size
+ * keeps growing until the link rather than the buffer is the limit.
+ * <p/>
+ * Buffers are never shrunk, and never set below a minimum: setting a
+ * receive buffer size disables auto-tuning of the kernel for the socket,
+ * which handles small transfers well.
+ * <p/>
+ * Statistics are kept for up to {@link #MAX_ROUTES} routes, dropping those
+ * of the routes not used for the longest time beyond that.
+ *
+ * @since 4.3.5
+ */
+@ThreadSafe
+public class ReceiveBufferTuner {
+
+    private final static String TAG = "HttpClient";
+
+    /**
+     * Time worth of data a receive buffer should hold, a generous round
+     * trip time.
+     */
+    public static final int WINDOW_MILLIS = 100;
+
+    /**
+     * Maximum number of routes statistics are kept for.
+     */
+    public static final int MAX_ROUTES = 1024;
+
+    private static final double ALPHA = 0.25;
+
+    private final int minSize;
+    private final int maxSize;
+    private final ConcurrentMap<HttpRoute, RouteStats> routes;
+
+    /**
+     * @param minSize smallest receive buffer size set.
+     * @param maxSize largest receive buffer size set.
+     */
+    public ReceiveBufferTuner(final int minSize, final int maxSize) {
+        super();
+        Args.positive(minSize, "Min buffer size");
+        Args.check(maxSize >= minSize, "Max buffer size may not be less than min buffer size");
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.routes = new ConcurrentHashMap<HttpRoute, RouteStats>();
+    }
+
+    /**
+     * Creates a tuner setting receive buffers between 128 KB and 4 MB.
+     */
+    public ReceiveBufferTuner() {
+        this(128 * 1024, 4 * 1024 * 1024);
+    }
+
+    /**
+     * Returns the receive buffer size for new connections of the given
+     * route, or <code>0</code> to leave it to the system.
+     */
+    public int getReceiveBufferSize(final HttpRoute route) {
+        final RouteStats stats = this.routes.get(route);
+        return stats != null ? stats.getBufferSize() : 0;
+    }
+
+    /**
+     * Reports a transfer over a connection of the given route.
+     *
+     * @param route the route of the connection.
+     * @param bytes bytes received while the connection was leased.
+     * @param responses responses read while the connection was leased.
+     * @param millis time the connection was leased for.
+     */
+    public void update(final HttpRoute route, final long bytes, final long responses, final long millis) {
+        Args.notNull(route, "HTTP route");
+        if (bytes <= 0 || responses <= 0) {
+            return;
+        }
+        RouteStats stats = this.routes.get(route);
+        if (stats == null) {
+            if (this.routes.size() >= MAX_ROUTES) {
+                prune();
+            }
+            stats = new RouteStats();
+            final RouteStats existing = this.routes.putIfAbsent(route, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        final int size = stats.update(bytes, responses, millis, this.minSize, this.maxSize);
+        if (size > 0 && Logger.isLoggable(TAG, Logger.DEBUG)) {
+            Logger.d(TAG, "Receive buffer for " + route + " grown to " + size);
+        }
+    }
+
+    /**
+     * Drops the statistics of the routes not used for the longest time,
+     * leaving room for a quarter of the maximum number of routes.
+     */
+    private synchronized void prune() {
+        if (this.routes.size() < MAX_ROUTES) {
+            return;
+        }
+        final List<Map.Entry<HttpRoute, RouteStats>> entries =
+                new ArrayList<Map.Entry<HttpRoute, RouteStats>>(this.routes.entrySet());
+        final long[] updated = new long[entries.size()];
+        for (int i = 0; i < updated.length; i++) {
+            updated[i] = entries.get(i).getValue().getUpdated();
+        }
+        final long[] sorted = updated.clone();
+        Arrays.sort(sorted);
+        final long threshold = sorted[updated.length - (MAX_ROUTES - MAX_ROUTES / 4)];
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] < threshold) {
+                final Map.Entry<HttpRoute, RouteStats> e = entries.get(i);
+                this.routes.remove(e.getKey(), e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Forgets the statistics and buffer sizes of all routes.
+     */
+    public void reset() {
+        this.routes.clear();
+    }
+
+    static class RouteStats {
+
+        @GuardedBy("this")
+        private double responseSize = -1;
+        @GuardedBy("this")
+        private double throughput = -1;
+        @GuardedBy("this")
+        private int bufferSize;
+        @GuardedBy("this")
+        private long updated;
+
+        synchronized int getBufferSize() {
+            return this.bufferSize;
+        }
+
+        synchronized long getUpdated() {
+            return this.updated;
+        }
+
+        /**
+         * @return the new buffer size if grown, <code>0</code> otherwise.
+         */
+        synchronized int update(
+                final long bytes, final long responses, final long millis,
+                final int minSize, final int maxSize) {
+            this.updated = System.currentTimeMillis();
+            final double size = (double) bytes / responses;
+            this.responseSize = this.responseSize < 0 ? size : this.responseSize + ALPHA * (size - this.responseSize);
+            if (millis > 0) {
+                final double rate = (double) bytes / millis;
+                this.throughput = this.throughput < 0 ? rate : this.throughput + ALPHA * (rate - this.throughput);
+            }
+            if (this.throughput < 0) {
+                return 0;
+            }
+            final double target = Math.min(this.responseSize, this.throughput * WINDOW_MILLIS);
+            if (target < minSize) {
+                return 0;
+            }
+            int newSize = minSize;
+            while (newSize < target && newSize < maxSize) {
+                newSize <<= 1;
+            }
+            newSize = Math.min(newSize, maxSize);
+            if (newSize <= this.bufferSize) {
+                return 0;
+            }
+            this.bufferSize = newSize;
+            return newSize;
+        }
+
+    }
+
+}
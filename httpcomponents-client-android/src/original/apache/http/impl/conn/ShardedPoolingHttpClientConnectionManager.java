@@ -0,0 +1,377 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.impl.conn;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import original.apache.http.HttpClientConnection;
+import original.apache.http.HttpHost;
+import original.apache.http.annotation.ThreadSafe;
+import original.apache.http.config.ConnectionConfig;
+import original.apache.http.config.Registry;
+import original.apache.http.config.RegistryBuilder;
+import original.apache.http.config.SocketConfig;
+import original.apache.http.conn.AddressSelector;
+import original.apache.http.conn.ConnectionRequest;
+import original.apache.http.conn.DnsResolver;
+import original.apache.http.conn.HttpConnectionFactory;
+import original.apache.http.conn.ManagedHttpClientConnection;
+import original.apache.http.conn.PriorityHttpClientConnectionManager;
+import original.apache.http.conn.SchemePortResolver;
+import original.apache.http.conn.routing.HttpRoute;
+import original.apache.http.conn.socket.ConnectionSocketFactory;
+import original.apache.http.conn.socket.PlainConnectionSocketFactory;
+import original.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import original.apache.http.pool.ConnPoolControl;
+import original.apache.http.pool.PoolBudget;
+import original.apache.http.pool.PoolStats;
+import original.apache.http.protocol.HttpContext;
+import original.apache.http.util.Args;
+
+/**
+ * <tt>ShardedPoolingHttpClientConnectionManager</tt> partitions routes across
+ * a number of independent connection pools, each of which behaves like the
+ * pool of {@link PoolingHttpClientConnectionManager}. Every route is
+ * hashed to one shard, so that lease and release operations on routes of
+ * different shards share no pool structure at all. This helps applications
+ * that talk to many hosts from many threads at once.
+ * <p/>
+ * The maximum total number of connections applies to all shards together.
+ * Shards take connections from a shared budget by means of an atomic
+ * counter rather than each being given a fixed part of the total. Per
+ * route limits and statistics are those of the shard of the route, while
+ * total statistics are aggregated over all shards. Socket and connection
+ * configuration is shared by all shards.
+ *
+ * @since 4.3.5
+ */
+@ThreadSafe
+public class ShardedPoolingHttpClientConnectionManager
+    implements PriorityHttpClientConnectionManager, ConnPoolControl<HttpRoute>, Closeable {
+
+    private final PoolingHttpClientConnectionManager.ConfigData configData;
+    private final PoolBudget budget;
+    private final PoolingHttpClientConnectionManager[] shards;
+
+    private static Registry<ConnectionSocketFactory> getDefaultRegistry() {
+        return RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", SSLConnectionSocketFactory.getSocketFactory())
+                .build();
+    }
+
+    private static int getDefaultShardCount() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    public ShardedPoolingHttpClientConnectionManager() {
+        this(getDefaultRegistry());
+    }
+
+    public ShardedPoolingHttpClientConnectionManager(final int shardCount) {
+        this(getDefaultRegistry(), null, null, null, -1, TimeUnit.MILLISECONDS, shardCount);
+    }
+
+    public ShardedPoolingHttpClientConnectionManager(
+            final Registry<ConnectionSocketFactory> socketFactoryRegistry) {
+        this(socketFactoryRegistry, null, null, null, -1, TimeUnit.MILLISECONDS, getDefaultShardCount());
+    }
+
+    public ShardedPoolingHttpClientConnectionManager(
+            final Registry<ConnectionSocketFactory> socketFactoryRegistry,
+            final int shardCount) {
+        this(socketFactoryRegistry, null, null, null, -1, TimeUnit.MILLISECONDS, shardCount);
+    }
+
+    public ShardedPoolingHttpClientConnectionManager(
+            final Registry<ConnectionSocketFactory> socketFactoryRegistry,
+            final HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> connFactory,
+            final SchemePortResolver schemePortResolver,
+            final DnsResolver dnsResolver,
+            final long timeToLive, final TimeUnit tunit,
+            final int shardCount) {
+        this(socketFactoryRegistry, connFactory, schemePortResolver, dnsResolver, null,
+                timeToLive, tunit, shardCount);
+    }
+
+    /**
+     * @see PoolingHttpClientConnectionManager#PoolingHttpClientConnectionManager(
+     *   Registry, HttpConnectionFactory, SchemePortResolver, DnsResolver, AddressSelector,
+     *   long, TimeUnit)
+     */
+    public ShardedPoolingHttpClientConnectionManager(
+            final Registry<ConnectionSocketFactory> socketFactoryRegistry,
+            final HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> connFactory,
+            final SchemePortResolver schemePortResolver,
+            final DnsResolver dnsResolver,
+            final AddressSelector addressSelector,
+            final long timeToLive, final TimeUnit tunit,
+            final int shardCount) {
+        super();
+        Args.positive(shardCount, "Shard count");
+        this.configData = new PoolingHttpClientConnectionManager.ConfigData();
+        this.budget = new PoolBudget(20);
+        final PoolingHttpClientConnectionManager.InternalConnectionFactory internalConnFactory =
+            new PoolingHttpClientConnectionManager.InternalConnectionFactory(this.configData, connFactory);
+        final HttpClientConnectionOperator connectionOperator = new HttpClientConnectionOperator(
+                socketFactoryRegistry, schemePortResolver, dnsResolver, addressSelector);
+        this.shards = new PoolingHttpClientConnectionManager[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            final CPool pool = new CPool(internalConnFactory, 2, this.budget, timeToLive, tunit);
+            pool.setValidateAfterInactivity(2000);
+            this.shards[i] = new PoolingHttpClientConnectionManager(
+                    pool, this.configData, connectionOperator);
+        }
+    }
+
+    public void close() {
+        shutdown();
+    }
+
+    public int getShardCount() {
+        return this.shards.length;
+    }
+
+    private PoolingHttpClientConnectionManager getShard(final HttpRoute route) {
+        Args.notNull(route, "HTTP route");
+        // Spread the hash so that routes differing only in high bits are
+        // not all mapped to the same shard
+        int h = route.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return this.shards[(h & 0x7fffffff) % this.shards.length];
+    }
+
+    public ConnectionRequest requestConnection(
+            final HttpRoute route,
+            final Object state) {
+        return getShard(route).requestConnection(route, state);
+    }
+
+    /**
+     * Returns a new {@link ConnectionRequest} served with the given priority.
+     *
+     * @see PoolingHttpClientConnectionManager#requestConnection(HttpRoute, Object, int)
+     */
+    public ConnectionRequest requestConnection(
+            final HttpRoute route,
+            final Object state,
+            final int priority) {
+        return getShard(route).requestConnection(route, state, priority);
+    }
+
+    public void releaseConnection(
+            final HttpClientConnection managedConn,
+            final Object state,
+            final long keepalive, final TimeUnit tunit) {
+        Args.notNull(managedConn, "Managed connection");
+        final CPoolEntry entry;
+        synchronized (managedConn) {
+            entry = CPoolProxy.peekPoolEntry(managedConn);
+        }
+        if (entry == null) {
+            return;
+        }
+        getShard(entry.getRoute()).releaseConnection(managedConn, state, keepalive, tunit);
+    }
+
+    public void connect(
+            final HttpClientConnection managedConn,
+            final HttpRoute route,
+            final int connectTimeout,
+            final HttpContext context) throws IOException {
+        getShard(route).connect(managedConn, route, connectTimeout, context);
+    }
+
+    public void upgrade(
+            final HttpClientConnection managedConn,
+            final HttpRoute route,
+            final HttpContext context) throws IOException {
+        getShard(route).upgrade(managedConn, route, context);
+    }
+
+    public void routeComplete(
+            final HttpClientConnection managedConn,
+            final HttpRoute route,
+            final HttpContext context) throws IOException {
+        getShard(route).routeComplete(managedConn, route, context);
+    }
+
+    public void shutdown() {
+        for (final PoolingHttpClientConnectionManager shard: this.shards) {
+            shard.shutdown();
+        }
+    }
+
+    public void closeIdleConnections(final long idleTimeout, final TimeUnit tunit) {
+        for (final PoolingHttpClientConnectionManager shard: this.shards) {
+            shard.closeIdleConnections(idleTimeout, tunit);
+        }
+    }
+
+    public void closeExpiredConnections() {
+        for (final PoolingHttpClientConnectionManager shard: this.shards) {
+            shard.closeExpiredConnections();
+        }
+    }
+
+    public int getMaxTotal() {
+        return this.budget.getMax();
+    }
+
+    public void setMaxTotal(final int max) {
+        this.budget.setMax(max);
+    }
+
+    public int getDefaultMaxPerRoute() {
+        return this.shards[0].getDefaultMaxPerRoute();
+    }
+
+    public void setDefaultMaxPerRoute(final int max) {
+        for (final PoolingHttpClientConnectionManager shard: this.shards) {
+            shard.setDefaultMaxPerRoute(max);
+        }
+    }
+
+    public int getMaxPerRoute(final HttpRoute route) {
+        return getShard(route).getMaxPerRoute(route);
+    }
+
+    public void setMaxPerRoute(final HttpRoute route, final int max) {
+        getShard(route).setMaxPerRoute(route, max);
+    }
+
+    public int getDefaultPriorityReserve() {
+        return this.shards[0].getDefaultPriorityReserve();
+    }
+
+    /**
+     * @see PoolingHttpClientConnectionManager#setDefaultPriorityReserve(int)
+     */
+    public void setDefaultPriorityReserve(final int reserve) {
+        for (final PoolingHttpClientConnectionManager shard: this.shards) {
+            shard.setDefaultPriorityReserve(reserve);
+        }
+    }
+
+    public int getPriorityReserve(final HttpRoute route) {
+        return getShard(route).getPriorityReserve(route);
+    }
+
+    public void setPriorityReserve(final HttpRoute route, final int reserve) {
+        getShard(route).setPriorityReserve(route, reserve);
+    }
+
+    public boolean isThreadAffinity() {
+        return this.shards[0].isThreadAffinity();
+    }
+
+    /**
+     * @see PoolingHttpClientConnectionManager#setThreadAffinity(boolean)
+     */
+    public void setThreadAffinity(final boolean threadAffinity) {
+        for (final PoolingHttpClientConnectionManager shard: this.shards) {
+            shard.setThreadAffinity(threadAffinity);
+        }
+    }
+
+    public PoolStats getTotalStats() {
+        int leased = 0;
+        int pending = 0;
+        int available = 0;
+        for (final PoolingHttpClientConnectionManager shard: this.shards) {
+            final PoolStats stats = shard.getTotalStats();
+            leased += stats.getLeased();
+            pending += stats.getPending();
+            available += stats.getAvailable();
+        }
+        return new PoolStats(leased, pending, available, this.budget.getMax());
+    }
+
+    public PoolStats getStats(final HttpRoute route) {
+        return getShard(route).getStats(route);
+    }
+
+    public int getValidateAfterInactivity() {
+        return this.shards[0].getValidateAfterInactivity();
+    }
+
+    /**
+     * @see PoolingHttpClientConnectionManager#setValidateAfterInactivity(int)
+     */
+    public void setValidateAfterInactivity(final int ms) {
+        for (final PoolingHttpClientConnectionManager shard: this.shards) {
+            shard.setValidateAfterInactivity(ms);
+        }
+    }
+
+    public SocketConfig getDefaultSocketConfig() {
+        return this.configData.getDefaultSocketConfig();
+    }
+
+    public void setDefaultSocketConfig(final SocketConfig defaultSocketConfig) {
+        this.configData.setDefaultSocketConfig(defaultSocketConfig);
+    }
+
+    public ConnectionConfig getDefaultConnectionConfig() {
+        return this.configData.getDefaultConnectionConfig();
+    }
+
+    public void setDefaultConnectionConfig(final ConnectionConfig defaultConnectionConfig) {
+        this.configData.setDefaultConnectionConfig(defaultConnectionConfig);
+    }
+
+    public SocketConfig getSocketConfig(final HttpHost host) {
+        return this.configData.getSocketConfig(host);
+    }
+
+    public void setSocketConfig(final HttpHost host, final SocketConfig socketConfig) {
+        this.configData.setSocketConfig(host, socketConfig);
+    }
+
+    public ConnectionConfig getConnectionConfig(final HttpHost host) {
+        return this.configData.getConnectionConfig(host);
+    }
+
+    public void setConnectionConfig(final HttpHost host, final ConnectionConfig connectionConfig) {
+        this.configData.setConnectionConfig(host, connectionConfig);
+    }
+
+    public ReceiveBufferTuner getReceiveBufferTuner() {
+        return this.configData.getReceiveBufferTuner();
+    }
+
+    /**
+     * @see PoolingHttpClientConnectionManager#setReceiveBufferTuner(ReceiveBufferTuner)
+     */
+    public void setReceiveBufferTuner(final ReceiveBufferTuner receiveBufferTuner) {
+        this.configData.setReceiveBufferTuner(receiveBufferTuner);
+    }
+
+}
@@ -56,6 +56,7 @@ import original.apache.http.client.protocol.RequestClientConnControl;
 import original.apache.http.conn.ConnectionKeepAliveStrategy;
 import original.apache.http.conn.ConnectionRequest;
 import original.apache.http.conn.HttpClientConnectionManager;
+import original.apache.http.conn.PriorityHttpClientConnectionManager;
 import original.apache.http.conn.routing.BasicRouteDirector;
 import original.apache.http.conn.routing.HttpRoute;
 import original.apache.http.conn.routing.HttpRouteDirector;
@@ -128,6 +129,7 @@ public class MainClientExec implements ClientExecChain {
         this.userTokenHandler   = userTokenHandler;
     }
 
+    @SuppressWarnings("deprecation")
     public CloseableHttpResponse execute(
             final HttpRoute route,
             final HttpRequestWrapper request,
@@ -154,7 +156,15 @@ public class MainClientExec implements ClientExecChain {
 
         Object userToken = context.getUserToken();
 
-        final ConnectionRequest connRequest = connManager.requestConnection(route, userToken);
+        final RequestConfig config = context.getRequestConfig();
+
+        final ConnectionRequest connRequest;
+        if (config.getPriority() != 0 && connManager instanceof PriorityHttpClientConnectionManager) {
+            connRequest = ((PriorityHttpClientConnectionManager) connManager).requestConnection(
+                    route, userToken, config.getPriority());
+        } else {
+            connRequest = connManager.requestConnection(route, userToken);
+        }
         if (execAware != null) {
             if (execAware.isAborted()) {
                 connRequest.cancel();
@@ -164,8 +174,6 @@ public class MainClientExec implements ClientExecChain {
             }
         }
 
-        final RequestConfig config = context.getRequestConfig();
-
         final HttpClientConnection managedConn;
         try {
             final int timeout = config.getConnectionRequestTimeout();
@@ -32,6 +32,7 @@ import java.nio.charset.CodingErrorAction;
 
 import original.apache.http.Consts;
 import original.apache.http.annotation.Immutable;
+import original.apache.http.io.BufferAllocator;
 import original.apache.http.util.Args;
 
 /**
@@ -50,6 +51,7 @@ public class ConnectionConfig implements Cloneable {
     private final CodingErrorAction malformedInputAction;
     private final CodingErrorAction unmappableInputAction;
     private final MessageConstraints messageConstraints;
+    private final BufferAllocator bufferAllocator;
 
     ConnectionConfig(
             final int bufferSize,
@@ -57,7 +59,8 @@ public class ConnectionConfig implements Cloneable {
             final Charset charset,
             final CodingErrorAction malformedInputAction,
             final CodingErrorAction unmappableInputAction,
-            final MessageConstraints messageConstraints) {
+            final MessageConstraints messageConstraints,
+            final BufferAllocator bufferAllocator) {
         super();
         this.bufferSize = bufferSize;
         this.fragmentSizeHint = fragmentSizeHint;
@@ -65,6 +68,7 @@ public class ConnectionConfig implements Cloneable {
         this.malformedInputAction = malformedInputAction;
         this.unmappableInputAction = unmappableInputAction;
         this.messageConstraints = messageConstraints;
+        this.bufferAllocator = bufferAllocator;
     }
 
     public int getBufferSize() {
@@ -91,6 +95,17 @@ public class ConnectionConfig implements Cloneable {
         return messageConstraints;
     }
 
+    /**
+     * Returns the allocator connections take their session buffers from
+     * and return them to while idle, or <code>null</code> if each connection
+     * keeps buffers of its own.
+     *
+     * @since 4.3.5
+     */
+    public BufferAllocator getBufferAllocator() {
+        return bufferAllocator;
+    }
+
     @Override
     protected ConnectionConfig clone() throws CloneNotSupportedException {
         return (ConnectionConfig) super.clone();
@@ -105,6 +120,7 @@ public class ConnectionConfig implements Cloneable {
                 .append(", malformedInputAction=").append(this.malformedInputAction)
                 .append(", unmappableInputAction=").append(this.unmappableInputAction)
                 .append(", messageConstraints=").append(this.messageConstraints)
+                .append(", bufferAllocator=").append(this.bufferAllocator)
                 .append("]");
         return builder.toString();
     }
@@ -119,7 +135,8 @@ public class ConnectionConfig implements Cloneable {
             .setCharset(config.getCharset())
             .setMalformedInputAction(config.getMalformedInputAction())
             .setUnmappableInputAction(config.getUnmappableInputAction())
-            .setMessageConstraints(config.getMessageConstraints());
+            .setMessageConstraints(config.getMessageConstraints())
+            .setBufferAllocator(config.getBufferAllocator());
     }
 
     public static class Builder {
@@ -130,6 +147,7 @@ public class ConnectionConfig implements Cloneable {
         private CodingErrorAction malformedInputAction;
         private CodingErrorAction unmappableInputAction;
         private MessageConstraints messageConstraints;
+        private BufferAllocator bufferAllocator;
 
         Builder() {
             this.fragmentSizeHint = -1;
@@ -171,6 +189,14 @@ public class ConnectionConfig implements Cloneable {
             return this;
         }
 
+        /**
+         * @since 4.3.5
+         */
+        public Builder setBufferAllocator(final BufferAllocator bufferAllocator) {
+            this.bufferAllocator = bufferAllocator;
+            return this;
+        }
+
         public ConnectionConfig build() {
             Charset cs = charset;
             if (cs == null && (malformedInputAction != null || unmappableInputAction != null)) {
@@ -184,7 +210,8 @@ public class ConnectionConfig implements Cloneable {
                     cs,
                     malformedInputAction,
                     unmappableInputAction,
-                    messageConstraints);
+                    messageConstraints,
+                    bufferAllocator);
         }
 
     }
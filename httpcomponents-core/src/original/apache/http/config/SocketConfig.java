@@ -45,19 +45,28 @@ public class SocketConfig implements Cloneable {
     private final int soLinger;
     private final boolean soKeepAlive;
     private final boolean tcpNoDelay;
+    private final int connectAttemptDelay;
+    private final int sndBufSize;
+    private final int rcvBufSize;
 
     SocketConfig(
             final int soTimeout,
             final boolean soReuseAddress,
             final int soLinger,
             final boolean soKeepAlive,
-            final boolean tcpNoDelay) {
+            final boolean tcpNoDelay,
+            final int connectAttemptDelay,
+            final int sndBufSize,
+            final int rcvBufSize) {
         super();
         this.soTimeout = soTimeout;
         this.soReuseAddress = soReuseAddress;
         this.soLinger = soLinger;
         this.soKeepAlive = soKeepAlive;
         this.tcpNoDelay = tcpNoDelay;
+        this.connectAttemptDelay = connectAttemptDelay;
+        this.sndBufSize = sndBufSize;
+        this.rcvBufSize = rcvBufSize;
     }
 
     /**
@@ -119,6 +128,52 @@ public class SocketConfig implements Cloneable {
         return tcpNoDelay;
     }
 
+    /**
+     * Determines the delay in milliseconds between staggered attempts to
+     * connect to the addresses of a host. With a positive delay, addresses
+     * of different families are interleaved and attempts are raced in
+     * parallel, each starting once the previous one has failed or the
+     * delay has passed (Happy Eyeballs, RFC 8305). The first connection
+     * established wins. With a delay of <code>0</code> the addresses are
+     * tried one after another.
+     * <p/>
+     * Default: <code>0</code> (sequential attempts)
+     *
+     * @since 4.3.5
+     */
+    public int getConnectAttemptDelay() {
+        return connectAttemptDelay;
+    }
+
+    /**
+     * Determines the default value of the {@link java.net.SocketOptions#SO_SNDBUF} parameter
+     * for newly created sockets.
+     * <p/>
+     * Default: <code>0</code> (system default)
+     *
+     * @see java.net.SocketOptions#SO_SNDBUF
+     * @since 4.3.5
+     */
+    public int getSndBufSize() {
+        return sndBufSize;
+    }
+
+    /**
+     * Determines the default value of the {@link java.net.SocketOptions#SO_RCVBUF} parameter
+     * for newly created sockets. The buffer size is set before connecting,
+     * so that it can be taken into account for the TCP window scale. Note
+     * that setting it disables receive buffer auto-tuning of the kernel
+     * for the socket.
+     * <p/>
+     * Default: <code>0</code> (system default)
+     *
+     * @see java.net.SocketOptions#SO_RCVBUF
+     * @since 4.3.5
+     */
+    public int getRcvBufSize() {
+        return rcvBufSize;
+    }
+
     @Override
     protected SocketConfig clone() throws CloneNotSupportedException {
         return (SocketConfig) super.clone();
@@ -132,6 +187,9 @@ public class SocketConfig implements Cloneable {
                 .append(", soLinger=").append(this.soLinger)
                 .append(", soKeepAlive=").append(this.soKeepAlive)
                 .append(", tcpNoDelay=").append(this.tcpNoDelay)
+                .append(", connectAttemptDelay=").append(this.connectAttemptDelay)
+                .append(", sndBufSize=").append(this.sndBufSize)
+                .append(", rcvBufSize=").append(this.rcvBufSize)
                 .append("]");
         return builder.toString();
     }
@@ -147,7 +205,10 @@ public class SocketConfig implements Cloneable {
             .setSoReuseAddress(config.isSoReuseAddress())
             .setSoLinger(config.getSoLinger())
             .setSoKeepAlive(config.isSoKeepAlive())
-            .setTcpNoDelay(config.isTcpNoDelay());
+            .setTcpNoDelay(config.isTcpNoDelay())
+            .setConnectAttemptDelay(config.getConnectAttemptDelay())
+            .setSndBufSize(config.getSndBufSize())
+            .setRcvBufSize(config.getRcvBufSize());
     }
 
     public static class Builder {
@@ -157,6 +218,9 @@ public class SocketConfig implements Cloneable {
         private int soLinger;
         private boolean soKeepAlive;
         private boolean tcpNoDelay;
+        private int connectAttemptDelay;
+        private int sndBufSize;
+        private int rcvBufSize;
 
         Builder() {
             this.soLinger = -1;
@@ -188,8 +252,33 @@ public class SocketConfig implements Cloneable {
             return this;
         }
 
+        /**
+         * @since 4.3.5
+         */
+        public Builder setConnectAttemptDelay(final int connectAttemptDelay) {
+            this.connectAttemptDelay = connectAttemptDelay;
+            return this;
+        }
+
+        /**
+         * @since 4.3.5
+         */
+        public Builder setSndBufSize(final int sndBufSize) {
+            this.sndBufSize = sndBufSize;
+            return this;
+        }
+
+        /**
+         * @since 4.3.5
+         */
+        public Builder setRcvBufSize(final int rcvBufSize) {
+            this.rcvBufSize = rcvBufSize;
+            return this;
+        }
+
         public SocketConfig build() {
-            return new SocketConfig(soTimeout, soReuseAddress, soLinger, soKeepAlive, tcpNoDelay);
+            return new SocketConfig(soTimeout, soReuseAddress, soLinger, soKeepAlive, tcpNoDelay,
+                    connectAttemptDelay, sndBufSize, rcvBufSize);
         }
 
     }
@@ -32,12 +32,19 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 import original.apache.http.annotation.NotThreadSafe;
+import original.apache.http.io.FileChannelTransfer;
 import original.apache.http.util.Args;
 
 /**
  * A self contained, repeatable entity that obtains its content from a file.
+ * <p/>
+ * If the output stream implements {@link FileChannelTransfer}, as does
+ * the stream of a message with a content length sent over a plain socket
+ * channel, the file is transferred to the socket without being copied
+ * through the Java heap.
  *
  * @since 4.0
  */
@@ -89,8 +96,15 @@ public class FileEntity extends AbstractHttpEntity implements Cloneable {
 
     public void writeTo(final OutputStream outstream) throws IOException {
         Args.notNull(outstream, "Output stream");
-        final InputStream instream = new FileInputStream(this.file);
+        final FileInputStream instream = new FileInputStream(this.file);
         try {
+            if (outstream instanceof FileChannelTransfer) {
+                final FileChannel channel = instream.getChannel();
+                if (((FileChannelTransfer) outstream).transfer(channel, 0, channel.size())) {
+                    outstream.flush();
+                    return;
+                }
+            }
             final byte[] tmp = new byte[OUTPUT_BUFFER_SIZE];
             int l;
             while ((l = instream.read(tmp)) != -1) {
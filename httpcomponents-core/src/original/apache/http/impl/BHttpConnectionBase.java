@@ -35,6 +35,7 @@ import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CharsetEncoder;
 import java.util.concurrent.atomic.AtomicReference;
@@ -52,15 +53,20 @@ import original.apache.http.entity.BasicHttpEntity;
 import original.apache.http.entity.ContentLengthStrategy;
 import original.apache.http.impl.entity.LaxContentLengthStrategy;
 import original.apache.http.impl.entity.StrictContentLengthStrategy;
+import original.apache.http.impl.io.ChannelSessionInputBuffer;
+import original.apache.http.impl.io.ChannelSessionOutputBuffer;
 import original.apache.http.impl.io.ChunkedInputStream;
 import original.apache.http.impl.io.ChunkedOutputStream;
 import original.apache.http.impl.io.ContentLengthInputStream;
 import original.apache.http.impl.io.ContentLengthOutputStream;
+import original.apache.http.impl.io.DirectBufferPool;
 import original.apache.http.impl.io.HttpTransportMetricsImpl;
 import original.apache.http.impl.io.IdentityInputStream;
 import original.apache.http.impl.io.IdentityOutputStream;
 import original.apache.http.impl.io.SessionInputBufferImpl;
 import original.apache.http.impl.io.SessionOutputBufferImpl;
+import original.apache.http.io.BufferAllocator;
+import original.apache.http.io.BufferRecycler;
 import original.apache.http.io.SessionInputBuffer;
 import original.apache.http.io.SessionOutputBuffer;
 import original.apache.http.protocol.HTTP;
@@ -75,10 +81,12 @@ import original.apache.http.util.NetUtils;
  * @since 4.0
  */
 @NotThreadSafe
-public class BHttpConnectionBase implements HttpConnection, HttpInetConnection {
+public class BHttpConnectionBase implements HttpConnection, HttpInetConnection, BufferRecycler {
 
     private final SessionInputBufferImpl inbuffer;
     private final SessionOutputBufferImpl outbuffer;
+    private final ChannelSessionInputBuffer channelInbuffer;
+    private final ChannelSessionOutputBuffer channelOutbuffer;
     private final HttpConnectionMetricsImpl connMetrics;
     private final ContentLengthStrategy incomingContentStrategy;
     private final ContentLengthStrategy outgoingContentStrategy;
@@ -99,6 +107,14 @@ public class BHttpConnectionBase implements HttpConnection, HttpInetConnection {
      *   {@link LaxContentLengthStrategy#INSTANCE} will be used.
      * @param outgoingContentStrategy outgoing content length strategy. If <code>null</code>
      *   {@link StrictContentLengthStrategy#INSTANCE} will be used.
+     * @param bufferPool pool of direct buffers. If not <code>null</code>, the connection
+     *   does its I/O directly on the {@link SocketChannel} of sockets that have one, using
+     *   session buffers taken from the pool.
+     * @param allocator allocator to take the byte arrays of the session buffers from.
+     *   If not <code>null</code>, the session buffers are returned to the allocator
+     *   by {@link #recycleBuffers()} while the connection is idle.
+     *
+     * @since 4.3.5
      */
     protected BHttpConnectionBase(
             final int buffersize,
@@ -107,15 +123,30 @@ public class BHttpConnectionBase implements HttpConnection, HttpInetConnection {
             final CharsetEncoder charencoder,
             final MessageConstraints constraints,
             final ContentLengthStrategy incomingContentStrategy,
-            final ContentLengthStrategy outgoingContentStrategy) {
+            final ContentLengthStrategy outgoingContentStrategy,
+            final DirectBufferPool bufferPool,
+            final BufferAllocator allocator) {
         super();
         Args.positive(buffersize, "Buffer size");
         final HttpTransportMetricsImpl inTransportMetrics = new HttpTransportMetricsImpl();
         final HttpTransportMetricsImpl outTransportMetrics = new HttpTransportMetricsImpl();
-        this.inbuffer = new SessionInputBufferImpl(inTransportMetrics, buffersize, -1,
-                constraints != null ? constraints : MessageConstraints.DEFAULT, chardecoder);
-        this.outbuffer = new SessionOutputBufferImpl(outTransportMetrics, buffersize, fragmentSizeHint,
-                charencoder);
+        final MessageConstraints messageConstraints = constraints != null ? constraints :
+            MessageConstraints.DEFAULT;
+        if (bufferPool != null) {
+            this.channelInbuffer = new ChannelSessionInputBuffer(inTransportMetrics, buffersize, -1,
+                    messageConstraints, chardecoder, bufferPool, allocator);
+            this.channelOutbuffer = new ChannelSessionOutputBuffer(outTransportMetrics, buffersize,
+                    fragmentSizeHint, charencoder, bufferPool, allocator);
+            this.inbuffer = this.channelInbuffer;
+            this.outbuffer = this.channelOutbuffer;
+        } else {
+            this.channelInbuffer = null;
+            this.channelOutbuffer = null;
+            this.inbuffer = new SessionInputBufferImpl(inTransportMetrics, buffersize, -1,
+                    messageConstraints, chardecoder, allocator);
+            this.outbuffer = new SessionOutputBufferImpl(outTransportMetrics, buffersize,
+                    fragmentSizeHint, charencoder, allocator);
+        }
         this.connMetrics = new HttpConnectionMetricsImpl(inTransportMetrics, outTransportMetrics);
         this.incomingContentStrategy = incomingContentStrategy != null ? incomingContentStrategy :
             LaxContentLengthStrategy.INSTANCE;
@@ -124,17 +155,54 @@ public class BHttpConnectionBase implements HttpConnection, HttpInetConnection {
         this.socketHolder = new AtomicReference<Socket>();
     }
 
+    protected BHttpConnectionBase(
+            final int buffersize,
+            final int fragmentSizeHint,
+            final CharsetDecoder chardecoder,
+            final CharsetEncoder charencoder,
+            final MessageConstraints constraints,
+            final ContentLengthStrategy incomingContentStrategy,
+            final ContentLengthStrategy outgoingContentStrategy) {
+        this(buffersize, fragmentSizeHint, chardecoder, charencoder, constraints,
+                incomingContentStrategy, outgoingContentStrategy, null, null);
+    }
+
     protected void ensureOpen() throws IOException {
         final Socket socket = this.socketHolder.get();
         Asserts.check(socket != null, "Connection is not open");
+        final SocketChannel channel;
+        if (this.channelInbuffer != null && (!this.inbuffer.isBound() || !this.outbuffer.isBound())) {
+            channel = getSocketChannel(socket);
+        } else {
+            channel = null;
+        }
         if (!this.inbuffer.isBound()) {
-            this.inbuffer.bind(getSocketInputStream(socket));
+            if (channel != null) {
+                this.channelInbuffer.bind(channel);
+            } else {
+                this.inbuffer.bind(getSocketInputStream(socket));
+            }
         }
         if (!this.outbuffer.isBound()) {
-            this.outbuffer.bind(getSocketOutputStream(socket));
+            if (channel != null) {
+                this.channelOutbuffer.bind(channel);
+            } else {
+                this.outbuffer.bind(getSocketOutputStream(socket));
+            }
         }
     }
 
+    /**
+     * Returns the channel to do I/O on directly for the given socket, or
+     * <code>null</code> if the socket streams should be used. This method is
+     * only called if the connection was created with a pool of direct buffers.
+     *
+     * @since 4.3.5
+     */
+    protected SocketChannel getSocketChannel(final Socket socket) {
+        return socket.getChannel();
+    }
+
     protected InputStream getSocketInputStream(final Socket socket) throws IOException {
         return socket.getInputStream();
     }
@@ -168,6 +236,42 @@ public class BHttpConnectionBase implements HttpConnection, HttpInetConnection {
         return this.outbuffer;
     }
 
+    /**
+     * Returns the session buffers of this connection to their allocator, once
+     * the connection has gone idle. Buffers still holding data are kept, so
+     * that no data is lost. The buffers are taken from the allocator again
+     * when the connection is used next. This method has no effect if the
+     * connection was created with neither an allocator nor a pool of direct
+     * buffers.
+     * <p/>
+     * As {@link #close()} may be called by another thread while the buffers
+     * are still in use, closing the connection does not recycle them; they
+     * are left to the garbage collector instead.
+     *
+     * @since 4.3.5
+     */
+    public void recycleBuffers() {
+        this.inbuffer.recycle();
+        this.outbuffer.recycle();
+    }
+
+    /**
+     * Stops doing I/O on the channel of the bound socket directly, putting the
+     * channel back into blocking mode, so that the socket may be used through
+     * its streams, for instance by an SSL socket layered over it. Data buffered
+     * but not read yet is discarded. The connection goes back to the channel
+     * once it is used again. This method has no effect if the connection was
+     * created without a pool of direct buffers.
+     *
+     * @since 4.3.5
+     */
+    public void releaseChannel() {
+        if (this.channelInbuffer != null) {
+            this.channelInbuffer.release();
+            this.channelOutbuffer.release();
+        }
+    }
+
     protected void doFlush() throws IOException {
         this.outbuffer.flush();
     }
@@ -288,7 +392,15 @@ public class BHttpConnectionBase implements HttpConnection, HttpInetConnection {
     public void shutdown() throws IOException {
         final Socket socket = this.socketHolder.getAndSet(null);
         if (socket != null) {
-            socket.close();
+            try {
+                socket.close();
+            } finally {
+                if (this.channelInbuffer != null) {
+                    // Wake up a thread waiting on the channel
+                    this.channelInbuffer.shutdown();
+                    this.channelOutbuffer.shutdown();
+                }
+            }
         }
     }
 
@@ -312,6 +424,12 @@ public class BHttpConnectionBase implements HttpConnection, HttpInetConnection {
                 }
             } finally {
                 socket.close();
+                if (this.channelInbuffer != null) {
+                    // Wake up a thread waiting on the channel, leaving the
+                    // buffers to it rather than returning them to the pool
+                    this.channelInbuffer.shutdown();
+                    this.channelOutbuffer.shutdown();
+                }
             }
         }
     }
@@ -335,11 +453,59 @@ public class BHttpConnectionBase implements HttpConnection, HttpInetConnection {
         return this.inbuffer.hasBufferedData();
     }
 
+    /**
+     * Reads data immediately available from a channel backed socket without
+     * blocking.
+     */
+    private int pollInputBuffer(final SocketChannel channel) throws IOException {
+        if (this.channelInbuffer != null && this.channelInbuffer.getChannel() == channel) {
+            // The channel is in non-blocking mode while bound to the buffer
+            return this.inbuffer.fillBuffer(channel);
+        }
+        synchronized (channel.blockingLock()) {
+            channel.configureBlocking(false);
+            try {
+                return this.inbuffer.fillBuffer(channel);
+            } finally {
+                channel.configureBlocking(true);
+            }
+        }
+    }
+
+    /**
+     * Checks whether this connection has gone stale.
+     * <p/>
+     * Sockets backed by a {@link SocketChannel}, as created on request by
+     * plain socket factories, are polled with a non-blocking read. For other
+     * sockets, including layered SSL sockets, data already
+     * received is detected with {@link InputStream#available()}; only if there
+     * is none does this method fall back to a read with a 1 ms timeout, as
+     * the end of stream cannot be detected otherwise.
+     */
     public boolean isStale() {
         if (!isOpen()) {
             return true;
         }
+        if (this.inbuffer.hasBufferedData()) {
+            return false;
+        }
+        final Socket socket = this.socketHolder.get();
+        if (socket == null) {
+            return true;
+        }
+        if (socket.isClosed() || socket.isInputShutdown()) {
+            return true;
+        }
         try {
+            // Bind the session buffers before polling the socket they use
+            ensureOpen();
+            final SocketChannel channel = socket.getChannel();
+            if (channel != null) {
+                return pollInputBuffer(channel) < 0;
+            }
+            if (socket.getInputStream().available() > 0) {
+                return false;
+            }
             final int bytesRead = fillInputBuffer(1);
             return bytesRead < 0;
         } catch (final SocketTimeoutException ex) {
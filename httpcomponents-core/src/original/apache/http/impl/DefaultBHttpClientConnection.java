@@ -46,6 +46,8 @@ import original.apache.http.config.MessageConstraints;
 import original.apache.http.entity.ContentLengthStrategy;
 import original.apache.http.impl.io.DefaultHttpRequestWriterFactory;
 import original.apache.http.impl.io.DefaultHttpResponseParserFactory;
+import original.apache.http.impl.io.DirectBufferPool;
+import original.apache.http.io.BufferAllocator;
 import original.apache.http.io.HttpMessageParser;
 import original.apache.http.io.HttpMessageParserFactory;
 import original.apache.http.io.HttpMessageWriter;
@@ -83,6 +85,13 @@ public class DefaultBHttpClientConnection extends BHttpConnectionBase
      *   {@link DefaultHttpRequestWriterFactory#INSTANCE} will be used.
      * @param responseParserFactory response parser factory. If <code>null</code>
      *   {@link DefaultHttpResponseParserFactory#INSTANCE} will be used.
+     * @param bufferPool pool of direct buffers. If not <code>null</code>, the connection
+     *   does its I/O directly on the {@link java.nio.channels.SocketChannel} of sockets
+     *   that have one, using session buffers taken from the pool.
+     * @param allocator allocator to take the byte arrays of the session buffers from.
+     *   May be <code>null</code>.
+     *
+     * @since 4.3.5
      */
     public DefaultBHttpClientConnection(
             final int buffersize,
@@ -93,15 +102,33 @@ public class DefaultBHttpClientConnection extends BHttpConnectionBase
             final ContentLengthStrategy incomingContentStrategy,
             final ContentLengthStrategy outgoingContentStrategy,
             final HttpMessageWriterFactory<HttpRequest> requestWriterFactory,
-            final HttpMessageParserFactory<HttpResponse> responseParserFactory) {
+            final HttpMessageParserFactory<HttpResponse> responseParserFactory,
+            final DirectBufferPool bufferPool,
+            final BufferAllocator allocator) {
         super(buffersize, fragmentSizeHint, chardecoder, charencoder,
-                constraints, incomingContentStrategy, outgoingContentStrategy);
+                constraints, incomingContentStrategy, outgoingContentStrategy,
+                bufferPool, allocator);
         this.requestWriter = (requestWriterFactory != null ? requestWriterFactory :
             DefaultHttpRequestWriterFactory.INSTANCE).create(getSessionOutputBuffer());
         this.responseParser = (responseParserFactory != null ? responseParserFactory :
             DefaultHttpResponseParserFactory.INSTANCE).create(getSessionInputBuffer(), constraints);
     }
 
+    public DefaultBHttpClientConnection(
+            final int buffersize,
+            final int fragmentSizeHint,
+            final CharsetDecoder chardecoder,
+            final CharsetEncoder charencoder,
+            final MessageConstraints constraints,
+            final ContentLengthStrategy incomingContentStrategy,
+            final ContentLengthStrategy outgoingContentStrategy,
+            final HttpMessageWriterFactory<HttpRequest> requestWriterFactory,
+            final HttpMessageParserFactory<HttpResponse> responseParserFactory) {
+        this(buffersize, fragmentSizeHint, chardecoder, charencoder, constraints,
+                incomingContentStrategy, outgoingContentStrategy,
+                requestWriterFactory, responseParserFactory, null, null);
+    }
+
     public DefaultBHttpClientConnection(
             final int buffersize,
             final CharsetDecoder chardecoder,
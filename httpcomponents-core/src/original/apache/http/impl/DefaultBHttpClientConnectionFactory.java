@@ -33,6 +33,7 @@ import original.apache.http.HttpResponse;
 import original.apache.http.annotation.Immutable;
 import original.apache.http.config.ConnectionConfig;
 import original.apache.http.entity.ContentLengthStrategy;
+import original.apache.http.impl.io.DirectBufferPool;
 import original.apache.http.io.HttpMessageParserFactory;
 import original.apache.http.io.HttpMessageWriterFactory;
 
@@ -55,19 +56,41 @@ public class DefaultBHttpClientConnectionFactory
     private final ContentLengthStrategy outgoingContentStrategy;
     private final HttpMessageWriterFactory<HttpRequest> requestWriterFactory;
     private final HttpMessageParserFactory<HttpResponse> responseParserFactory;
+    private final DirectBufferPool bufferPool;
 
+    /**
+     * Creates a connection factory.
+     *
+     * @param bufferPool pool of direct buffers. If not <code>null</code>, connections
+     *   do their I/O directly on the {@link java.nio.channels.SocketChannel} of sockets
+     *   that have one, such as those opened with {@link java.nio.channels.SocketChannel#open()}.
+     *
+     * @since 4.3.5
+     */
     public DefaultBHttpClientConnectionFactory(
             final ConnectionConfig cconfig,
             final ContentLengthStrategy incomingContentStrategy,
             final ContentLengthStrategy outgoingContentStrategy,
             final HttpMessageWriterFactory<HttpRequest> requestWriterFactory,
-            final HttpMessageParserFactory<HttpResponse> responseParserFactory) {
+            final HttpMessageParserFactory<HttpResponse> responseParserFactory,
+            final DirectBufferPool bufferPool) {
         super();
         this.cconfig = cconfig != null ? cconfig : ConnectionConfig.DEFAULT;
         this.incomingContentStrategy = incomingContentStrategy;
         this.outgoingContentStrategy = outgoingContentStrategy;
         this.requestWriterFactory = requestWriterFactory;
         this.responseParserFactory = responseParserFactory;
+        this.bufferPool = bufferPool;
+    }
+
+    public DefaultBHttpClientConnectionFactory(
+            final ConnectionConfig cconfig,
+            final ContentLengthStrategy incomingContentStrategy,
+            final ContentLengthStrategy outgoingContentStrategy,
+            final HttpMessageWriterFactory<HttpRequest> requestWriterFactory,
+            final HttpMessageParserFactory<HttpResponse> responseParserFactory) {
+        this(cconfig, incomingContentStrategy, outgoingContentStrategy,
+                requestWriterFactory, responseParserFactory, null);
     }
 
     public DefaultBHttpClientConnectionFactory(
@@ -95,7 +118,9 @@ public class DefaultBHttpClientConnectionFactory
                 this.incomingContentStrategy,
                 this.outgoingContentStrategy,
                 this.requestWriterFactory,
-                this.responseParserFactory);
+                this.responseParserFactory,
+                this.bufferPool,
+                this.cconfig.getBufferAllocator());
         conn.bind(socket);
         return conn;
     }
@@ -45,6 +45,8 @@ import original.apache.http.entity.ContentLengthStrategy;
 import original.apache.http.impl.entity.DisallowIdentityContentLengthStrategy;
 import original.apache.http.impl.io.DefaultHttpRequestParserFactory;
 import original.apache.http.impl.io.DefaultHttpResponseWriterFactory;
+import original.apache.http.impl.io.DirectBufferPool;
+import original.apache.http.io.BufferAllocator;
 import original.apache.http.io.HttpMessageParser;
 import original.apache.http.io.HttpMessageParserFactory;
 import original.apache.http.io.HttpMessageWriter;
@@ -82,6 +84,13 @@ public class DefaultBHttpServerConnection extends BHttpConnectionBase
      *   {@link DefaultHttpRequestParserFactory#INSTANCE} will be used.
      * @param responseWriterFactory response writer factory. If <code>null</code>
      *   {@link DefaultHttpResponseWriterFactory#INSTANCE} will be used.
+     * @param bufferPool pool of direct buffers. If not <code>null</code>, the connection
+     *   does its I/O directly on the {@link java.nio.channels.SocketChannel} of sockets
+     *   that have one, using session buffers taken from the pool.
+     * @param allocator allocator to take the byte arrays of the session buffers from.
+     *   May be <code>null</code>.
+     *
+     * @since 4.3.5
      */
     public DefaultBHttpServerConnection(
             final int buffersize,
@@ -92,16 +101,34 @@ public class DefaultBHttpServerConnection extends BHttpConnectionBase
             final ContentLengthStrategy incomingContentStrategy,
             final ContentLengthStrategy outgoingContentStrategy,
             final HttpMessageParserFactory<HttpRequest> requestParserFactory,
-            final HttpMessageWriterFactory<HttpResponse> responseWriterFactory) {
+            final HttpMessageWriterFactory<HttpResponse> responseWriterFactory,
+            final DirectBufferPool bufferPool,
+            final BufferAllocator allocator) {
         super(buffersize, fragmentSizeHint, chardecoder, charencoder, constraints,
                 incomingContentStrategy != null ? incomingContentStrategy :
-                    DisallowIdentityContentLengthStrategy.INSTANCE, outgoingContentStrategy);
+                    DisallowIdentityContentLengthStrategy.INSTANCE, outgoingContentStrategy,
+                bufferPool, allocator);
         this.requestParser = (requestParserFactory != null ? requestParserFactory :
             DefaultHttpRequestParserFactory.INSTANCE).create(getSessionInputBuffer(), constraints);
         this.responseWriter = (responseWriterFactory != null ? responseWriterFactory :
             DefaultHttpResponseWriterFactory.INSTANCE).create(getSessionOutputBuffer());
     }
 
+    public DefaultBHttpServerConnection(
+            final int buffersize,
+            final int fragmentSizeHint,
+            final CharsetDecoder chardecoder,
+            final CharsetEncoder charencoder,
+            final MessageConstraints constraints,
+            final ContentLengthStrategy incomingContentStrategy,
+            final ContentLengthStrategy outgoingContentStrategy,
+            final HttpMessageParserFactory<HttpRequest> requestParserFactory,
+            final HttpMessageWriterFactory<HttpResponse> responseWriterFactory) {
+        this(buffersize, fragmentSizeHint, chardecoder, charencoder, constraints,
+                incomingContentStrategy, outgoingContentStrategy,
+                requestParserFactory, responseWriterFactory, null, null);
+    }
+
     public DefaultBHttpServerConnection(
             final int buffersize,
             final CharsetDecoder chardecoder,
@@ -33,6 +33,7 @@ import original.apache.http.HttpResponse;
 import original.apache.http.annotation.Immutable;
 import original.apache.http.config.ConnectionConfig;
 import original.apache.http.entity.ContentLengthStrategy;
+import original.apache.http.impl.io.DirectBufferPool;
 import original.apache.http.io.HttpMessageParserFactory;
 import original.apache.http.io.HttpMessageWriterFactory;
 
@@ -55,19 +56,41 @@ public class DefaultBHttpServerConnectionFactory
     private final ContentLengthStrategy outgoingContentStrategy;
     private final HttpMessageParserFactory<HttpRequest> requestParserFactory;
     private final HttpMessageWriterFactory<HttpResponse> responseWriterFactory;
+    private final DirectBufferPool bufferPool;
 
+    /**
+     * Creates a connection factory.
+     *
+     * @param bufferPool pool of direct buffers. If not <code>null</code>, connections
+     *   do their I/O directly on the {@link java.nio.channels.SocketChannel} of sockets
+     *   that have one, such as those opened with {@link java.nio.channels.SocketChannel#open()}.
+     *
+     * @since 4.3.5
+     */
     public DefaultBHttpServerConnectionFactory(
             final ConnectionConfig cconfig,
             final ContentLengthStrategy incomingContentStrategy,
             final ContentLengthStrategy outgoingContentStrategy,
             final HttpMessageParserFactory<HttpRequest> requestParserFactory,
-            final HttpMessageWriterFactory<HttpResponse> responseWriterFactory) {
+            final HttpMessageWriterFactory<HttpResponse> responseWriterFactory,
+            final DirectBufferPool bufferPool) {
         super();
         this.cconfig = cconfig != null ? cconfig : ConnectionConfig.DEFAULT;
         this.incomingContentStrategy = incomingContentStrategy;
         this.outgoingContentStrategy = outgoingContentStrategy;
         this.requestParserFactory = requestParserFactory;
         this.responseWriterFactory = responseWriterFactory;
+        this.bufferPool = bufferPool;
+    }
+
+    public DefaultBHttpServerConnectionFactory(
+            final ConnectionConfig cconfig,
+            final ContentLengthStrategy incomingContentStrategy,
+            final ContentLengthStrategy outgoingContentStrategy,
+            final HttpMessageParserFactory<HttpRequest> requestParserFactory,
+            final HttpMessageWriterFactory<HttpResponse> responseWriterFactory) {
+        this(cconfig, incomingContentStrategy, outgoingContentStrategy,
+                requestParserFactory, responseWriterFactory, null);
     }
 
     public DefaultBHttpServerConnectionFactory(
@@ -95,7 +118,9 @@ public class DefaultBHttpServerConnectionFactory
                 this.incomingContentStrategy,
                 this.outgoingContentStrategy,
                 this.requestParserFactory,
-                this.responseWriterFactory);
+                this.responseWriterFactory,
+                this.bufferPool,
+                this.cconfig.getBufferAllocator());
         conn.bind(socket);
         return conn;
     }
@@ -0,0 +1,77 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.impl.io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import original.apache.http.annotation.Immutable;
+import original.apache.http.protocol.HTTP;
+
+/**
+ * Scans session buffers eight bytes at a time.
+ *
+ * @since 4.3.5
+ */
+@Immutable
+final class ByteScanner {
+
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long LFS = 0x0A0A0A0A0A0A0A0AL;
+
+    private ByteScanner() {
+    }
+
+    /**
+     * Returns the index of the first LF in the given range of the buffer,
+     * or <code>-1</code> if there is none. The position and limit of the buffer
+     * are not changed, but the range must be within its limit.
+     */
+    static int indexOfLF(final ByteBuffer buf, final int from, final int to) {
+        final boolean bigEndian = buf.order() == ByteOrder.BIG_ENDIAN;
+        int i = from;
+        for (; i <= to - 8; i += 8) {
+            final long v = buf.getLong(i) ^ LFS;
+            // Sets the high bit of every zero byte of v, that is of every LF.
+            // Unlike the usual (v - 0x01..) & ~v & 0x80.. this has no carries
+            // between bytes, so it is exact for either byte order.
+            final long found = ~(((v & LOW_BITS) + LOW_BITS) | v | LOW_BITS);
+            if (found != 0) {
+                final int n = bigEndian ? Long.numberOfLeadingZeros(found) :
+                    Long.numberOfTrailingZeros(found);
+                return i + (n >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (buf.get(i) == HTTP.LF) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
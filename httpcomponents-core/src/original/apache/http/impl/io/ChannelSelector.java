@@ -0,0 +1,232 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.impl.io;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import original.apache.http.annotation.NotThreadSafe;
+
+/**
+ * Blocking reads and writes on a {@link SocketChannel} in non-blocking mode.
+ * <p/>
+ * Reads on a channel in blocking mode do not honour the socket timeout,
+ * so the channel is switched to non-blocking mode and waited on with
+ * a {@link Selector}. The selector is borrowed from a small pool shared by
+ * all channels only for as long as an operation blocks, so that an idle
+ * connection holds no file descriptors besides its socket. An operation
+ * may be unblocked by another thread after the channel has been closed.
+ *
+ * @since 4.3.5
+ */
+@NotThreadSafe
+final class ChannelSelector {
+
+    private static final int MAX_POOLED_SELECTORS = 16;
+
+    private static final Queue<Selector> SELECTORS = new ConcurrentLinkedQueue<Selector>();
+    private static final AtomicInteger POOLED_SELECTORS = new AtomicInteger();
+
+    private final SocketChannel channel;
+
+    private volatile Selector selector;
+    private volatile boolean shutdown;
+
+    ChannelSelector(final SocketChannel channel) throws IOException {
+        super();
+        this.channel = channel;
+        this.channel.configureBlocking(false);
+    }
+
+    SocketChannel getChannel() {
+        return this.channel;
+    }
+
+    /**
+     * Reads into the given buffer, waiting up to the given timeout for data
+     * to arrive.
+     *
+     * @return the number of bytes read, or <code>-1</code> at the end
+     *   of stream.
+     */
+    int read(final ByteBuffer dst, final int timeout) throws IOException {
+        int n = this.channel.read(dst);
+        if (n != 0 || !dst.hasRemaining()) {
+            return n;
+        }
+        final long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : 0;
+        for (;;) {
+            await(SelectionKey.OP_READ, deadline);
+            n = this.channel.read(dst);
+            if (n != 0) {
+                return n;
+            }
+        }
+    }
+
+    /**
+     * Reads into the given buffer without waiting.
+     */
+    int poll(final ByteBuffer dst) throws IOException {
+        return this.channel.read(dst);
+    }
+
+    /**
+     * Writes all remaining content of the given buffers.
+     */
+    void write(final ByteBuffer[] srcs) throws IOException {
+        final ByteBuffer last = srcs[srcs.length - 1];
+        while (last.hasRemaining()) {
+            if (this.channel.write(srcs) == 0) {
+                await(SelectionKey.OP_WRITE, 0);
+            }
+        }
+    }
+
+    /**
+     * Writes all remaining content of the given buffer.
+     */
+    void write(final ByteBuffer src) throws IOException {
+        while (src.hasRemaining()) {
+            if (this.channel.write(src) == 0) {
+                await(SelectionKey.OP_WRITE, 0);
+            }
+        }
+    }
+
+    /**
+     * Sends the given part of a file, using
+     * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+     */
+    void transfer(final FileChannel src, final long position, final long count) throws IOException {
+        long pos = position;
+        long remaining = count;
+        while (remaining > 0) {
+            final long n = src.transferTo(pos, remaining, this.channel);
+            if (n > 0) {
+                pos += n;
+                remaining -= n;
+            } else if (pos >= src.size()) {
+                throw new IOException("Premature end of file");
+            } else {
+                await(SelectionKey.OP_WRITE, 0);
+            }
+        }
+    }
+
+    private static Selector acquireSelector() throws IOException {
+        final Selector sel = SELECTORS.poll();
+        if (sel != null) {
+            POOLED_SELECTORS.decrementAndGet();
+            return sel;
+        }
+        return Selector.open();
+    }
+
+    private static void releaseSelector(final Selector sel) {
+        if (sel.isOpen()) {
+            if (POOLED_SELECTORS.incrementAndGet() <= MAX_POOLED_SELECTORS) {
+                SELECTORS.add(sel);
+                return;
+            }
+            POOLED_SELECTORS.decrementAndGet();
+        }
+        try {
+            sel.close();
+        } catch (final IOException ignore) {
+        }
+    }
+
+    private void await(final int ops, final long deadline) throws IOException {
+        long timeout = 0;
+        if (deadline > 0) {
+            timeout = deadline - System.currentTimeMillis();
+            if (timeout <= 0) {
+                throw new SocketTimeoutException("Read timed out");
+            }
+        }
+        final Selector sel = acquireSelector();
+        try {
+            final SelectionKey key = this.channel.register(sel, ops);
+            this.selector = sel;
+            try {
+                if (!this.shutdown) {
+                    sel.select(timeout);
+                }
+            } finally {
+                this.selector = null;
+                // Flush the cancelled key, so that the selector may be used
+                // for another channel, and this channel be put back into
+                // blocking mode
+                key.cancel();
+                sel.selectNow();
+            }
+        } catch (final ClosedSelectorException ex) {
+            throw new SocketException("Socket closed");
+        } finally {
+            releaseSelector(sel);
+        }
+        if (this.shutdown || !this.channel.isOpen()) {
+            throw new SocketException("Socket closed");
+        }
+    }
+
+    /**
+     * Unblocks a thread waiting for the channel. Operations waiting for
+     * the channel from then on fail. This method may be called by any thread.
+     */
+    void shutdown() {
+        this.shutdown = true;
+        final Selector sel = this.selector;
+        if (sel != null) {
+            // The selector may have been given back to the pool meanwhile,
+            // in which case another channel merely wakes up spuriously
+            sel.wakeup();
+        }
+    }
+
+    /**
+     * Puts the channel back into blocking mode, so that it may be used
+     * through its socket streams again.
+     */
+    void close() throws IOException {
+        if (this.channel.isOpen() && !this.channel.isRegistered()) {
+            this.channel.configureBlocking(true);
+        }
+    }
+
+}
@@ -0,0 +1,354 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.impl.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetDecoder;
+
+import original.apache.http.MessageConstraintException;
+import original.apache.http.annotation.NotThreadSafe;
+import original.apache.http.config.MessageConstraints;
+import original.apache.http.io.BufferAllocator;
+import original.apache.http.util.Args;
+import original.apache.http.util.CharArrayBuffer;
+
+/**
+ * Session input buffer that reads directly from a {@link SocketChannel}
+ * into a direct {@link ByteBuffer} taken from a {@link DirectBufferPool}.
+ * <p/>
+ * Data read from the channel is copied once, from the direct buffer to
+ * the caller, instead of going through the temporary native buffer of
+ * the socket stream and the heap buffer of {@link SessionInputBufferImpl}.
+ * The channel is used in non-blocking mode while bound; reads wait for data
+ * up to the socket timeout. The direct buffer is taken from the pool once
+ * there is data to buffer, and returned by {@link #recycle()}.
+ * <p/>
+ * Until bound to a channel, this buffer behaves as
+ * {@link SessionInputBufferImpl}, so that it may still be bound to the
+ * stream of a socket without a channel, such as an SSL socket.
+ *
+ * @since 4.3.5
+ */
+@NotThreadSafe
+public class ChannelSessionInputBuffer extends SessionInputBufferImpl {
+
+    private final HttpTransportMetricsImpl metrics;
+    private final int buffersize;
+    private final int minChunkLimit;
+    private final MessageConstraints constraints;
+    private final DirectBufferPool bufferPool;
+
+    private volatile ChannelSelector channel;
+    private ByteBuffer buffer;
+
+    /**
+     * Creates new instance of ChannelSessionInputBuffer.
+     *
+     * @param metrics HTTP transport metrics.
+     * @param buffersize buffer size. Must be a positive number.
+     * @param minChunkLimit size limit below which data chunks should be buffered in memory
+     *   in order to minimize native method invocations on the underlying network socket.
+     *   If negative default chunk limited will be used.
+     * @param constraints Message constraints. If <code>null</code>
+     *   {@link MessageConstraints#DEFAULT} will be used.
+     * @param chardecoder chardecoder to be used for decoding HTTP protocol elements.
+     *   If <code>null</code> simple type cast will be used for byte to char conversion.
+     * @param bufferPool pool to take the direct buffer from. If <code>null</code>
+     *   {@link DirectBufferPool#INSTANCE} will be used.
+     * @param allocator allocator to take byte arrays from while not bound to a channel.
+     *   May be <code>null</code>.
+     */
+    public ChannelSessionInputBuffer(
+            final HttpTransportMetricsImpl metrics,
+            final int buffersize,
+            final int minChunkLimit,
+            final MessageConstraints constraints,
+            final CharsetDecoder chardecoder,
+            final DirectBufferPool bufferPool,
+            final BufferAllocator allocator) {
+        super(metrics, buffersize, minChunkLimit, constraints, chardecoder, allocator);
+        this.metrics = metrics;
+        this.buffersize = buffersize;
+        this.minChunkLimit = minChunkLimit >= 0 ? minChunkLimit : 512;
+        this.constraints = constraints != null ? constraints : MessageConstraints.DEFAULT;
+        this.bufferPool = bufferPool != null ? bufferPool : DirectBufferPool.INSTANCE;
+    }
+
+    /**
+     * Binds this buffer to the given channel, which is put into non-blocking
+     * mode until the buffer is released.
+     */
+    public void bind(final SocketChannel channel) throws IOException {
+        Args.notNull(channel, "Channel");
+        release();
+        super.bind(null);
+        this.channel = new ChannelSelector(channel);
+    }
+
+    @Override
+    public void bind(final InputStream instream) {
+        release();
+        super.bind(instream);
+    }
+
+    /**
+     * Returns the channel this buffer is bound to, or <code>null</code>
+     * if not bound to a channel.
+     */
+    public SocketChannel getChannel() {
+        final ChannelSelector selector = this.channel;
+        return selector != null ? selector.getChannel() : null;
+    }
+
+    /**
+     * Unbinds this buffer from its channel, discarding buffered data and
+     * returning the direct buffer to the pool. The channel is put back into
+     * blocking mode.
+     */
+    public void release() {
+        final ChannelSelector selector = this.channel;
+        if (selector != null) {
+            this.channel = null;
+            if (this.buffer != null) {
+                this.bufferPool.release(this.buffer);
+                this.buffer = null;
+            }
+            try {
+                selector.close();
+            } catch (final IOException ignore) {
+            }
+        }
+    }
+
+    /**
+     * Unblocks a thread waiting for data after the channel has been closed.
+     * Unlike the other methods of this buffer this method may be called
+     * by any thread. The direct buffer is not returned to the pool.
+     */
+    public void shutdown() throws IOException {
+        final ChannelSelector selector = this.channel;
+        if (selector != null) {
+            selector.shutdown();
+        }
+    }
+
+    private void ensureBuffer() {
+        if (this.buffer == null) {
+            this.buffer = this.bufferPool.acquire(this.buffersize);
+            this.buffer.limit(0);
+        }
+    }
+
+    /**
+     * Returns the direct buffer to the pool unless it holds data not
+     * consumed yet.
+     */
+    @Override
+    public void recycle() {
+        if (this.buffer != null && !this.buffer.hasRemaining()) {
+            this.bufferPool.release(this.buffer);
+            this.buffer = null;
+        }
+        super.recycle();
+    }
+
+    @Override
+    public boolean isBound() {
+        return this.channel != null || super.isBound();
+    }
+
+    @Override
+    public int capacity() {
+        if (this.channel == null) {
+            return super.capacity();
+        }
+        return this.buffer != null ? this.buffer.capacity() : this.buffersize;
+    }
+
+    @Override
+    public int length() {
+        if (this.channel == null) {
+            return super.length();
+        }
+        return this.buffer != null ? this.buffer.remaining() : 0;
+    }
+
+    private int channelRead(final ChannelSelector selector, final ByteBuffer dst) throws IOException {
+        return selector.read(dst, selector.getChannel().socket().getSoTimeout());
+    }
+
+    @Override
+    public int fillBuffer() throws IOException {
+        final ChannelSelector selector = this.channel;
+        if (selector == null) {
+            return super.fillBuffer();
+        }
+        ensureBuffer();
+        this.buffer.compact();
+        final int l;
+        try {
+            l = channelRead(selector, this.buffer);
+        } finally {
+            this.buffer.flip();
+        }
+        if (l > 0) {
+            this.metrics.incrementBytesTransferred(l);
+        }
+        return l;
+    }
+
+    @Override
+    public int fillBuffer(final ReadableByteChannel channel) throws IOException {
+        if (this.channel == null) {
+            return super.fillBuffer(channel);
+        }
+        Args.notNull(channel, "Channel");
+        ensureBuffer();
+        this.buffer.compact();
+        final int l;
+        try {
+            l = channel.read(this.buffer);
+        } finally {
+            this.buffer.flip();
+        }
+        if (l > 0) {
+            this.metrics.incrementBytesTransferred(l);
+        }
+        return l;
+    }
+
+    @Override
+    public boolean hasBufferedData() {
+        if (this.channel == null) {
+            return super.hasBufferedData();
+        }
+        return this.buffer != null && this.buffer.hasRemaining();
+    }
+
+    @Override
+    public void clear() {
+        if (this.channel != null && this.buffer != null) {
+            this.buffer.clear();
+            this.buffer.limit(0);
+        }
+        super.clear();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (this.channel == null) {
+            return super.read();
+        }
+        while (!hasBufferedData()) {
+            if (fillBuffer() == -1) {
+                return -1;
+            }
+        }
+        return this.buffer.get() & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final ChannelSelector selector = this.channel;
+        if (selector == null) {
+            return super.read(b, off, len);
+        }
+        if (b == null) {
+            return 0;
+        }
+        if (!hasBufferedData()) {
+            // If the remaining capacity is big enough, read directly from the
+            // channel bypassing the buffer.
+            if (len > this.minChunkLimit) {
+                final int read = channelRead(selector, ByteBuffer.wrap(b, off, len));
+                if (read > 0) {
+                    this.metrics.incrementBytesTransferred(read);
+                }
+                return read;
+            }
+            // otherwise read to the buffer first
+            while (!hasBufferedData()) {
+                if (fillBuffer() == -1) {
+                    return -1;
+                }
+            }
+        }
+        final int chunk = Math.min(len, this.buffer.remaining());
+        this.buffer.get(b, off, chunk);
+        return chunk;
+    }
+
+    private int locateLF() {
+        final ByteBuffer buf = this.buffer;
+        if (buf == null) {
+            return -1;
+        }
+        return ByteScanner.indexOfLF(buf, buf.position(), buf.limit());
+    }
+
+    @Override
+    public int readLine(final CharArrayBuffer charbuffer) throws IOException {
+        if (this.channel == null) {
+            return super.readLine(charbuffer);
+        }
+        Args.notNull(charbuffer, "Char array buffer");
+        int noRead = 0;
+        boolean retry = true;
+        while (retry) {
+            // attempt to find end of line (LF)
+            final int i = locateLF();
+            if (i != -1) {
+                // end of line found.
+                retry = false;
+                appendToLineBuffer(this.buffer, i + 1 - this.buffer.position());
+            } else {
+                // end of line not found
+                if (hasBufferedData()) {
+                    appendToLineBuffer(this.buffer, this.buffer.remaining());
+                }
+                noRead = fillBuffer();
+                if (noRead == -1) {
+                    retry = false;
+                }
+            }
+            final int maxLineLen = this.constraints.getMaxLineLength();
+            if (maxLineLen > 0 && getLineBufferLength() >= maxLineLen) {
+                throw new MessageConstraintException("Maximum line length limit exceeded");
+            }
+        }
+        if (noRead == -1 && getLineBufferLength() == 0) {
+            // indicate the end of stream
+            return -1;
+        }
+        return lineFromLineBuffer(charbuffer);
+    }
+
+}
@@ -0,0 +1,403 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.impl.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+
+import original.apache.http.annotation.NotThreadSafe;
+import original.apache.http.io.BufferAllocator;
+import original.apache.http.io.FileChannelTransfer;
+import original.apache.http.protocol.HTTP;
+import original.apache.http.util.Args;
+import original.apache.http.util.CharArrayBuffer;
+
+/**
+ * Session output buffer that writes directly to a {@link SocketChannel}
+ * from a direct {@link ByteBuffer} taken from a {@link DirectBufferPool}.
+ * <p/>
+ * A fragment too large to be buffered is sent together with the buffered
+ * data, typically the message head, with a single gathering write rather
+ * than flushing the buffer first. Content of files is sent with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+ * so that it is not copied through the Java heap. The channel is used in
+ * non-blocking mode while bound; writes block until all data has been sent.
+ * The direct buffer is taken from the pool once there is data to buffer,
+ * and returned by {@link #recycle()}.
+ * <p/>
+ * Until bound to a channel, this buffer behaves as
+ * {@link SessionOutputBufferImpl}, so that it may still be bound to the
+ * stream of a socket without a channel, such as an SSL socket.
+ *
+ * @since 4.3.5
+ */
+@NotThreadSafe
+public class ChannelSessionOutputBuffer extends SessionOutputBufferImpl
+                                        implements FileChannelTransfer {
+
+    private static final byte[] CRLF = new byte[] {HTTP.CR, HTTP.LF};
+
+    private final HttpTransportMetricsImpl metrics;
+    private final int buffersize;
+    private final int fragmentSizeHint;
+    private final CharsetEncoder encoder;
+    private final DirectBufferPool bufferPool;
+    private final ByteBuffer[] gather;
+
+    private volatile ChannelSelector channel;
+    private ByteBuffer buffer;
+
+    /**
+     * Creates new instance of ChannelSessionOutputBuffer.
+     *
+     * @param metrics HTTP transport metrics.
+     * @param buffersize buffer size. Must be a positive number.
+     * @param fragmentSizeHint fragment size hint defining a minimal size of a fragment
+     *   that should be written out directly to the socket bypassing the session buffer.
+     *   Value <code>0</code> disables fragment buffering.
+     * @param charencoder charencoder to be used for encoding HTTP protocol elements.
+     *   If <code>null</code> simple type cast will be used for char to byte conversion.
+     * @param bufferPool pool to take the direct buffer from. If <code>null</code>
+     *   {@link DirectBufferPool#INSTANCE} will be used.
+     * @param allocator allocator to take byte arrays from while not bound to a channel.
+     *   May be <code>null</code>.
+     */
+    public ChannelSessionOutputBuffer(
+            final HttpTransportMetricsImpl metrics,
+            final int buffersize,
+            final int fragmentSizeHint,
+            final CharsetEncoder charencoder,
+            final DirectBufferPool bufferPool,
+            final BufferAllocator allocator) {
+        super(metrics, buffersize, fragmentSizeHint, charencoder, allocator);
+        this.metrics = metrics;
+        this.buffersize = buffersize;
+        this.fragmentSizeHint = fragmentSizeHint >= 0 ? fragmentSizeHint : 0;
+        this.encoder = charencoder;
+        this.bufferPool = bufferPool != null ? bufferPool : DirectBufferPool.INSTANCE;
+        this.gather = new ByteBuffer[2];
+    }
+
+    /**
+     * Binds this buffer to the given channel, which is put into non-blocking
+     * mode until the buffer is released.
+     */
+    public void bind(final SocketChannel channel) throws IOException {
+        Args.notNull(channel, "Channel");
+        release();
+        super.bind(null);
+        this.channel = new ChannelSelector(channel);
+    }
+
+    @Override
+    public void bind(final OutputStream outstream) {
+        release();
+        super.bind(outstream);
+    }
+
+    /**
+     * Returns the channel this buffer is bound to, or <code>null</code>
+     * if not bound to a channel.
+     */
+    public SocketChannel getChannel() {
+        final ChannelSelector selector = this.channel;
+        return selector != null ? selector.getChannel() : null;
+    }
+
+    /**
+     * Unbinds this buffer from its channel, discarding buffered data and
+     * returning the direct buffer to the pool. The channel is put back into
+     * blocking mode.
+     */
+    public void release() {
+        final ChannelSelector selector = this.channel;
+        if (selector != null) {
+            this.channel = null;
+            if (this.buffer != null) {
+                this.bufferPool.release(this.buffer);
+                this.buffer = null;
+            }
+            try {
+                selector.close();
+            } catch (final IOException ignore) {
+            }
+        }
+    }
+
+    /**
+     * Unblocks a thread waiting to write after the channel has been closed.
+     * Unlike the other methods of this buffer this method may be called
+     * by any thread. The direct buffer is not returned to the pool.
+     */
+    public void shutdown() throws IOException {
+        final ChannelSelector selector = this.channel;
+        if (selector != null) {
+            selector.shutdown();
+        }
+    }
+
+    private void ensureBuffer() {
+        if (this.buffer == null) {
+            this.buffer = this.bufferPool.acquire(this.buffersize);
+        }
+    }
+
+    /**
+     * Returns the direct buffer to the pool unless it holds data not
+     * flushed yet.
+     */
+    @Override
+    public void recycle() {
+        if (this.buffer != null && this.buffer.position() == 0) {
+            this.bufferPool.release(this.buffer);
+            this.buffer = null;
+        }
+        super.recycle();
+    }
+
+    @Override
+    public boolean isBound() {
+        return this.channel != null || super.isBound();
+    }
+
+    @Override
+    public int capacity() {
+        if (this.channel == null) {
+            return super.capacity();
+        }
+        return this.buffer != null ? this.buffer.capacity() : this.buffersize;
+    }
+
+    @Override
+    public int length() {
+        if (this.channel == null) {
+            return super.length();
+        }
+        return this.buffer != null ? this.buffer.position() : 0;
+    }
+
+    private void flushBuffer(final ChannelSelector selector) throws IOException {
+        final int len = length();
+        if (len > 0) {
+            this.buffer.flip();
+            try {
+                selector.write(this.buffer);
+            } finally {
+                this.buffer.clear();
+            }
+            this.metrics.incrementBytesTransferred(len);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        final ChannelSelector selector = this.channel;
+        if (selector == null) {
+            super.flush();
+        } else {
+            flushBuffer(selector);
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        final ChannelSelector selector = this.channel;
+        if (selector == null) {
+            super.write(b, off, len);
+            return;
+        }
+        if (b == null) {
+            return;
+        }
+        if (len > this.fragmentSizeHint || len > capacity()) {
+            // Send the buffered data and the fragment with one gathering write
+            final ByteBuffer src = ByteBuffer.wrap(b, off, len);
+            final int buffered = length();
+            if (buffered > 0) {
+                this.buffer.flip();
+                this.gather[0] = this.buffer;
+                this.gather[1] = src;
+                try {
+                    selector.write(this.gather);
+                } finally {
+                    this.gather[0] = null;
+                    this.gather[1] = null;
+                    this.buffer.clear();
+                }
+            } else {
+                selector.write(src);
+            }
+            this.metrics.incrementBytesTransferred(buffered + len);
+        } else {
+            // Do not let the buffer grow unnecessarily
+            ensureBuffer();
+            if (len > this.buffer.remaining()) {
+                flushBuffer(selector);
+            }
+            this.buffer.put(b, off, len);
+        }
+    }
+
+    /**
+     * Sends the given part of a file. Content fitting into the buffer is read
+     * into it, to be sent together with the buffered data. Larger content is
+     * transferred from the file to the channel directly, after the buffer
+     * has been flushed.
+     *
+     * @return <code>false</code> if this buffer is not bound to a channel.
+     */
+    public boolean transfer(final FileChannel src, final long position, final long count) throws IOException {
+        final ChannelSelector selector = this.channel;
+        if (selector == null) {
+            return false;
+        }
+        Args.notNull(src, "File channel");
+        Args.notNegative(count, "Byte count");
+        if (count <= capacity() - length()) {
+            ensureBuffer();
+            this.buffer.limit(this.buffer.position() + (int) count);
+            try {
+                long pos = position;
+                while (this.buffer.hasRemaining()) {
+                    final int n = src.read(this.buffer, pos);
+                    if (n == -1) {
+                        throw new IOException("Premature end of file");
+                    }
+                    pos += n;
+                }
+            } finally {
+                this.buffer.limit(this.buffer.capacity());
+            }
+        } else {
+            flushBuffer(selector);
+            selector.transfer(src, position, count);
+            this.metrics.incrementBytesTransferred(count);
+        }
+        return true;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        final ChannelSelector selector = this.channel;
+        if (selector == null) {
+            super.write(b);
+            return;
+        }
+        ensureBuffer();
+        if (!this.buffer.hasRemaining()) {
+            flushBuffer(selector);
+        }
+        this.buffer.put((byte) b);
+        if (this.fragmentSizeHint == 0) {
+            flushBuffer(selector);
+        }
+    }
+
+    @Override
+    public void writeLine(final CharArrayBuffer charbuffer) throws IOException {
+        final ChannelSelector selector = this.channel;
+        if (selector == null) {
+            super.writeLine(charbuffer);
+            return;
+        }
+        if (charbuffer == null) {
+            return;
+        }
+        ensureBuffer();
+        if (this.encoder == null) {
+            final char[] chars = charbuffer.buffer();
+            final int len = charbuffer.length();
+            for (int i = 0; i < len; i++) {
+                if (!this.buffer.hasRemaining()) {
+                    flushBuffer(selector);
+                }
+                this.buffer.put((byte) chars[i]);
+            }
+        } else {
+            writeEncoded(selector, CharBuffer.wrap(charbuffer.buffer(), 0, charbuffer.length()));
+        }
+        write(CRLF);
+    }
+
+    @Override
+    void writeChars(final String s) throws IOException {
+        final ChannelSelector selector = this.channel;
+        if (selector == null) {
+            super.writeChars(s);
+            return;
+        }
+        final int len = s.length();
+        if (len == 0) {
+            return;
+        }
+        ensureBuffer();
+        if (this.encoder == null || (isAsciiCompatible() && isAscii(s))) {
+            for (int i = 0; i < len; i++) {
+                if (!this.buffer.hasRemaining()) {
+                    flushBuffer(selector);
+                }
+                this.buffer.put((byte) s.charAt(i));
+            }
+        } else {
+            writeEncoded(selector, CharBuffer.wrap(s));
+        }
+    }
+
+    private void writeEncoded(final ChannelSelector selector, final CharBuffer cbuf) throws IOException {
+        if (!cbuf.hasRemaining()) {
+            return;
+        }
+        // Encode straight into the direct buffer, flushing it when full
+        this.encoder.reset();
+        CoderResult result;
+        do {
+            result = this.encoder.encode(cbuf, this.buffer, true);
+            handleEncodingResult(selector, result);
+        } while (result.isOverflow());
+        do {
+            result = this.encoder.flush(this.buffer);
+            handleEncodingResult(selector, result);
+        } while (result.isOverflow());
+    }
+
+    private void handleEncodingResult(
+            final ChannelSelector selector, final CoderResult result) throws IOException {
+        if (result.isError()) {
+            result.throwException();
+        }
+        if (result.isOverflow()) {
+            flushBuffer(selector);
+        }
+    }
+
+}
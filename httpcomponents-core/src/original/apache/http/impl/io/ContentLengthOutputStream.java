@@ -29,8 +29,10 @@ package original.apache.http.impl.io;
 
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 import original.apache.http.annotation.NotThreadSafe;
+import original.apache.http.io.FileChannelTransfer;
 import original.apache.http.io.SessionOutputBuffer;
 import original.apache.http.util.Args;
 
@@ -44,11 +46,14 @@ import original.apache.http.util.Args;
  * Note that this class NEVER closes the underlying stream, even when close
  * gets called.  Instead, the stream will be marked as closed and no further
  * output will be permitted.
+ * <p>
+ * Content of files may be sent without copying it through the Java heap
+ * if the session output buffer implements {@link FileChannelTransfer}.
  *
  * @since 4.0
  */
 @NotThreadSafe
-public class ContentLengthOutputStream extends OutputStream {
+public class ContentLengthOutputStream extends OutputStream implements FileChannelTransfer {
 
     /**
      * Wrapped session output buffer.
@@ -122,6 +127,30 @@ public class ContentLengthOutputStream extends OutputStream {
         write(b, 0, b.length);
     }
 
+    /**
+     * Sends the given part of a file through the session output buffer,
+     * if it implements {@link FileChannelTransfer}. Content beyond the
+     * content length is ignored.
+     *
+     * @since 4.3.5
+     */
+    public boolean transfer(final FileChannel src, final long position, final long count) throws IOException {
+        if (this.closed) {
+            throw new IOException("Attempted write to closed stream.");
+        }
+        if (!(this.out instanceof FileChannelTransfer)) {
+            return false;
+        }
+        final long chunk = Math.min(count, this.contentLength - this.total);
+        if (chunk > 0) {
+            if (!((FileChannelTransfer) this.out).transfer(src, position, chunk)) {
+                return false;
+            }
+            this.total += chunk;
+        }
+        return true;
+    }
+
     @Override
     public void write(final int b) throws IOException {
         if (this.closed) {
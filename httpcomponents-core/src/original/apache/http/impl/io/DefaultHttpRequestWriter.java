@@ -28,20 +28,72 @@
 package original.apache.http.impl.io;
 
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 
+import original.apache.http.Consts;
+import original.apache.http.FormattedHeader;
+import original.apache.http.Header;
+import original.apache.http.HttpException;
 import original.apache.http.HttpRequest;
+import original.apache.http.ProtocolVersion;
+import original.apache.http.RequestLine;
 import original.apache.http.annotation.NotThreadSafe;
 import original.apache.http.io.SessionOutputBuffer;
+import original.apache.http.message.AbstractHttpMessage;
+import original.apache.http.message.BasicLineFormatter;
+import original.apache.http.message.EncodedHeader;
 import original.apache.http.message.LineFormatter;
+import original.apache.http.protocol.HTTP;
+import original.apache.http.util.Args;
 
 /**
  * HTTP request writer that serializes its output to an instance of {@link SessionOutputBuffer}.
+ * <p/>
+ * Unless a custom line formatter is used, the head of the request is written
+ * straight to a {@link SessionOutputBufferImpl}, rather than formatted line by
+ * line first. Well-known methods, header names and protocol versions are
+ * written from bytes encoded up front, as are {@link EncodedHeader}s.
  *
  * @since 4.3
  */
 @NotThreadSafe
 public class DefaultHttpRequestWriter extends AbstractMessageWriter<HttpRequest> {
 
+    private static final String[] METHODS = {
+        "GET", "POST", "PUT", "HEAD", "DELETE", "OPTIONS", "PATCH", "TRACE", "CONNECT"
+    };
+
+    private static final String[] HEADERS = {
+        HTTP.TARGET_HOST, HTTP.USER_AGENT, HTTP.CONN_DIRECTIVE, HTTP.CONTENT_LEN,
+        HTTP.CONTENT_TYPE, HTTP.CONTENT_ENCODING, HTTP.TRANSFER_ENCODING, HTTP.EXPECT_DIRECTIVE,
+        HTTP.DATE_HEADER, "Accept", "Accept-Encoding", "Accept-Language", "Authorization",
+        "Cache-Control", "Cookie", "Cookie2", "If-Modified-Since", "If-None-Match", "Pragma",
+        "Proxy-Authorization", "Proxy-Connection", "Range", "Referer"
+    };
+
+    private static final byte[][] METHOD_BYTES;
+    private static final Map<String, byte[]> HEADER_BYTES;
+    private static final byte[] HTTP_1_1 = encode(" HTTP/1.1\r\n");
+    private static final byte[] HTTP_1_0 = encode(" HTTP/1.0\r\n");
+    private static final byte[] COLON = encode(": ");
+    private static final byte[] CRLF = encode("\r\n");
+
+    static {
+        METHOD_BYTES = new byte[METHODS.length][];
+        for (int i = 0; i < METHODS.length; i++) {
+            METHOD_BYTES[i] = encode(METHODS[i] + " ");
+        }
+        HEADER_BYTES = new HashMap<String, byte[]>();
+        for (final String name: HEADERS) {
+            HEADER_BYTES.put(name, encode(name + ": "));
+        }
+    }
+
+    private static byte[] encode(final String s) {
+        return s.getBytes(Consts.ASCII);
+    }
+
     /**
      * Creates an instance of DefaultHttpRequestWriter.
      *
@@ -60,6 +112,90 @@ public class DefaultHttpRequestWriter extends AbstractMessageWriter<HttpRequest>
         this(buffer, null);
     }
 
+    @Override
+    public void write(final HttpRequest message) throws IOException, HttpException {
+        Args.notNull(message, "HTTP message");
+        if (this.lineFormatter != BasicLineFormatter.INSTANCE
+                || !(this.sessionBuffer instanceof SessionOutputBufferImpl)
+                || !(message instanceof AbstractHttpMessage)) {
+            super.write(message);
+            return;
+        }
+        final SessionOutputBufferImpl outbuffer = (SessionOutputBufferImpl) this.sessionBuffer;
+        if (!outbuffer.isAsciiCompatible()) {
+            super.write(message);
+            return;
+        }
+        writeRequestLine(outbuffer, message.getRequestLine());
+        final AbstractHttpMessage headers = (AbstractHttpMessage) message;
+        final int count = headers.getHeaderCount();
+        for (int i = 0; i < count; i++) {
+            writeHeader(outbuffer, headers.getHeader(i));
+        }
+        outbuffer.write(CRLF);
+    }
+
+    private static void writeRequestLine(
+            final SessionOutputBufferImpl outbuffer,
+            final RequestLine requestLine) throws IOException {
+        final String method = requestLine.getMethod();
+        byte[] methodBytes = null;
+        for (int i = 0; i < METHODS.length; i++) {
+            if (METHODS[i].equals(method)) {
+                methodBytes = METHOD_BYTES[i];
+                break;
+            }
+        }
+        if (methodBytes != null) {
+            outbuffer.write(methodBytes);
+        } else {
+            outbuffer.writeChars(method);
+            outbuffer.write(' ');
+        }
+        outbuffer.writeChars(requestLine.getUri());
+        final ProtocolVersion ver = requestLine.getProtocolVersion();
+        if (ver.getMajor() == 1 && (ver.getMinor() == 1 || ver.getMinor() == 0)
+                && ver.getProtocol().equals("HTTP")) {
+            outbuffer.write(ver.getMinor() == 1 ? HTTP_1_1 : HTTP_1_0);
+        } else {
+            outbuffer.write(' ');
+            outbuffer.writeChars(ver.getProtocol());
+            outbuffer.write('/');
+            outbuffer.writeChars(Integer.toString(ver.getMajor()));
+            outbuffer.write('.');
+            outbuffer.writeChars(Integer.toString(ver.getMinor()));
+            outbuffer.write(CRLF);
+        }
+    }
+
+    private static void writeHeader(
+            final SessionOutputBufferImpl outbuffer,
+            final Header header) throws IOException {
+        if (header instanceof EncodedHeader) {
+            final byte[] line = ((EncodedHeader) header).getEncodedLine();
+            if (line != null) {
+                outbuffer.write(line);
+                return;
+            }
+        } else if (header instanceof FormattedHeader) {
+            outbuffer.writeLine(((FormattedHeader) header).getBuffer());
+            return;
+        }
+        final String name = header.getName();
+        final byte[] nameBytes = HEADER_BYTES.get(name);
+        if (nameBytes != null) {
+            outbuffer.write(nameBytes);
+        } else {
+            outbuffer.writeChars(name);
+            outbuffer.write(COLON);
+        }
+        final String value = header.getValue();
+        if (value != null) {
+            outbuffer.writeChars(value);
+        }
+        outbuffer.write(CRLF);
+    }
+
     @Override
     protected void writeHeadLine(final HttpRequest message) throws IOException {
         lineFormatter.formatRequestLine(this.lineBuf, message.getRequestLine());
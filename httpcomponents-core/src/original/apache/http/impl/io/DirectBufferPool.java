@@ -0,0 +1,155 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.impl.io;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import original.apache.http.annotation.ThreadSafe;
+import original.apache.http.util.Args;
+
+/**
+ * Pool of direct {@link ByteBuffer}s used as session buffers by connections
+ * doing their I/O on a {@link java.nio.channels.SocketChannel}.
+ * <p/>
+ * Direct buffers are expensive to allocate and are only freed once garbage
+ * collected, so the buffers of closed connections are kept for reuse by
+ * new connections. Buffers are pooled by capacity, keeping at most
+ * the given number of buffers of each capacity.
+ *
+ * @since 4.3.5
+ */
+@ThreadSafe
+public class DirectBufferPool {
+
+    public static final DirectBufferPool INSTANCE = new DirectBufferPool(64);
+
+    private final int maxPerSize;
+    private final ConcurrentMap<Integer, SizeClass> sizeClasses;
+
+    /**
+     * Creates a pool.
+     *
+     * @param maxPerSize the maximum number of idle buffers of the same
+     *   capacity to keep.
+     */
+    public DirectBufferPool(final int maxPerSize) {
+        super();
+        this.maxPerSize = Args.notNegative(maxPerSize, "Max buffers per size");
+        this.sizeClasses = new ConcurrentHashMap<Integer, SizeClass>();
+    }
+
+    private SizeClass getSizeClass(final int size) {
+        final Integer key = Integer.valueOf(size);
+        SizeClass sizeClass = this.sizeClasses.get(key);
+        if (sizeClass == null) {
+            sizeClass = new SizeClass();
+            final SizeClass existing = this.sizeClasses.putIfAbsent(key, sizeClass);
+            if (existing != null) {
+                sizeClass = existing;
+            }
+        }
+        return sizeClass;
+    }
+
+    /**
+     * Returns a cleared direct buffer of the given capacity, either taken
+     * from the pool or newly allocated.
+     */
+    public ByteBuffer acquire(final int size) {
+        Args.positive(size, "Buffer size");
+        final SizeClass sizeClass = getSizeClass(size);
+        final ByteBuffer buffer = sizeClass.buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(size);
+        }
+        sizeClass.count.decrementAndGet();
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. The buffer must not be used by
+     * the caller afterwards.
+     */
+    public void release(final ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect()) {
+            return;
+        }
+        final SizeClass sizeClass = getSizeClass(buffer.capacity());
+        if (sizeClass.count.incrementAndGet() > this.maxPerSize) {
+            sizeClass.count.decrementAndGet();
+            return;
+        }
+        sizeClass.buffers.offer(buffer);
+    }
+
+    /**
+     * Returns the number of idle buffers kept by the pool.
+     */
+    public int getPooledCount() {
+        int n = 0;
+        for (final SizeClass sizeClass: this.sizeClasses.values()) {
+            n += sizeClass.count.get();
+        }
+        return n;
+    }
+
+    /**
+     * Drops all idle buffers.
+     */
+    public void clear() {
+        for (final SizeClass sizeClass: this.sizeClasses.values()) {
+            while (sizeClass.buffers.poll() != null) {
+                sizeClass.count.decrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[max per size: ");
+        buffer.append(this.maxPerSize);
+        buffer.append("; pooled: ");
+        buffer.append(getPooledCount());
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+    static class SizeClass {
+
+        final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+        final AtomicInteger count = new AtomicInteger();
+
+    }
+
+}
@@ -0,0 +1,149 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.impl.io;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import original.apache.http.annotation.ThreadSafe;
+import original.apache.http.io.BufferAllocator;
+import original.apache.http.util.Args;
+
+/**
+ * {@link BufferAllocator} that keeps released arrays for reuse.
+ * <p/>
+ * Sizes are rounded up to the next power of two, and arrays are pooled
+ * by size, keeping at most the given number of idle arrays of each size.
+ * Arrays larger than 1 MB are neither rounded nor pooled.
+ *
+ * @since 4.3.5
+ */
+@ThreadSafe
+public class HeapBufferPool implements BufferAllocator {
+
+    public static final HeapBufferPool INSTANCE = new HeapBufferPool(64);
+
+    private static final int MIN_SHIFT = 6;
+    private static final int MAX_SHIFT = 20;
+
+    private final int maxPerSize;
+    private final SizeClass[] sizeClasses;
+
+    /**
+     * Creates a pool.
+     *
+     * @param maxPerSize the maximum number of idle arrays of the same
+     *   size to keep.
+     */
+    public HeapBufferPool(final int maxPerSize) {
+        super();
+        this.maxPerSize = Args.notNegative(maxPerSize, "Max buffers per size");
+        this.sizeClasses = new SizeClass[MAX_SHIFT - MIN_SHIFT + 1];
+        for (int i = 0; i < this.sizeClasses.length; i++) {
+            this.sizeClasses[i] = new SizeClass();
+        }
+    }
+
+    private static int shiftOf(final int size) {
+        final int shift = 32 - Integer.numberOfLeadingZeros(size - 1);
+        return shift > MIN_SHIFT ? shift : MIN_SHIFT;
+    }
+
+    public byte[] allocate(final int size) {
+        Args.positive(size, "Buffer size");
+        final int shift = shiftOf(size);
+        if (shift > MAX_SHIFT) {
+            return new byte[size];
+        }
+        final SizeClass sizeClass = this.sizeClasses[shift - MIN_SHIFT];
+        final byte[] buffer = sizeClass.buffers.poll();
+        if (buffer == null) {
+            return new byte[1 << shift];
+        }
+        sizeClass.count.decrementAndGet();
+        return buffer;
+    }
+
+    public void release(final byte[] buffer) {
+        if (buffer == null) {
+            return;
+        }
+        final int size = buffer.length;
+        if (size < (1 << MIN_SHIFT) || size > (1 << MAX_SHIFT) || (size & (size - 1)) != 0) {
+            // Not allocated by this pool
+            return;
+        }
+        final SizeClass sizeClass = this.sizeClasses[shiftOf(size) - MIN_SHIFT];
+        if (sizeClass.count.incrementAndGet() > this.maxPerSize) {
+            sizeClass.count.decrementAndGet();
+            return;
+        }
+        sizeClass.buffers.offer(buffer);
+    }
+
+    /**
+     * Returns the number of idle arrays kept by the pool.
+     */
+    public int getPooledCount() {
+        int n = 0;
+        for (final SizeClass sizeClass: this.sizeClasses) {
+            n += sizeClass.count.get();
+        }
+        return n;
+    }
+
+    /**
+     * Drops all idle arrays.
+     */
+    public void clear() {
+        for (final SizeClass sizeClass: this.sizeClasses) {
+            while (sizeClass.buffers.poll() != null) {
+                sizeClass.count.decrementAndGet();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buffer = new StringBuilder();
+        buffer.append("[max per size: ");
+        buffer.append(this.maxPerSize);
+        buffer.append("; pooled: ");
+        buffer.append(getPooledCount());
+        buffer.append("]");
+        return buffer.toString();
+    }
+
+    static class SizeClass {
+
+        final Queue<byte[]> buffers = new ConcurrentLinkedQueue<byte[]>();
+        final AtomicInteger count = new AtomicInteger();
+
+    }
+
+}
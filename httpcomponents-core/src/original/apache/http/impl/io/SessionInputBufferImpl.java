@@ -30,20 +30,23 @@ package original.apache.http.impl.io;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CoderResult;
 
 import original.apache.http.MessageConstraintException;
 import original.apache.http.annotation.NotThreadSafe;
 import original.apache.http.config.MessageConstraints;
+import original.apache.http.io.BufferAllocator;
 import original.apache.http.io.BufferInfo;
 import original.apache.http.io.HttpTransportMetrics;
 import original.apache.http.io.SessionInputBuffer;
 import original.apache.http.protocol.HTTP;
 import original.apache.http.util.Args;
 import original.apache.http.util.Asserts;
-import original.apache.http.util.ByteArrayBuffer;
 import original.apache.http.util.CharArrayBuffer;
 
 /**
@@ -54,6 +57,10 @@ import original.apache.http.util.CharArrayBuffer;
  * {@link #readLine(CharArrayBuffer)} and {@link #readLine()} methods of this
  * class treat a lone LF as valid line delimiters in addition to CR-LF required
  * by the HTTP specification.
+ * <p/>
+ * The internal byte arrays are allocated only once there is data to buffer.
+ * If a {@link BufferAllocator} is given they are taken from it, and may be
+ * given back with {@link #recycle()} while the connection is idle.
  *
  * @since 4.3
  */
@@ -61,15 +68,20 @@ import original.apache.http.util.CharArrayBuffer;
 public class SessionInputBufferImpl implements SessionInputBuffer, BufferInfo {
 
     private final HttpTransportMetricsImpl metrics;
-    private final byte[] buffer;
-    private final ByteArrayBuffer linebuffer;
+    private final int buffersize;
     private final int minChunkLimit;
     private final MessageConstraints constraints;
     private final CharsetDecoder decoder;
+    private final boolean asciiCompatible;
+    private final BufferAllocator allocator;
 
     private InputStream instream;
+    private byte[] buffer;
+    private ByteBuffer bufferView;
     private int bufferpos;
     private int bufferlen;
+    private byte[] linebuffer;
+    private int linelen;
     private CharBuffer cbuf;
 
     /**
@@ -86,23 +98,49 @@ public class SessionInputBufferImpl implements SessionInputBuffer, BufferInfo {
      *   {@link MessageConstraints#DEFAULT} will be used.
      * @param chardecoder chardecoder to be used for decoding HTTP protocol elements.
      *   If <code>null</code> simple type cast will be used for byte to char conversion.
+     * @param allocator allocator to take the internal byte arrays from. If <code>null</code>
+     *   the arrays are allocated when first needed and kept for the lifetime of the buffer.
+     *
+     * @since 4.3.5
      */
     public SessionInputBufferImpl(
             final HttpTransportMetricsImpl metrics,
             final int buffersize,
             final int minChunkLimit,
             final MessageConstraints constraints,
-            final CharsetDecoder chardecoder) {
+            final CharsetDecoder chardecoder,
+            final BufferAllocator allocator) {
         Args.notNull(metrics, "HTTP transport metrcis");
         Args.positive(buffersize, "Buffer size");
         this.metrics = metrics;
-        this.buffer = new byte[buffersize];
+        this.buffersize = buffersize;
         this.bufferpos = 0;
         this.bufferlen = 0;
+        this.linelen = 0;
         this.minChunkLimit = minChunkLimit >= 0 ? minChunkLimit : 512;
         this.constraints = constraints != null ? constraints : MessageConstraints.DEFAULT;
-        this.linebuffer = new ByteArrayBuffer(buffersize);
         this.decoder = chardecoder;
+        this.asciiCompatible = chardecoder != null && isAsciiCompatible(chardecoder.charset());
+        this.allocator = allocator;
+    }
+
+    /**
+     * Determines whether the given charset decodes bytes below 0x80 as the
+     * chars of the same value, so that ASCII lines may be widened rather than
+     * decoded.
+     */
+    private static boolean isAsciiCompatible(final Charset charset) {
+        final String name = charset.name();
+        return name.equals("US-ASCII") || name.equals("ISO-8859-1") || name.equals("UTF-8");
+    }
+
+    public SessionInputBufferImpl(
+            final HttpTransportMetricsImpl metrics,
+            final int buffersize,
+            final int minChunkLimit,
+            final MessageConstraints constraints,
+            final CharsetDecoder chardecoder) {
+        this(metrics, buffersize, minChunkLimit, constraints, chardecoder, null);
     }
 
     public SessionInputBufferImpl(
@@ -120,7 +158,7 @@ public class SessionInputBufferImpl implements SessionInputBuffer, BufferInfo {
     }
 
     public int capacity() {
-        return this.buffer.length;
+        return this.buffer != null ? this.buffer.length : this.buffersize;
     }
 
     public int length() {
@@ -131,13 +169,49 @@ public class SessionInputBufferImpl implements SessionInputBuffer, BufferInfo {
         return capacity() - length();
     }
 
+    private byte[] allocate(final int size) {
+        return this.allocator != null ? this.allocator.allocate(size) : new byte[size];
+    }
+
+    private void ensureBuffer() {
+        if (this.buffer == null) {
+            this.buffer = allocate(this.buffersize);
+            this.bufferView = ByteBuffer.wrap(this.buffer).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Returns the internal byte arrays to the allocator of this buffer,
+     * unless they hold data not consumed yet, in which case they are kept.
+     * The arrays are taken from the allocator again once more data is to be
+     * buffered. This method has no effect if this buffer was created without
+     * an allocator.
+     *
+     * @since 4.3.5
+     */
+    public void recycle() {
+        if (this.allocator == null) {
+            return;
+        }
+        if (this.buffer != null && this.bufferpos == this.bufferlen) {
+            this.allocator.release(this.buffer);
+            this.buffer = null;
+            this.bufferView = null;
+            this.bufferpos = 0;
+            this.bufferlen = 0;
+        }
+        if (this.linebuffer != null && this.linelen == 0) {
+            this.allocator.release(this.linebuffer);
+            this.linebuffer = null;
+        }
+    }
+
     private int streamRead(final byte[] b, final int off, final int len) throws IOException {
         Asserts.notNull(this.instream, "Input stream");
         return this.instream.read(b, off, len);
     }
 
-    public int fillBuffer() throws IOException {
-        // compact the buffer if necessary
+    private void compact() {
         if (this.bufferpos > 0) {
             final int len = this.bufferlen - this.bufferpos;
             if (len > 0) {
@@ -146,6 +220,12 @@ public class SessionInputBufferImpl implements SessionInputBuffer, BufferInfo {
             this.bufferpos = 0;
             this.bufferlen = len;
         }
+    }
+
+    public int fillBuffer() throws IOException {
+        ensureBuffer();
+        // compact the buffer if necessary
+        compact();
         final int l;
         final int off = this.bufferlen;
         final int len = this.buffer.length - off;
@@ -159,6 +239,35 @@ public class SessionInputBufferImpl implements SessionInputBuffer, BufferInfo {
         }
     }
 
+    /**
+     * Reads data immediately available from the given channel into the buffer.
+     * The channel is expected to be in non-blocking mode, in which case this
+     * method never blocks.
+     *
+     * @param channel the channel to read from.
+     * @return the number of bytes read, possibly zero, or <code>-1</code>
+     *   if the channel has reached end-of-stream.
+     * @throws IOException in case of an I/O error.
+     *
+     * @since 4.3.5
+     */
+    public int fillBuffer(final ReadableByteChannel channel) throws IOException {
+        Args.notNull(channel, "Channel");
+        ensureBuffer();
+        compact();
+        final int off = this.bufferlen;
+        final int len = this.buffer.length - off;
+        if (len == 0) {
+            return 0;
+        }
+        final int l = channel.read(ByteBuffer.wrap(this.buffer, off, len));
+        if (l > 0) {
+            this.bufferlen = off + l;
+            this.metrics.incrementBytesTransferred(l);
+        }
+        return l;
+    }
+
     public boolean hasBufferedData() {
         return this.bufferpos < this.bufferlen;
     }
@@ -220,12 +329,10 @@ public class SessionInputBufferImpl implements SessionInputBuffer, BufferInfo {
     }
 
     private int locateLF() {
-        for (int i = this.bufferpos; i < this.bufferlen; i++) {
-            if (this.buffer[i] == HTTP.LF) {
-                return i;
-            }
+        if (this.bufferpos >= this.bufferlen) {
+            return -1;
         }
-        return -1;
+        return ByteScanner.indexOfLF(this.bufferView, this.bufferpos, this.bufferlen);
     }
 
     /**
@@ -252,19 +359,19 @@ public class SessionInputBufferImpl implements SessionInputBuffer, BufferInfo {
             final int i = locateLF();
             if (i != -1) {
                 // end of line found.
-                if (this.linebuffer.isEmpty()) {
+                if (this.linelen == 0) {
                     // the entire line is preset in the read buffer
                     return lineFromReadBuffer(charbuffer, i);
                 }
                 retry = false;
                 final int len = i + 1 - this.bufferpos;
-                this.linebuffer.append(this.buffer, this.bufferpos, len);
+                appendToLineBuffer(this.buffer, this.bufferpos, len);
                 this.bufferpos = i + 1;
             } else {
                 // end of line not found
                 if (hasBufferedData()) {
                     final int len = this.bufferlen - this.bufferpos;
-                    this.linebuffer.append(this.buffer, this.bufferpos, len);
+                    appendToLineBuffer(this.buffer, this.bufferpos, len);
                     this.bufferpos = this.bufferlen;
                 }
                 noRead = fillBuffer();
@@ -273,11 +380,11 @@ public class SessionInputBufferImpl implements SessionInputBuffer, BufferInfo {
                 }
             }
             final int maxLineLen = this.constraints.getMaxLineLength();
-            if (maxLineLen > 0 && this.linebuffer.length() >= maxLineLen) {
+            if (maxLineLen > 0 && this.linelen >= maxLineLen) {
                 throw new MessageConstraintException("Maximum line length limit exceeded");
             }
         }
-        if (noRead == -1 && this.linebuffer.isEmpty()) {
+        if (noRead == -1 && this.linelen == 0) {
             // indicate the end of stream
             return -1;
         }
@@ -297,31 +404,60 @@ public class SessionInputBufferImpl implements SessionInputBuffer, BufferInfo {
      * @return HTTP line as a string
      * @exception  IOException  if an I/O error occurs.
      */
-    private int lineFromLineBuffer(final CharArrayBuffer charbuffer)
+    int lineFromLineBuffer(final CharArrayBuffer charbuffer)
             throws IOException {
         // discard LF if found
-        int len = this.linebuffer.length();
+        int len = this.linelen;
         if (len > 0) {
-            if (this.linebuffer.byteAt(len - 1) == HTTP.LF) {
+            if (this.linebuffer[len - 1] == HTTP.LF) {
                 len--;
             }
             // discard CR if found
             if (len > 0) {
-                if (this.linebuffer.byteAt(len - 1) == HTTP.CR) {
+                if (this.linebuffer[len - 1] == HTTP.CR) {
                     len--;
                 }
             }
         }
-        if (this.decoder == null) {
-            charbuffer.append(this.linebuffer, 0, len);
-        } else {
-            final ByteBuffer bbuf =  ByteBuffer.wrap(this.linebuffer.buffer(), 0, len);
-            len = appendDecoded(charbuffer, bbuf);
-        }
-        this.linebuffer.clear();
+        len = appendLine(charbuffer, this.linebuffer, 0, len);
+        this.linelen = 0;
         return len;
     }
 
+    private void ensureLineCapacity(final int len) {
+        final int required = this.linelen + len;
+        if (this.linebuffer == null) {
+            this.linebuffer = allocate(Math.max(required, this.buffersize));
+        } else if (required > this.linebuffer.length) {
+            final byte[] newbuffer = allocate(Math.max(required, this.linebuffer.length << 1));
+            System.arraycopy(this.linebuffer, 0, newbuffer, 0, this.linelen);
+            if (this.allocator != null) {
+                this.allocator.release(this.linebuffer);
+            }
+            this.linebuffer = newbuffer;
+        }
+    }
+
+    private void appendToLineBuffer(final byte[] src, final int off, final int len) {
+        ensureLineCapacity(len);
+        System.arraycopy(src, off, this.linebuffer, this.linelen, len);
+        this.linelen += len;
+    }
+
+    /**
+     * Appends the given number of bytes from the given buffer to the line
+     * buffer, for subclasses reading lines from a buffer of their own.
+     */
+    void appendToLineBuffer(final ByteBuffer src, final int len) {
+        ensureLineCapacity(len);
+        src.get(this.linebuffer, this.linelen, len);
+        this.linelen += len;
+    }
+
+    int getLineBufferLength() {
+        return this.linelen;
+    }
+
     private int lineFromReadBuffer(final CharArrayBuffer charbuffer, final int position)
             throws IOException {
         int pos = position;
@@ -333,13 +469,45 @@ public class SessionInputBufferImpl implements SessionInputBuffer, BufferInfo {
             pos--;
         }
         len = pos - off;
+        return appendLine(charbuffer, this.buffer, off, len);
+    }
+
+    private int appendLine(
+            final CharArrayBuffer charbuffer, final byte[] b, final int off, final int len)
+            throws IOException {
         if (this.decoder == null) {
-            charbuffer.append(this.buffer, off, len);
-        } else {
-            final ByteBuffer bbuf =  ByteBuffer.wrap(this.buffer, off, len);
-            len = appendDecoded(charbuffer, bbuf);
+            charbuffer.append(b, off, len);
+            return len;
         }
-        return len;
+        if (this.asciiCompatible && appendAscii(charbuffer, b, off, len)) {
+            return len;
+        }
+        final ByteBuffer bbuf =  ByteBuffer.wrap(b, off, len);
+        return appendDecoded(charbuffer, bbuf);
+    }
+
+    /**
+     * Widens the given bytes into the char buffer if they are all ASCII.
+     *
+     * @return <code>false</code> if a byte is not ASCII, in which case the
+     *   char buffer is left unchanged.
+     */
+    private static boolean appendAscii(
+            final CharArrayBuffer charbuffer, final byte[] b, final int off, final int len) {
+        charbuffer.ensureCapacity(len);
+        final char[] chars = charbuffer.buffer();
+        final int start = charbuffer.length();
+        int bits = 0;
+        for (int i1 = off, i2 = start; i2 < start + len; i1++, i2++) {
+            final byte ch = b[i1];
+            bits |= ch;
+            chars[i2] = (char) ch;
+        }
+        if (bits < 0) {
+            return false;
+        }
+        charbuffer.setLength(start + len);
+        return true;
     }
 
     private int appendDecoded(
@@ -371,10 +539,8 @@ public class SessionInputBufferImpl implements SessionInputBuffer, BufferInfo {
         }
         this.cbuf.flip();
         final int len = this.cbuf.remaining();
-        while (this.cbuf.hasRemaining()) {
-            charbuffer.append(this.cbuf.get());
-        }
-        this.cbuf.compact();
+        charbuffer.append(this.cbuf.array(), this.cbuf.arrayOffset() + this.cbuf.position(), len);
+        this.cbuf.clear();
         return len;
     }
 
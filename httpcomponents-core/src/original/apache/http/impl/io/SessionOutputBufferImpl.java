@@ -31,17 +31,18 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CoderResult;
 
 import original.apache.http.annotation.NotThreadSafe;
+import original.apache.http.io.BufferAllocator;
 import original.apache.http.io.BufferInfo;
 import original.apache.http.io.HttpTransportMetrics;
 import original.apache.http.io.SessionOutputBuffer;
 import original.apache.http.protocol.HTTP;
 import original.apache.http.util.Args;
 import original.apache.http.util.Asserts;
-import original.apache.http.util.ByteArrayBuffer;
 import original.apache.http.util.CharArrayBuffer;
 
 /**
@@ -51,6 +52,10 @@ import original.apache.http.util.CharArrayBuffer;
  * </p>
  * {@link #writeLine(CharArrayBuffer)} and {@link #writeLine(String)} methods
  * of this class use CR-LF as a line delimiter.
+ * <p/>
+ * The internal byte array is allocated only once there is data to buffer.
+ * If a {@link BufferAllocator} is given it is taken from it, and may be
+ * given back with {@link #recycle()} while the connection is idle.
  *
  * @since 4.3
  */
@@ -60,11 +65,15 @@ public class SessionOutputBufferImpl implements SessionOutputBuffer, BufferInfo
     private static final byte[] CRLF = new byte[] {HTTP.CR, HTTP.LF};
 
     private final HttpTransportMetricsImpl metrics;
-    private final ByteArrayBuffer buffer;
+    private final int buffersize;
     private final int fragementSizeHint;
     private final CharsetEncoder encoder;
+    private final BufferAllocator allocator;
+    private final boolean asciiCompatible;
 
     private OutputStream outstream;
+    private byte[] buffer;
+    private int bufferlen;
     private ByteBuffer bbuf;
 
     /**
@@ -77,19 +86,45 @@ public class SessionOutputBufferImpl implements SessionOutputBuffer, BufferInfo
      *   Value <code>0</code> disables fragment buffering.
      * @param charencoder charencoder to be used for encoding HTTP protocol elements.
      *   If <code>null</code> simple type cast will be used for char to byte conversion.
+     * @param allocator allocator to take the internal byte array from. If <code>null</code>
+     *   the array is allocated when first needed and kept for the lifetime of the buffer.
+     *
+     * @since 4.3.5
      */
     public SessionOutputBufferImpl(
             final HttpTransportMetricsImpl metrics,
             final int buffersize,
             final int fragementSizeHint,
-            final CharsetEncoder charencoder) {
+            final CharsetEncoder charencoder,
+            final BufferAllocator allocator) {
         super();
         Args.positive(buffersize, "Buffer size");
         Args.notNull(metrics, "HTTP transport metrcis");
         this.metrics = metrics;
-        this.buffer = new ByteArrayBuffer(buffersize);
+        this.buffersize = buffersize;
+        this.bufferlen = 0;
         this.fragementSizeHint = fragementSizeHint >= 0 ? fragementSizeHint : 0;
         this.encoder = charencoder;
+        this.allocator = allocator;
+        this.asciiCompatible = charencoder == null || isAsciiCompatible(charencoder.charset());
+    }
+
+    /**
+     * Determines whether the given charset encodes chars below 0x80 as the
+     * bytes of the same value, so that ASCII text may be narrowed rather than
+     * encoded.
+     */
+    private static boolean isAsciiCompatible(final Charset charset) {
+        final String name = charset.name();
+        return name.equals("US-ASCII") || name.equals("ISO-8859-1") || name.equals("UTF-8");
+    }
+
+    public SessionOutputBufferImpl(
+            final HttpTransportMetricsImpl metrics,
+            final int buffersize,
+            final int fragementSizeHint,
+            final CharsetEncoder charencoder) {
+        this(metrics, buffersize, fragementSizeHint, charencoder, null);
     }
 
     public SessionOutputBufferImpl(
@@ -107,17 +142,39 @@ public class SessionOutputBufferImpl implements SessionOutputBuffer, BufferInfo
     }
 
     public int capacity() {
-        return this.buffer.capacity();
+        return this.buffer != null ? this.buffer.length : this.buffersize;
     }
 
     public int length() {
-        return this.buffer.length();
+        return this.bufferlen;
     }
 
     public int available() {
         return capacity() - length();
     }
 
+    private void ensureBuffer() {
+        if (this.buffer == null) {
+            this.buffer = this.allocator != null ?
+                    this.allocator.allocate(this.buffersize) : new byte[this.buffersize];
+        }
+    }
+
+    /**
+     * Returns the internal byte array to the allocator of this buffer, unless
+     * it holds data not flushed yet, in which case it is kept. The array is
+     * taken from the allocator again once more data is to be buffered. This
+     * method has no effect if this buffer was created without an allocator.
+     *
+     * @since 4.3.5
+     */
+    public void recycle() {
+        if (this.allocator != null && this.buffer != null && this.bufferlen == 0) {
+            this.allocator.release(this.buffer);
+            this.buffer = null;
+        }
+    }
+
     private void streamWrite(final byte[] b, final int off, final int len) throws IOException {
         Asserts.notNull(outstream, "Output stream");
         this.outstream.write(b, off, len);
@@ -130,10 +187,10 @@ public class SessionOutputBufferImpl implements SessionOutputBuffer, BufferInfo
     }
 
     private void flushBuffer() throws IOException {
-        final int len = this.buffer.length();
+        final int len = this.bufferlen;
         if (len > 0) {
-            streamWrite(this.buffer.buffer(), 0, len);
-            this.buffer.clear();
+            streamWrite(this.buffer, 0, len);
+            this.bufferlen = 0;
             this.metrics.incrementBytesTransferred(len);
         }
     }
@@ -150,7 +207,7 @@ public class SessionOutputBufferImpl implements SessionOutputBuffer, BufferInfo
         // Do not want to buffer large-ish chunks
         // if the byte array is larger then MIN_CHUNK_LIMIT
         // write it directly to the output stream
-        if (len > this.fragementSizeHint || len > this.buffer.capacity()) {
+        if (len > this.fragementSizeHint || len > capacity()) {
             // flush the buffer
             flushBuffer();
             // write directly to the out stream
@@ -158,13 +215,17 @@ public class SessionOutputBufferImpl implements SessionOutputBuffer, BufferInfo
             this.metrics.incrementBytesTransferred(len);
         } else {
             // Do not let the buffer grow unnecessarily
-            final int freecapacity = this.buffer.capacity() - this.buffer.length();
+            final int freecapacity = capacity() - this.bufferlen;
             if (len > freecapacity) {
                 // flush the buffer
                 flushBuffer();
             }
             // buffer
-            this.buffer.append(b, off, len);
+            if (len > 0) {
+                ensureBuffer();
+                System.arraycopy(b, off, this.buffer, this.bufferlen, len);
+                this.bufferlen += len;
+            }
         }
     }
 
@@ -177,10 +238,11 @@ public class SessionOutputBufferImpl implements SessionOutputBuffer, BufferInfo
 
     public void write(final int b) throws IOException {
         if (this.fragementSizeHint > 0) {
-            if (this.buffer.isFull()) {
+            if (this.bufferlen == capacity()) {
                 flushBuffer();
             }
-            this.buffer.append(b);
+            ensureBuffer();
+            this.buffer[this.bufferlen++] = (byte) b;
         } else {
             flushBuffer();
             this.outstream.write(b);
@@ -227,15 +289,20 @@ public class SessionOutputBufferImpl implements SessionOutputBuffer, BufferInfo
             return;
         }
         if (this.encoder == null) {
+            final char[] chars = charbuffer.buffer();
             int off = 0;
             int remaining = charbuffer.length();
+            if (remaining > 0) {
+                ensureBuffer();
+            }
             while (remaining > 0) {
-                int chunk = this.buffer.capacity() - this.buffer.length();
+                int chunk = this.buffer.length - this.bufferlen;
                 chunk = Math.min(chunk, remaining);
-                if (chunk > 0) {
-                    this.buffer.append(charbuffer, off, chunk);
+                for (int i1 = off, i2 = this.bufferlen; i1 < off + chunk; i1++, i2++) {
+                    this.buffer[i2] = (byte) chars[i1];
                 }
-                if (this.buffer.isFull()) {
+                this.bufferlen += chunk;
+                if (this.bufferlen == this.buffer.length) {
                     flushBuffer();
                 }
                 off += chunk;
@@ -248,6 +315,54 @@ public class SessionOutputBufferImpl implements SessionOutputBuffer, BufferInfo
         write(CRLF);
     }
 
+    /**
+     * Determines whether ASCII text written to this buffer ends up as the
+     * bytes of the same value, that is, whether bytes encoded in ASCII
+     * up front may be written in place of the text.
+     */
+    boolean isAsciiCompatible() {
+        return this.asciiCompatible;
+    }
+
+    static boolean isAscii(final String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the chars of the given string without a line delimiter. ASCII
+     * text is narrowed into the buffer without going through the encoder.
+     */
+    void writeChars(final String s) throws IOException {
+        final int len = s.length();
+        if (len == 0) {
+            return;
+        }
+        if (this.encoder != null && !(this.asciiCompatible && isAscii(s))) {
+            writeEncoded(CharBuffer.wrap(s));
+            return;
+        }
+        ensureBuffer();
+        int off = 0;
+        while (off < len) {
+            if (this.bufferlen == this.buffer.length) {
+                flushBuffer();
+            }
+            final int end = Math.min(len, off + this.buffer.length - this.bufferlen);
+            final byte[] b = this.buffer;
+            int n = this.bufferlen;
+            for (int i = off; i < end; i++) {
+                b[n++] = (byte) s.charAt(i);
+            }
+            this.bufferlen = n;
+            off = end;
+        }
+    }
+
     private void writeEncoded(final CharBuffer cbuf) throws IOException {
         if (!cbuf.hasRemaining()) {
             return;
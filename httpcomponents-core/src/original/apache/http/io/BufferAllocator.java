@@ -0,0 +1,57 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.io;
+
+/**
+ * Source of the byte arrays session buffers keep their data in.
+ * <p/>
+ * Session buffers given an allocator take their arrays from it only when
+ * they have data to buffer, and give them back once the connection goes
+ * idle, so that connections kept alive do not hold buffers of their own.
+ *
+ * @since 4.3.5
+ */
+public interface BufferAllocator {
+
+    /**
+     * Returns an array of at least the given size. The content of the array
+     * is undefined.
+     *
+     * @param size the minimum size of the array.
+     * @return the array.
+     */
+    byte[] allocate(int size);
+
+    /**
+     * Takes back an array returned by {@link #allocate(int)}. The array must
+     * not be used by the caller afterwards.
+     *
+     * @param buffer the array.
+     */
+    void release(byte[] buffer);
+
+}
@@ -0,0 +1,55 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.io;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Output stream or session buffer that can send content read from a file
+ * without copying it through the Java heap, for instance with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.
+ *
+ * @since 4.3.5
+ */
+public interface FileChannelTransfer {
+
+    /**
+     * Sends <code>count</code> bytes of the given file channel starting at
+     * the given position. The position of the file channel is not changed.
+     *
+     * @param src the file channel to read from.
+     * @param position the position in the file to start at.
+     * @param count the number of bytes to send.
+     * @return <code>true</code> if the content was sent, <code>false</code>
+     *   if transfers are not supported by the underlying connection, in which
+     *   case nothing was sent and the content should be written as a stream.
+     * @throws IOException in case of an I/O error.
+     */
+    boolean transfer(FileChannel src, long position, long count) throws IOException;
+
+}
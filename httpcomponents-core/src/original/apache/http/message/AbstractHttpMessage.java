@@ -88,6 +88,26 @@ public abstract class AbstractHttpMessage implements HttpMessage {
         return this.headergroup.getAllHeaders();
     }
 
+    /**
+     * Returns the number of headers of this message.
+     *
+     * @since 4.3.5
+     */
+    public int getHeaderCount() {
+        return this.headergroup.getHeaderCount();
+    }
+
+    /**
+     * Gets the header of this message at the given position.
+     *
+     * @see HeaderGroup#getHeader(int)
+     *
+     * @since 4.3.5
+     */
+    public Header getHeader(final int index) {
+        return this.headergroup.getHeader(index);
+    }
+
     // non-javadoc, see interface HttpMessage
     public void addHeader(final Header header) {
         this.headergroup.addHeader(header);
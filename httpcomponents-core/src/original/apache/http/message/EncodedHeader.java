@@ -0,0 +1,101 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+
+package original.apache.http.message;
+
+import original.apache.http.Header;
+import original.apache.http.annotation.Immutable;
+
+/**
+ * {@link BasicHeader} that keeps the line it is written as, so that a header
+ * added to many messages, such as a default header, is not formatted and
+ * encoded again for every message.
+ * <p/>
+ * The line is kept only if the name and the value consist of ASCII
+ * characters, in which case it is the same with any ASCII compatible
+ * charset.
+ *
+ * @since 4.3.5
+ */
+@Immutable
+public class EncodedHeader extends BasicHeader {
+
+    private static final long serialVersionUID = 8573205913042738316L;
+
+    private final byte[] line;
+
+    /**
+     * Constructor with name and value
+     *
+     * @param name the header name
+     * @param value the header value
+     */
+    public EncodedHeader(final String name, final String value) {
+        super(name, value);
+        this.line = encode(name, value);
+    }
+
+    public EncodedHeader(final Header header) {
+        this(header.getName(), header.getValue());
+    }
+
+    private static byte[] encode(final String name, final String value) {
+        final int namelen = name.length();
+        final int valuelen = value != null ? value.length() : 0;
+        final byte[] b = new byte[namelen + 2 + valuelen + 2];
+        int n = 0;
+        for (int i = 0; i < namelen; i++) {
+            final char ch = name.charAt(i);
+            if (ch >= 0x80) {
+                return null;
+            }
+            b[n++] = (byte) ch;
+        }
+        b[n++] = ':';
+        b[n++] = ' ';
+        for (int i = 0; i < valuelen; i++) {
+            final char ch = value.charAt(i);
+            if (ch >= 0x80) {
+                return null;
+            }
+            b[n++] = (byte) ch;
+        }
+        b[n++] = '\r';
+        b[n] = '\n';
+        return b;
+    }
+
+    /**
+     * Returns the bytes of the header line, including the line delimiter,
+     * or <code>null</code> if the header contains non-ASCII characters.
+     * The returned array is shared and must not be modified.
+     */
+    public byte[] getEncodedLine() {
+        return this.line;
+    }
+
+}
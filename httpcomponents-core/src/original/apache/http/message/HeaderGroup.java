@@ -237,6 +237,30 @@ public class HeaderGroup implements Cloneable, Serializable {
         return headers.toArray(new Header[headers.size()]);
     }
 
+    /**
+     * Returns the number of headers contained within this group.
+     *
+     * @since 4.3.5
+     */
+    public int getHeaderCount() {
+        return this.headers.size();
+    }
+
+    /**
+     * Gets the header at the given position within this group. Together with
+     * {@link #getHeaderCount()} this allows walking the headers in order
+     * without creating an array or an iterator.
+     *
+     * @param index the position of the header, from <code>0</code> to
+     *   <code>getHeaderCount() - 1</code>
+     * @return the header
+     *
+     * @since 4.3.5
+     */
+    public Header getHeader(final int index) {
+        return this.headers.get(index);
+    }
+
     /**
      * Tests if headers with the given name are contained within this group.
      *
@@ -29,17 +29,17 @@ package original.apache.http.pool;
 import java.io.IOException;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import original.apache.http.annotation.GuardedBy;
 import original.apache.http.annotation.ThreadSafe;
 import original.apache.http.concurrent.FutureCallback;
 import original.apache.http.util.Args;
@@ -53,6 +53,33 @@ import original.apache.http.util.Asserts;
  * method on the {@link Future} object returned by the
  * {@link #lease(Object, Object, FutureCallback)} method in order for the lease operation
  * to complete.
+ * <p/>
+ * The state of each route is guarded by a lock of its own, so that lease
+ * and release operations on different routes do not contend with each other.
+ * The total number of allocated connections is bounded by an atomic counter
+ * of permits shared by all routes. No two route locks are ever held at
+ * the same time.
+ * <p/>
+ * Lease requests may be given a priority. Pending requests of a higher
+ * priority are served before those of a lower one, and a number of
+ * connections per route may be reserved for requests of a priority above
+ * zero.
+ * <p/>
+ * Each route may be guaranteed a minimum number of connections, which are
+ * not taken from the budget shared by all routes. In fair share mode,
+ * requests waiting for total capacity are served across routes by weighted
+ * deficit round robin, and idle connections are evicted from the routes
+ * that use the largest share of the budget relative to their weight first.
+ * <p/>
+ * Several pools may share a {@link PoolBudget}, in which case the maximum
+ * total applies to all of them together. Guaranteed minimums, weights and
+ * fair share scheduling apply within each pool.
+ * <p/>
+ * With thread affinity enabled, a connection released while no request is
+ * waiting is parked in a cache of the releasing thread, from which the next
+ * lease of the same thread and route takes it back with a few atomic
+ * operations and no lock held. The pool reclaims parked connections when
+ * they are needed by other requests or go idle.
  *
  * @param <T> the route type that represents the opposite endpoint of a pooled
  *   connection.
@@ -64,32 +91,82 @@ import original.apache.http.util.Asserts;
 public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
                                                implements ConnPool<T, E>, ConnPoolControl<T> {
 
-    private final Lock lock;
     private final ConnFactory<T, C> connFactory;
-    private final Map<T, RouteSpecificPool<T, C, E>> routeToPool;
-    private final Set<E> leased;
-    private final LinkedList<E> available;
-    private final LinkedList<PoolEntryFuture<E>> pending;
-    private final Map<T, Integer> maxPerRoute;
+    private final ConcurrentMap<T, RouteSpecificPool<T, C, E>> routeToPool;
+    private final ConcurrentMap<T, Integer> maxPerRoute;
+    private final ConcurrentMap<T, Integer> priorityReserve;
+    private final ConcurrentMap<T, Integer> minPerRoute;
+    private final ConcurrentMap<T, Integer> routeWeight;
+    private final Lock pendingLock;
+    @GuardedBy("pendingLock")
+    private final IntrusiveList<PoolEntryFuture<E>> pending;
+    @GuardedBy("pendingLock")
+    private final IntrusiveList<RouteSpecificPool<T, C, E>> fairQueue;
+    @GuardedBy("pendingLock")
+    private int capacityWaiterCount;
+    @GuardedBy("pendingLock")
+    private int fairQueueWeight;
+    private final PoolBudget budget;
+    private final AtomicInteger allocatedCount;
+    private final AtomicInteger leasedCount;
+    private final AtomicInteger availableCount;
+    private final AtomicInteger pendingCount;
+    private final AtomicInteger parkedCount;
+    private final ThreadLocal<Map<T, E>> affinityCache;
 
+    private volatile int capacityWaiters;
+    private volatile int validateAfterInactivity;
     private volatile boolean isShutDown;
+    private volatile boolean handOff;
+    private volatile boolean fairShare;
+    private volatile boolean threadAffinity;
     private volatile int defaultMaxPerRoute;
-    private volatile int maxTotal;
+    private volatile int defaultPriorityReserve;
 
     public AbstractConnPool(
             final ConnFactory<T, C> connFactory,
             final int defaultMaxPerRoute,
             final int maxTotal) {
+        this(connFactory, defaultMaxPerRoute, new PoolBudget(maxTotal));
+    }
+
+    /**
+     * Creates a pool that allocates connections from the given budget,
+     * together with all other pools created with it.
+     *
+     * @since 4.3.5
+     */
+    public AbstractConnPool(
+            final ConnFactory<T, C> connFactory,
+            final int defaultMaxPerRoute,
+            final PoolBudget budget) {
         super();
         this.connFactory = Args.notNull(connFactory, "Connection factory");
         this.defaultMaxPerRoute = Args.notNegative(defaultMaxPerRoute, "Max per route value");
-        this.maxTotal = Args.notNegative(maxTotal, "Max total value");
-        this.lock = new ReentrantLock();
-        this.routeToPool = new HashMap<T, RouteSpecificPool<T, C, E>>();
-        this.leased = new HashSet<E>();
-        this.available = new LinkedList<E>();
-        this.pending = new LinkedList<PoolEntryFuture<E>>();
-        this.maxPerRoute = new HashMap<T, Integer>();
+        this.budget = Args.notNull(budget, "Pool budget");
+        this.routeToPool = new ConcurrentHashMap<T, RouteSpecificPool<T, C, E>>();
+        this.maxPerRoute = new ConcurrentHashMap<T, Integer>();
+        this.priorityReserve = new ConcurrentHashMap<T, Integer>();
+        this.minPerRoute = new ConcurrentHashMap<T, Integer>();
+        this.routeWeight = new ConcurrentHashMap<T, Integer>();
+        this.pendingLock = new ReentrantLock();
+        this.pending = new IntrusiveList<PoolEntryFuture<E>>();
+        this.fairQueue = new IntrusiveList<RouteSpecificPool<T, C, E>>();
+        this.allocatedCount = budget.getAllocatedCount();
+        this.leasedCount = new AtomicInteger(0);
+        this.availableCount = new AtomicInteger(0);
+        this.pendingCount = new AtomicInteger(0);
+        this.parkedCount = new AtomicInteger(0);
+        this.affinityCache = new ThreadLocal<Map<T, E>>() {
+
+            @Override
+            protected Map<T, E> initialValue() {
+                return new HashMap<T, E>();
+            }
+
+        };
+        this.handOff = true;
+        budget.join(this);
     }
 
     /**
@@ -109,6 +186,19 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
     protected void onRelease(final E entry) {
     }
 
+    /**
+     * Checks whether a kept alive connection is still usable. This method is
+     * only called for connections that have not been used for the period
+     * set with {@link #setValidateAfterInactivity(int)}, and never with
+     * a pool lock held.
+     *
+     * @return <code>false</code> if the connection must not be reused.
+     * @since 4.3.5
+     */
+    protected boolean validate(final E entry) {
+        return true;
+    }
+
     public boolean isShutdown() {
         return this.isShutDown;
     }
@@ -121,29 +211,35 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
             return ;
         }
         this.isShutDown = true;
-        this.lock.lock();
-        try {
-            for (final E entry: this.available) {
-                entry.close();
-            }
-            for (final E entry: this.leased) {
-                entry.close();
-            }
-            for (final RouteSpecificPool<T, C, E> pool: this.routeToPool.values()) {
+        this.budget.leave(this);
+        int permits = 0;
+        for (final RouteSpecificPool<T, C, E> pool: this.routeToPool.values()) {
+            pool.getLock().lock();
+            try {
+                permits += pool.getSharedCount();
                 pool.shutdown();
+            } finally {
+                pool.getLock().unlock();
             }
-            this.routeToPool.clear();
-            this.leased.clear();
-            this.available.clear();
-        } finally {
-            this.lock.unlock();
+        }
+        this.routeToPool.clear();
+        // Other pools may share the budget
+        this.allocatedCount.addAndGet(-permits);
+        this.budget.signal(this);
+        this.leasedCount.set(0);
+        this.availableCount.set(0);
+        this.pendingCount.set(0);
+        this.parkedCount.set(0);
+        PoolEntryFuture<E> future;
+        while ((future = pollCapacityWaiter()) != null) {
+            future.wakeup();
         }
     }
 
     private RouteSpecificPool<T, C, E> getPool(final T route) {
         RouteSpecificPool<T, C, E> pool = this.routeToPool.get(route);
         if (pool == null) {
-            pool = new RouteSpecificPool<T, C, E>(route) {
+            final RouteSpecificPool<T, C, E> newPool = new RouteSpecificPool<T, C, E>(route) {
 
                 @Override
                 protected E createEntry(final C conn) {
@@ -151,11 +247,29 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
                 }
 
             };
-            this.routeToPool.put(route, pool);
+            pool = this.routeToPool.putIfAbsent(route, newPool);
+            if (pool == null) {
+                pool = newPool;
+            }
         }
         return pool;
     }
 
+    /**
+     * Returns the pool of the given route with its lock held by the caller.
+     */
+    private RouteSpecificPool<T, C, E> lockPool(final T route) {
+        for (;;) {
+            final RouteSpecificPool<T, C, E> pool = getPool(route);
+            pool.getLock().lock();
+            if (!pool.isRetired()) {
+                return pool;
+            }
+            pool.getLock().unlock();
+            this.routeToPool.remove(route, pool);
+        }
+    }
+
     /**
      * {@inheritDoc}
      * <p/>
@@ -165,18 +279,49 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
      * returned by this method in order for the lease operation to complete.
      */
     public Future<E> lease(final T route, final Object state, final FutureCallback<E> callback) {
+        return lease(route, state, 0, callback);
+    }
+
+    /**
+     * Attempts to lease a connection for the given route and with the given
+     * state from the pool with the given priority. Pending lease requests
+     * of a higher priority are served first. Requests of a priority above
+     * zero may also use the connections reserved with
+     * {@link #setPriorityReserve(Object, int)}.
+     * <p/>
+     * Please note that this class does not maintain its own pool of execution
+     * {@link Thread}s. Therefore, one <b>must</b> call {@link Future#get()}
+     * or {@link Future#get(long, TimeUnit)} method on the {@link Future}
+     * returned by this method in order for the lease operation to complete.
+     *
+     * @since 4.3.5
+     */
+    public Future<E> lease(
+            final T route, final Object state, final int priority, final FutureCallback<E> callback) {
         Args.notNull(route, "Route");
         Asserts.check(!this.isShutDown, "Connection pool shut down");
-        return new PoolEntryFuture<E>(this.lock, callback) {
+        return new PoolEntryFuture<E>(state, priority, callback) {
 
             @Override
             public E getPoolEntry(
                     final long timeout,
                     final TimeUnit tunit)
                         throws InterruptedException, TimeoutException, IOException {
-                final E entry = getPoolEntryBlocking(route, state, timeout, tunit, this);
-                onLease(entry);
-                return entry;
+                for (;;) {
+                    final E entry = getPoolEntryBlocking(route, state, timeout, tunit, this);
+                    if (isInactive(entry) && !validate(entry)) {
+                        entry.close();
+                        release(entry, false);
+                        continue;
+                    }
+                    onLease(entry);
+                    return entry;
+                }
+            }
+
+            @Override
+            protected void discard(final E entry) {
+                release(entry, true);
             }
 
         };
@@ -214,33 +359,53 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
                 (System.currentTimeMillis() + tunit.toMillis(timeout));
         }
 
-        this.lock.lock();
-        try {
-            final RouteSpecificPool<T, C, E> pool = getPool(route);
-            E entry = null;
-            while (entry == null) {
+        if (this.threadAffinity) {
+            final E entry = takeParked(route, state);
+            if (entry != null) {
+                return entry;
+            }
+        }
+
+        boolean evictable = true;
+        for (;;) {
+            boolean capacityBlocked = false;
+            boolean await = false;
+            boolean reserved = false;
+            boolean evict = false;
+            final RouteSpecificPool<T, C, E> pool = lockPool(route);
+            try {
                 Asserts.check(!this.isShutDown, "Connection pool shut down");
-                for (;;) {
+                final int maxPerRoute = getMax(route);
+                // Normal priority requests may not use up the priority reserve
+                final int limit = future.getPriority() > 0 ? Integer.MAX_VALUE : getNormalLimit(route);
+                E entry = null;
+                while (pool.getBusyCount() < limit) {
                     entry = pool.getFree(state);
                     if (entry == null) {
+                        // Connections parked by other threads are used
+                        // before new ones are created
+                        if (reclaimParked(pool)) {
+                            continue;
+                        }
                         break;
                     }
+                    this.availableCount.decrementAndGet();
+                    this.leasedCount.incrementAndGet();
                     if (entry.isClosed() || entry.isExpired(System.currentTimeMillis())) {
                         entry.close();
-                        this.available.remove(entry);
                         pool.free(entry, false);
+                        this.leasedCount.decrementAndGet();
+                        freePermit(pool);
+                        entry = null;
                     } else {
                         break;
                     }
                 }
                 if (entry != null) {
-                    this.available.remove(entry);
-                    this.leased.add(entry);
                     return entry;
                 }
 
                 // New connection is needed
-                final int maxPerRoute = getMax(route);
                 // Shrink the pool prior to allocating a new connection
                 final int excess = Math.max(0, pool.getAllocatedCount() + 1 - maxPerRoute);
                 if (excess > 0) {
@@ -250,176 +415,940 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
                             break;
                         }
                         lastUsed.close();
-                        this.available.remove(lastUsed);
                         pool.remove(lastUsed);
+                        this.availableCount.decrementAndGet();
+                        freePermit(pool);
                     }
                 }
 
-                if (pool.getAllocatedCount() < maxPerRoute) {
-                    final int totalUsed = this.leased.size();
-                    final int freeCapacity = Math.max(this.maxTotal - totalUsed, 0);
-                    if (freeCapacity > 0) {
-                        final int totalAvailable = this.available.size();
-                        if (totalAvailable > freeCapacity - 1) {
-                            if (!this.available.isEmpty()) {
-                                final E lastUsed = this.available.removeLast();
-                                lastUsed.close();
-                                final RouteSpecificPool<T, C, E> otherpool = getPool(lastUsed.getRoute());
-                                otherpool.remove(lastUsed);
+                if (pool.getAllocatedCount() < maxPerRoute && pool.getBusyCount() < limit) {
+                    if (acquirePermit(pool)) {
+                        // The connection is created once the route lock
+                        // has been released
+                        pool.reserve();
+                        reserved = true;
+                    } else {
+                        capacityBlocked = true;
+                    }
+                }
+
+                if (!reserved && (!capacityBlocked || this.fairShare || !evictable
+                        || !hasIdle())) {
+                    pool.queue(future);
+                    this.pendingCount.incrementAndGet();
+                    await = true;
+                    if (pool.getParkedCount() > 0) {
+                        // A connection of the route has been parked in the
+                        // meantime. Reclaim it and try again.
+                        pool.unqueue(future);
+                        this.pendingCount.decrementAndGet();
+                        reclaimParked(pool);
+                        continue;
+                    } else if (capacityBlocked) {
+                        addCapacityWaiter(future, pool);
+                        // Re-check after having been queued: capacity may have
+                        // been returned by another route in the meantime.
+                        if (hasCapacity(evictable)) {
+                            removeCapacityWaiter(future);
+                            if (pool.unqueue(future)) {
+                                this.pendingCount.decrementAndGet();
                             }
+                            await = false;
+                            capacityBlocked = false;
+                            if (future.takePermit()) {
+                                // A permit has been handed over in the meantime
+                                pool.reserve();
+                                reserved = true;
+                            }
+                        } else if (this.fairShare && this.availableCount.get() > 0) {
+                            // Make room by evicting an idle connection. Its permit
+                            // goes to the waiter next in turn, which may not be us.
+                            evict = true;
                         }
-                        final C conn = this.connFactory.create(route);
-                        entry = pool.add(conn);
-                        this.leased.add(entry);
-                        return entry;
                     }
                 }
+            } finally {
+                pool.getLock().unlock();
+            }
 
+            if (evict) {
+                evictIdle();
+            }
+            if (reserved) {
+                return allocateEntry(pool);
+            } else if (await) {
                 boolean success = false;
+                InterruptedException interrupted = null;
+                E delivered = null;
+                boolean granted = false;
+                boolean permitted = false;
                 try {
-                    pool.queue(future);
-                    this.pending.add(future);
                     success = future.await(deadline);
+                } catch (final InterruptedException ex) {
+                    interrupted = ex;
                 } finally {
-                    // In case of 'success', we were woken up by the
-                    // connection pool and should now have a connection
-                    // waiting for us, or else we're shutting down.
-                    // Just continue in the loop, both cases are checked.
-                    pool.unqueue(future);
-                    this.pending.remove(future);
+                    // In case of 'success', we were either handed over
+                    // a connection or a reserved slot, or woken up by the
+                    // connection pool and should re-examine it, or else
+                    // we're shutting down. Nothing can be handed over
+                    // once the future has been unqueued.
+                    if (capacityBlocked) {
+                        removeCapacityWaiter(future);
+                    }
+                    pool.getLock().lock();
+                    try {
+                        if (pool.unqueue(future)) {
+                            this.pendingCount.decrementAndGet();
+                        }
+                        delivered = future.takeDelivered();
+                        granted = future.takeGranted();
+                        permitted = future.takePermit();
+                        if (granted && interrupted != null) {
+                            rollbackReservation(pool);
+                        }
+                        if (permitted) {
+                            // A permit of the total budget has been handed over.
+                            // Use it if the route still has room, else pass it on.
+                            if (interrupted == null && !pool.isRetired() && !this.isShutDown
+                                    && pool.getAllocatedCount() < getMax(route)) {
+                                pool.reserve();
+                                granted = true;
+                            } else {
+                                releasePermit();
+                            }
+                        }
+                    } finally {
+                        pool.getLock().unlock();
+                    }
+                }
+                evictable = true;
+                if (interrupted != null) {
+                    if (delivered != null) {
+                        release(delivered, true);
+                    }
+                    throw interrupted;
+                }
+                if (delivered != null) {
+                    return delivered;
+                }
+                if (granted) {
+                    return allocateEntry(pool);
                 }
                 // check for spurious wakeup vs. timeout
                 if (!success && (deadline != null) &&
                     (deadline.getTime() <= System.currentTimeMillis())) {
-                    break;
+                    throw new TimeoutException("Timeout waiting for connection");
                 }
+            } else if (capacityBlocked) {
+                // Total capacity is exhausted but some connections are
+                // kept alive. Evict one of them with no route lock held.
+                // Should none be evictable, wait for capacity instead.
+                evictable = evictIdle() || this.budget.evictIdle(this);
             }
-            throw new TimeoutException("Timeout waiting for connection");
+        }
+    }
+
+    /**
+     * Creates a new connection for a slot reserved in the given pool. The
+     * route lock is not held while the connection is being created. Should
+     * the creation fail, the reservation is rolled back.
+     */
+    private E allocateEntry(
+            final RouteSpecificPool<T, C, E> pool) throws IOException {
+        C conn = null;
+        E entry = null;
+        try {
+            conn = this.connFactory.create(pool.getRoute());
         } finally {
-            this.lock.unlock();
+            pool.getLock().lock();
+            try {
+                if (conn != null && !this.isShutDown) {
+                    pool.unreserve();
+                    entry = pool.add(conn);
+                    this.leasedCount.incrementAndGet();
+                } else {
+                    if (conn != null) {
+                        createEntry(pool.getRoute(), conn).close();
+                    }
+                    rollbackReservation(pool);
+                }
+            } finally {
+                pool.getLock().unlock();
+            }
+        }
+        Asserts.check(entry != null, "Connection pool shut down");
+        return entry;
+    }
+
+    /**
+     * Gives up a slot reserved in the given pool. In hand-off mode the slot
+     * is passed on to the oldest waiter of the route, otherwise the permit
+     * is returned and a waiter of the route is woken up. Must be called
+     * with the route lock held.
+     */
+    private void rollbackReservation(final RouteSpecificPool<T, C, E> pool) {
+        pool.unreserve();
+        if (this.isShutDown) {
+            return;
+        }
+        if (this.handOff && pool.grant(getNormalLimit(pool.getRoute())) != null) {
+            this.pendingCount.decrementAndGet();
+            return;
+        }
+        freePermit(pool);
+        final PoolEntryFuture<E> future = pool.nextPending();
+        if (future != null) {
+            this.pendingCount.decrementAndGet();
+            future.wakeup();
         }
     }
 
     public void release(final E entry, final boolean reusable) {
-        this.lock.lock();
+        final RouteSpecificPool<T, C, E> pool = this.routeToPool.get(entry.getRoute());
+        if (pool == null) {
+            return;
+        }
+        if (reusable && this.threadAffinity && park(pool, entry)) {
+            return;
+        }
+        releaseEntry(pool, entry, reusable);
+    }
+
+    private void releaseEntry(final RouteSpecificPool<T, C, E> pool, final E entry, final boolean reusable) {
+        pool.getLock().lock();
         try {
-            if (this.leased.remove(entry)) {
-                final RouteSpecificPool<T, C, E> pool = getPool(entry.getRoute());
-                pool.free(entry, reusable);
-                if (reusable && !this.isShutDown) {
-                    this.available.addFirst(entry);
+            if (pool.isLeased(entry) && !entry.isParked()) {
+                // In fair share mode a route over its share gives up the
+                // connection in favour of the routes waiting for capacity
+                final boolean revoked = reusable && this.fairShare && this.capacityWaiters > 0
+                        && isOverShare(pool);
+                final boolean keepAlive = reusable && !revoked && !this.isShutDown;
+                final int normalLimit = getNormalLimit(pool.getRoute());
+                if (keepAlive && this.handOff && pool.handOff(entry, normalLimit) != null) {
+                    // The entry remains leased by the waiter it has been
+                    // handed over to
+                    this.pendingCount.decrementAndGet();
                     onRelease(entry);
-                } else {
-                    entry.close();
+                    return;
                 }
-                PoolEntryFuture<E> future = pool.nextPending();
-                if (future != null) {
-                    this.pending.remove(future);
+                pool.free(entry, keepAlive);
+                this.leasedCount.decrementAndGet();
+                if (keepAlive) {
+                    this.availableCount.incrementAndGet();
+                    onRelease(entry);
                 } else {
-                    future = this.pending.poll();
+                    entry.close();
+                    if (this.handOff && !revoked && !this.isShutDown && pool.grant(normalLimit) != null) {
+                        // The permit of the closed connection is passed on
+                        // to the oldest waiter of the route
+                        this.pendingCount.decrementAndGet();
+                        return;
+                    }
+                    freePermit(pool);
                 }
+                final PoolEntryFuture<E> future = pool.nextPending();
                 if (future != null) {
+                    this.pendingCount.decrementAndGet();
                     future.wakeup();
+                } else if (keepAlive) {
+                    signalCapacity();
                 }
             }
         } finally {
-            this.lock.unlock();
+            pool.getLock().unlock();
         }
     }
 
-    private int getMax(final T route) {
-        final Integer v = this.maxPerRoute.get(route);
-        if (v != null) {
-            return v.intValue();
-        } else {
-            return this.defaultMaxPerRoute;
+    /**
+     * Parks the given entry in the affinity cache of the current thread
+     * unless lease requests are pending or the thread already holds
+     * a parked entry of the same route. Called without the route lock held.
+     *
+     * @return <code>true</code> if the entry has been parked or reclaimed
+     *   by the pool in the meantime.
+     */
+    private boolean park(final RouteSpecificPool<T, C, E> pool, final E entry) {
+        if (this.isShutDown || this.pendingCount.get() > 0) {
+            return false;
+        }
+        final Map<T, E> cache = this.affinityCache.get();
+        final E previous = cache.get(entry.getRoute());
+        if (previous != null && previous.isParked()) {
+            return false;
+        }
+        if (!entry.park()) {
+            return false;
         }
+        pool.parked();
+        this.parkedCount.incrementAndGet();
+        this.leasedCount.decrementAndGet();
+        this.availableCount.incrementAndGet();
+        cache.put(entry.getRoute(), entry);
+        // A request queued in the meantime may not have seen the entry
+        if (this.pendingCount.get() > 0 && entry.unpark()) {
+            cache.remove(entry.getRoute());
+            unparked(pool);
+            return false;
+        }
+        onRelease(entry);
+        return true;
     }
 
-    public void setMaxTotal(final int max) {
-        Args.notNegative(max, "Max value");
-        this.lock.lock();
-        try {
-            this.maxTotal = max;
-        } finally {
-            this.lock.unlock();
+    /**
+     * Accounts for a parked entry taken back as leased.
+     */
+    private void unparked(final RouteSpecificPool<T, C, E> pool) {
+        pool.unparked();
+        this.parkedCount.decrementAndGet();
+        this.availableCount.decrementAndGet();
+        this.leasedCount.incrementAndGet();
+    }
+
+    /**
+     * Takes back the entry of the given route parked by the current thread
+     * if it has not been reclaimed by the pool and its state is compatible
+     * with the given one. Called without the route lock held.
+     */
+    private E takeParked(final T route, final Object state) {
+        final E entry = this.affinityCache.get().remove(route);
+        if (entry == null || this.isShutDown) {
+            return null;
+        }
+        final RouteSpecificPool<T, C, E> pool = this.routeToPool.get(route);
+        if (pool == null || !entry.unpark()) {
+            return null;
+        }
+        unparked(pool);
+        if (entry.isClosed() || entry.isExpired(System.currentTimeMillis())) {
+            entry.close();
+            releaseEntry(pool, entry, false);
+            return null;
         }
+        final Object entryState = entry.getState();
+        if (entryState != null && !entryState.equals(state)) {
+            releaseEntry(pool, entry, true);
+            return null;
+        }
+        return entry;
     }
 
-    public int getMaxTotal() {
-        this.lock.lock();
+    /**
+     * Takes the entries parked in affinity caches back into the given pool.
+     * Must be called with the route lock held.
+     *
+     * @return <code>true</code> if any entry has been reclaimed.
+     */
+    private boolean reclaimParked(final RouteSpecificPool<T, C, E> pool) {
+        if (pool.getParkedCount() == 0) {
+            return false;
+        }
+        final int reclaimed = pool.reclaimParked();
+        this.parkedCount.addAndGet(-reclaimed);
+        return reclaimed > 0;
+    }
+
+    /**
+     * Takes the entries parked in affinity caches back into the pools of
+     * all routes.
+     */
+    private void reclaimParked() {
+        if (this.parkedCount.get() == 0) {
+            return;
+        }
+        for (final RouteSpecificPool<T, C, E> pool: this.routeToPool.values()) {
+            if (pool.getParkedCount() > 0) {
+                pool.getLock().lock();
+                try {
+                    reclaimParked(pool);
+                } finally {
+                    pool.getLock().unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Enables or disables thread affinity. With thread affinity, which is
+     * off by default, a reusable connection released while no lease request
+     * is pending is parked for the releasing thread rather than returned to
+     * the pool of its route. The next lease of the same thread and route
+     * takes it back without acquiring any lock. Parked connections are
+     * reported as available and are reclaimed by the pool as soon as
+     * a lease request of another thread needs them, when idle or expired
+     * connections are closed, or when a connection needs to be evicted.
+     * At most one connection per route is parked for a thread.
+     *
+     * @since 4.3.5
+     */
+    public void setThreadAffinity(final boolean threadAffinity) {
+        this.threadAffinity = threadAffinity;
+        if (!threadAffinity) {
+            reclaimParked();
+        }
+    }
+
+    /**
+     * @since 4.3.5
+     */
+    public boolean isThreadAffinity() {
+        return this.threadAffinity;
+    }
+
+    /**
+     * Enables or disables hand-off mode. In hand-off mode, which is on by
+     * default, a released reusable connection is passed directly to the
+     * oldest pending lease request of the same route with a compatible
+     * state, and the slot of a released non-reusable connection to the
+     * oldest pending lease request of the same route, in first-in first-out
+     * order. Otherwise the waiter is merely woken up and competes for
+     * the connection with all other lease requests.
+     *
+     * @since 4.3.5
+     */
+    public void setHandOff(final boolean handOff) {
+        this.handOff = handOff;
+    }
+
+    /**
+     * @since 4.3.5
+     */
+    public boolean isHandOff() {
+        return this.handOff;
+    }
+
+    /**
+     * Returns <code>true</code> if the entry has been released to the pool
+     * before and has not been used since for longer than the period set with
+     * {@link #setValidateAfterInactivity(int)}.
+     */
+    private boolean isInactive(final E entry) {
+        final int period = this.validateAfterInactivity;
+        if (period <= 0) {
+            return false;
+        }
+        final long updated = entry.getUpdated();
+        return updated > 0 && updated + period <= System.currentTimeMillis();
+    }
+
+    /**
+     * Defines period of inactivity in milliseconds after which persistent
+     * connections must be re-validated with {@link #validate(PoolEntry)}
+     * prior to being leased. Connections used more recently are leased
+     * without validation. Non-positive value disables connection validation.
+     *
+     * @since 4.3.5
+     */
+    public void setValidateAfterInactivity(final int ms) {
+        this.validateAfterInactivity = ms;
+    }
+
+    /**
+     * @since 4.3.5
+     */
+    public int getValidateAfterInactivity() {
+        return this.validateAfterInactivity;
+    }
+
+    /**
+     * Returns the number of connections all routes may allocate beyond
+     * their guaranteed minimum.
+     */
+    private int getSharedLimit() {
+        return this.budget.getSharedMax();
+    }
+
+    /**
+     * Acquires the right to allocate one more connection in the given pool,
+     * either from the guaranteed minimum of the route or from the shared
+     * budget. Must be called with the route lock held.
+     */
+    private boolean acquirePermit(final RouteSpecificPool<T, C, E> pool) {
+        if (pool.getGuaranteedCount() < getMin(pool.getRoute())) {
+            pool.acquireGuaranteed();
+            return true;
+        }
+        for (;;) {
+            final int allocated = this.allocatedCount.get();
+            if (allocated >= getSharedLimit()) {
+                return false;
+            }
+            if (this.allocatedCount.compareAndSet(allocated, allocated + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Accounts for a connection no longer allocated in the given pool.
+     * Permits of the shared budget are given up before the guaranteed
+     * minimum. Must be called with the route lock held.
+     */
+    private void freePermit(final RouteSpecificPool<T, C, E> pool) {
+        if (pool.getAllocatedCount() < pool.getGuaranteedCount()) {
+            pool.releaseGuaranteed();
+            return;
+        }
+        releasePermit();
+    }
+
+    /**
+     * Returns a permit to the shared budget. In fair share mode the permit
+     * is handed over to the request waiting for capacity next in turn.
+     */
+    private void releasePermit() {
+        if (this.fairShare && this.capacityWaiters > 0 && grantCapacityWaiter()) {
+            return;
+        }
+        this.allocatedCount.decrementAndGet();
+        signalCapacity();
+    }
+
+    /**
+     * Determines whether a permit is free or, outside of fair share mode
+     * and if eviction is worth trying, a connection kept alive could be
+     * evicted to free one.
+     */
+    private boolean hasCapacity(final boolean evictable) {
+        return this.allocatedCount.get() < getSharedLimit()
+                || (evictable && !this.fairShare && hasIdle());
+    }
+
+    /**
+     * Determines whether the given pool holds more permits of the shared
+     * budget than its weighted share among itself and the routes waiting
+     * for capacity. Must be called with the route lock held.
+     */
+    private boolean isOverShare(final RouteSpecificPool<T, C, E> pool) {
+        final int shared = pool.getSharedCount();
+        if (shared <= 1) {
+            return false;
+        }
+        final int weight = getWeight(pool.getRoute());
+        final int others;
+        this.pendingLock.lock();
         try {
-            return this.maxTotal;
+            others = this.fairQueueWeight - (this.fairQueue.contains(pool.fairNode) ? pool.fairWeight : 0);
         } finally {
-            this.lock.unlock();
+            this.pendingLock.unlock();
         }
+        if (others <= 0) {
+            return false;
+        }
+        final int share = Math.max(1, (int) ((long) getSharedLimit() * weight / (weight + others)));
+        return shared > share;
     }
 
-    public void setDefaultMaxPerRoute(final int max) {
-        Args.notNegative(max, "Max per route value");
-        this.lock.lock();
+    private void addCapacityWaiter(final PoolEntryFuture<E> future, final RouteSpecificPool<T, C, E> pool) {
+        this.pendingLock.lock();
         try {
-            this.defaultMaxPerRoute = max;
+            if (this.fairShare) {
+                PoolEntryFuture.enqueue(pool.capacityWaiters, future.capacityNode);
+                if (!this.fairQueue.contains(pool.fairNode)) {
+                    this.fairQueue.addLast(pool.fairNode);
+                    pool.fairWeight = getWeight(pool.getRoute());
+                    this.fairQueueWeight += pool.fairWeight;
+                }
+            } else {
+                PoolEntryFuture.enqueue(this.pending, future.capacityNode);
+            }
+            this.capacityWaiterCount++;
+            this.capacityWaiters = this.capacityWaiterCount;
         } finally {
-            this.lock.unlock();
+            this.pendingLock.unlock();
         }
     }
 
-    public int getDefaultMaxPerRoute() {
-        this.lock.lock();
+    @SuppressWarnings("unchecked")
+    private void removeCapacityWaiter(final PoolEntryFuture<E> future) {
+        this.pendingLock.lock();
         try {
-            return this.defaultMaxPerRoute;
+            final IntrusiveList<PoolEntryFuture<E>> list = future.capacityNode.getList();
+            if (list != null && list.remove(future.capacityNode)) {
+                if (list != this.pending && list.isEmpty()) {
+                    final RouteSpecificPool<T, C, E> pool = (RouteSpecificPool<T, C, E>) list.getKey();
+                    leaveFairQueue(pool);
+                }
+                this.capacityWaiterCount--;
+                this.capacityWaiters = this.capacityWaiterCount;
+            }
         } finally {
-            this.lock.unlock();
+            this.pendingLock.unlock();
         }
     }
 
-    public void setMaxPerRoute(final T route, final int max) {
-        Args.notNull(route, "Route");
-        Args.notNegative(max, "Max per route value");
-        this.lock.lock();
+    /**
+     * Unlinks and returns the next request waiting for capacity. Routes
+     * with waiting requests take turns by weighted deficit round robin:
+     * each turn a route is credited its weight and served until its credit
+     * is used up. Must be called with the pending lock held.
+     */
+    private PoolEntryFuture<E> nextCapacityWaiter() {
+        PoolEntryFuture<E> future = null;
+        for (;;) {
+            final RouteSpecificPool<T, C, E> pool = this.fairQueue.getFirst();
+            if (pool == null) {
+                future = this.pending.poll();
+                break;
+            }
+            if (pool.deficit < 1) {
+                pool.deficit += getWeight(pool.getRoute());
+                continue;
+            }
+            future = pool.capacityWaiters.poll();
+            pool.deficit--;
+            if (pool.capacityWaiters.isEmpty()) {
+                leaveFairQueue(pool);
+            } else if (pool.deficit < 1) {
+                this.fairQueue.addLast(pool.fairNode);
+            }
+            break;
+        }
+        if (future != null) {
+            this.capacityWaiterCount--;
+            this.capacityWaiters = this.capacityWaiterCount;
+        }
+        return future;
+    }
+
+    private void leaveFairQueue(final RouteSpecificPool<T, C, E> pool) {
+        if (this.fairQueue.remove(pool.fairNode)) {
+            this.fairQueueWeight -= pool.fairWeight;
+        }
+        pool.deficit = 0;
+    }
+
+    private PoolEntryFuture<E> pollCapacityWaiter() {
+        this.pendingLock.lock();
         try {
-            this.maxPerRoute.put(route, Integer.valueOf(max));
+            return nextCapacityWaiter();
         } finally {
-            this.lock.unlock();
+            this.pendingLock.unlock();
         }
     }
 
-    public int getMaxPerRoute(final T route) {
-        Args.notNull(route, "Route");
-        this.lock.lock();
+    /**
+     * Hands a permit over to the next request waiting for capacity. This
+     * is done with the pending lock held, so that a waiter that has
+     * removed itself from the queue can no longer be handed a permit.
+     */
+    private boolean grantCapacityWaiter() {
+        this.pendingLock.lock();
         try {
-            return getMax(route);
+            PoolEntryFuture<E> future;
+            while ((future = nextCapacityWaiter()) != null) {
+                if (future.grantPermit()) {
+                    return true;
+                }
+            }
+            return false;
         } finally {
-            this.lock.unlock();
+            this.pendingLock.unlock();
         }
     }
 
-    public PoolStats getTotalStats() {
-        this.lock.lock();
+    /**
+     * Wakes up a request waiting for total capacity.
+     *
+     * @return <code>false</code> if no request waits for total capacity.
+     */
+    boolean signalCapacityWaiter() {
+        // Avoid the pending lock if nobody waits for total capacity
+        if (this.capacityWaiters == 0) {
+            return false;
+        }
+        final PoolEntryFuture<E> future = pollCapacityWaiter();
+        if (future != null) {
+            future.wakeup();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Wakes up a request waiting for total capacity in this pool or, should
+     * there be none, in another pool sharing the budget.
+     */
+    private void signalCapacity() {
+        if (!signalCapacityWaiter()) {
+            this.budget.signal(this);
+        }
+    }
+
+    boolean hasAvailable() {
+        return this.availableCount.get() > 0;
+    }
+
+    /**
+     * Determines whether this pool or another pool sharing the budget keeps
+     * connections alive that could be evicted to free a permit.
+     */
+    private boolean hasIdle() {
+        return hasAvailable() || this.budget.hasAvailable(this);
+    }
+
+    /**
+     * Closes the least recently used available connection of a route that
+     * holds permits of the shared budget and returns its permit. In fair
+     * share mode the route using the largest share of the budget relative
+     * to its weight is picked, otherwise the first one found.
+     *
+     * @return <code>false</code> if no connection could be evicted.
+     */
+    boolean evictIdle() {
+        reclaimParked();
+        RouteSpecificPool<T, C, E> candidate = null;
+        if (this.fairShare) {
+            double maxUsage = 0;
+            for (final RouteSpecificPool<T, C, E> pool: this.routeToPool.values()) {
+                pool.getLock().lock();
+                try {
+                    if (pool.getAvailableCount() > 0 && pool.getSharedCount() > 0) {
+                        final double usage = (double) pool.getSharedCount() / getWeight(pool.getRoute());
+                        if (usage > maxUsage) {
+                            maxUsage = usage;
+                            candidate = pool;
+                        }
+                    }
+                } finally {
+                    pool.getLock().unlock();
+                }
+            }
+            if (candidate != null && evictIdle(candidate)) {
+                return true;
+            }
+        }
+        for (final RouteSpecificPool<T, C, E> pool: this.routeToPool.values()) {
+            if (pool != candidate && evictIdle(pool)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean evictIdle(final RouteSpecificPool<T, C, E> pool) {
+        pool.getLock().lock();
         try {
-            return new PoolStats(
-                    this.leased.size(),
-                    this.pending.size(),
-                    this.available.size(),
-                    this.maxTotal);
+            final E lastUsed = pool.getLastUsed();
+            if (lastUsed != null && pool.getSharedCount() > 0) {
+                lastUsed.close();
+                pool.remove(lastUsed);
+                this.availableCount.decrementAndGet();
+                freePermit(pool);
+                return true;
+            }
+            return false;
         } finally {
-            this.lock.unlock();
+            pool.getLock().unlock();
+        }
+    }
+
+    private int getMax(final T route) {
+        final Integer v = this.maxPerRoute.get(route);
+        if (v != null) {
+            return v.intValue();
+        } else {
+            return this.defaultMaxPerRoute;
+        }
+    }
+
+    private int getReserve(final T route) {
+        final Integer v = this.priorityReserve.get(route);
+        if (v != null) {
+            return v.intValue();
+        } else {
+            return this.defaultPriorityReserve;
+        }
+    }
+
+    /**
+     * Returns the number of connections of the given route that lease
+     * requests of normal priority may keep busy at a time.
+     */
+    private int getNormalLimit(final T route) {
+        final int reserve = getReserve(route);
+        if (reserve == 0) {
+            return Integer.MAX_VALUE;
+        }
+        final int max = getMax(route);
+        return max - Math.min(max, reserve);
+    }
+
+    /**
+     * Sets the number of connections per route that only lease requests
+     * of a priority above zero may use. Requests of normal priority wait
+     * rather than keep more than the per route maximum less this reserve
+     * connections busy.
+     *
+     * @since 4.3.5
+     */
+    public void setDefaultPriorityReserve(final int reserve) {
+        Args.notNegative(reserve, "Priority reserve");
+        this.defaultPriorityReserve = reserve;
+    }
+
+    /**
+     * @since 4.3.5
+     */
+    public int getDefaultPriorityReserve() {
+        return this.defaultPriorityReserve;
+    }
+
+    /**
+     * Sets the number of connections of the given route that only lease
+     * requests of a priority above zero may use.
+     *
+     * @see #setDefaultPriorityReserve(int)
+     * @since 4.3.5
+     */
+    public void setPriorityReserve(final T route, final int reserve) {
+        Args.notNull(route, "Route");
+        Args.notNegative(reserve, "Priority reserve");
+        this.priorityReserve.put(route, Integer.valueOf(reserve));
+    }
+
+    /**
+     * @since 4.3.5
+     */
+    public int getPriorityReserve(final T route) {
+        Args.notNull(route, "Route");
+        return getReserve(route);
+    }
+
+    private int getMin(final T route) {
+        final Integer v = this.minPerRoute.get(route);
+        return v != null ? v.intValue() : 0;
+    }
+
+    private int getWeight(final T route) {
+        final Integer v = this.routeWeight.get(route);
+        return v != null ? v.intValue() : 1;
+    }
+
+    /**
+     * Guarantees the given route a minimum number of connections. Guaranteed
+     * connections are not taken from the total budget shared by all routes,
+     * which is reduced by the sum of all minimums instead. The sum should
+     * therefore not exceed the maximum total. Lowering a minimum takes effect
+     * as the connections of the route are closed.
+     *
+     * @since 4.3.5
+     */
+    public void setMinPerRoute(final T route, final int min) {
+        Args.notNull(route, "Route");
+        Args.notNegative(min, "Min per route value");
+        synchronized (this.minPerRoute) {
+            final Integer old = min > 0 ?
+                this.minPerRoute.put(route, Integer.valueOf(min)) : this.minPerRoute.remove(route);
+            this.budget.addMinimum(min - (old != null ? old.intValue() : 0));
         }
+        signalCapacity();
+    }
+
+    /**
+     * @since 4.3.5
+     */
+    public int getMinPerRoute(final T route) {
+        Args.notNull(route, "Route");
+        return getMin(route);
+    }
+
+    /**
+     * Sets the weight of the given route in fair share mode. Routes have
+     * a weight of one by default.
+     *
+     * @see #setFairShare(boolean)
+     * @since 4.3.5
+     */
+    public void setRouteWeight(final T route, final int weight) {
+        Args.notNull(route, "Route");
+        Args.positive(weight, "Route weight");
+        this.routeWeight.put(route, Integer.valueOf(weight));
+    }
+
+    /**
+     * @since 4.3.5
+     */
+    public int getRouteWeight(final T route) {
+        Args.notNull(route, "Route");
+        return getWeight(route);
+    }
+
+    /**
+     * Enables or disables fair share mode. In fair share mode, which is off
+     * by default, lease requests waiting for total capacity are served by
+     * weighted deficit round robin across routes, and a permit returned
+     * to the shared budget is handed over directly to the request next in
+     * turn. When connections kept alive need to be evicted to make room,
+     * those of the route using the largest share of the budget relative
+     * to its weight go first. This mode should be set before the pool is
+     * used.
+     *
+     * @see #setRouteWeight(Object, int)
+     * @since 4.3.5
+     */
+    public void setFairShare(final boolean fairShare) {
+        this.fairShare = fairShare;
+    }
+
+    /**
+     * @since 4.3.5
+     */
+    public boolean isFairShare() {
+        return this.fairShare;
+    }
+
+    /**
+     * Sets the maximum total number of connections. Should the pool share
+     * its budget with other pools, the maximum applies to all of them.
+     */
+    public void setMaxTotal(final int max) {
+        Args.notNegative(max, "Max value");
+        this.budget.setMax(max);
+    }
+
+    public int getMaxTotal() {
+        return this.budget.getMax();
+    }
+
+    public void setDefaultMaxPerRoute(final int max) {
+        Args.notNegative(max, "Max per route value");
+        this.defaultMaxPerRoute = max;
+    }
+
+    public int getDefaultMaxPerRoute() {
+        return this.defaultMaxPerRoute;
+    }
+
+    public void setMaxPerRoute(final T route, final int max) {
+        Args.notNull(route, "Route");
+        Args.notNegative(max, "Max per route value");
+        this.maxPerRoute.put(route, Integer.valueOf(max));
+    }
+
+    public int getMaxPerRoute(final T route) {
+        Args.notNull(route, "Route");
+        return getMax(route);
+    }
+
+    public PoolStats getTotalStats() {
+        return new PoolStats(
+                this.leasedCount.get(),
+                this.pendingCount.get(),
+                this.availableCount.get(),
+                this.budget.getMax());
     }
 
     public PoolStats getStats(final T route) {
         Args.notNull(route, "Route");
-        this.lock.lock();
+        final RouteSpecificPool<T, C, E> pool = lockPool(route);
         try {
-            final RouteSpecificPool<T, C, E> pool = getPool(route);
             return new PoolStats(
                     pool.getLeasedCount(),
                     pool.getPendingCount(),
-                    pool.getAvailableCount(),
+                    pool.getAvailableCount() + pool.getParkedCount(),
                     getMax(route));
         } finally {
-            this.lock.unlock();
+            pool.getLock().unlock();
         }
     }
 
@@ -429,21 +1358,15 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
      * @since 4.3
      */
     protected void enumAvailable(final PoolEntryCallback<T, C> callback) {
-        this.lock.lock();
-        try {
-            final Iterator<E> it = this.available.iterator();
-            while (it.hasNext()) {
-                final E entry = it.next();
-                callback.process(entry);
-                if (entry.isClosed()) {
-                    final RouteSpecificPool<T, C, E> pool = getPool(entry.getRoute());
-                    pool.remove(entry);
-                    it.remove();
-                }
+        for (final RouteSpecificPool<T, C, E> pool: this.routeToPool.values()) {
+            pool.getLock().lock();
+            try {
+                reclaimParked(pool);
+                dropAvailable(pool, pool.enumAvailable(callback));
+                purgePool(pool);
+            } finally {
+                pool.getLock().unlock();
             }
-            purgePoolMap();
-        } finally {
-            this.lock.unlock();
         }
     }
 
@@ -453,26 +1376,30 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
      * @since 4.3
      */
     protected void enumLeased(final PoolEntryCallback<T, C> callback) {
-        this.lock.lock();
-        try {
-            final Iterator<E> it = this.leased.iterator();
-            while (it.hasNext()) {
-                final E entry = it.next();
-                callback.process(entry);
+        for (final RouteSpecificPool<T, C, E> pool: this.routeToPool.values()) {
+            pool.getLock().lock();
+            try {
+                pool.enumLeased(callback);
+            } finally {
+                pool.getLock().unlock();
             }
-        } finally {
-            this.lock.unlock();
         }
     }
 
-    private void purgePoolMap() {
-        final Iterator<Map.Entry<T, RouteSpecificPool<T, C, E>>> it = this.routeToPool.entrySet().iterator();
-        while (it.hasNext()) {
-            final Map.Entry<T, RouteSpecificPool<T, C, E>> entry = it.next();
-            final RouteSpecificPool<T, C, E> pool = entry.getValue();
-            if (pool.getPendingCount() + pool.getAllocatedCount() == 0) {
-                it.remove();
-            }
+    /**
+     * Accounts for available connections dropped from a route pool.
+     */
+    private void dropAvailable(final RouteSpecificPool<T, C, E> pool, final int removed) {
+        for (int i = 0; i < removed; i++) {
+            this.availableCount.decrementAndGet();
+            freePermit(pool);
+        }
+    }
+
+    private void purgePool(final RouteSpecificPool<T, C, E> pool) {
+        if (!pool.isRetired() && pool.getPendingCount() + pool.getAllocatedCount() == 0) {
+            pool.retire();
+            this.routeToPool.remove(pool.getRoute(), pool);
         }
     }
 
@@ -490,15 +1417,16 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
             time = 0;
         }
         final long deadline = System.currentTimeMillis() - time;
-        enumAvailable(new PoolEntryCallback<T, C>() {
-
-            public void process(final PoolEntry<T, C> entry) {
-                if (entry.getUpdated() <= deadline) {
-                    entry.close();
-                }
+        for (final RouteSpecificPool<T, C, E> pool: this.routeToPool.values()) {
+            pool.getLock().lock();
+            try {
+                reclaimParked(pool);
+                dropAvailable(pool, pool.closeIdle(deadline));
+                purgePool(pool);
+            } finally {
+                pool.getLock().unlock();
             }
-
-        });
+        }
     }
 
     /**
@@ -506,26 +1434,29 @@ public abstract class AbstractConnPool<T, C, E extends PoolEntry<T, C>>
      */
     public void closeExpired() {
         final long now = System.currentTimeMillis();
-        enumAvailable(new PoolEntryCallback<T, C>() {
-
-            public void process(final PoolEntry<T, C> entry) {
-                if (entry.isExpired(now)) {
-                    entry.close();
-                }
+        for (final RouteSpecificPool<T, C, E> pool: this.routeToPool.values()) {
+            pool.getLock().lock();
+            try {
+                reclaimParked(pool);
+                dropAvailable(pool, pool.closeExpired(now));
+                purgePool(pool);
+            } finally {
+                pool.getLock().unlock();
             }
-
-        });
+        }
     }
 
     @Override
     public String toString() {
         final StringBuilder buffer = new StringBuilder();
         buffer.append("[leased: ");
-        buffer.append(this.leased);
+        buffer.append(this.leasedCount.get());
         buffer.append("][available: ");
-        buffer.append(this.available);
+        buffer.append(this.availableCount.get());
         buffer.append("][pending: ");
-        buffer.append(this.pending);
+        buffer.append(this.pendingCount.get());
+        buffer.append("][routes: ");
+        buffer.append(this.routeToPool.values());
         buffer.append("]");
         return buffer.toString();
     }
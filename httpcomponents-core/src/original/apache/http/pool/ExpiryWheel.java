@@ -0,0 +1,110 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.pool;
+
+import original.apache.http.annotation.NotThreadSafe;
+
+/**
+ * Hashed timer wheel of pool entries ordered by their expiry deadline.
+ * <p/>
+ * Entries are hashed into slots by the tick their expiry falls into, so
+ * that finding expired entries only requires looking at the slots of the
+ * ticks elapsed since the last look, rather than at every entry. Entries
+ * that expire more than a full revolution ahead share slots with nearer
+ * ones and are simply skipped until their time has come.
+ *
+ * @since 4.3.5
+ */
+@NotThreadSafe
+final class ExpiryWheel<T, C> {
+
+    private static final int SLOTS = 64;
+    private static final long TICK = 1000;
+
+    private final IntrusiveList<PoolEntry<T, C>>[] slots;
+    private long lastTick;
+
+    ExpiryWheel(final long now) {
+        super();
+        this.slots = newSlots(SLOTS);
+        for (int i = 0; i < SLOTS; i++) {
+            this.slots[i] = new IntrusiveList<PoolEntry<T, C>>();
+        }
+        this.lastTick = now / TICK - 1;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T, C> IntrusiveList<PoolEntry<T, C>>[] newSlots(final int count) {
+        return (IntrusiveList<PoolEntry<T, C>>[]) new IntrusiveList<?>[count];
+    }
+
+    /**
+     * Adds the entry according to its current expiry. Entries that never
+     * expire are not added.
+     */
+    void add(final PoolEntry<T, C> entry) {
+        final long expiry = entry.getExpiry();
+        if (expiry == Long.MAX_VALUE) {
+            return;
+        }
+        // Entries due in a tick already done with go into the next one
+        final long tick = Math.max(expiry / TICK, this.lastTick + 1);
+        this.slots[(int) (tick & (SLOTS - 1))].addLast(entry.expiryNode);
+    }
+
+    void remove(final PoolEntry<T, C> entry) {
+        final IntrusiveList<PoolEntry<T, C>> slot = entry.expiryNode.getList();
+        if (slot != null) {
+            slot.remove(entry.expiryNode);
+        }
+    }
+
+    /**
+     * Passes every entry found in the slots of the ticks elapsed up to
+     * the given time to the callback. The callback is expected to check
+     * the actual expiry of the entry and may remove it from the wheel.
+     */
+    void advance(final long now, final PoolEntryCallback<T, C> callback) {
+        final long nowTick = now / TICK;
+        final long from = Math.max(this.lastTick + 1, nowTick - SLOTS + 1);
+        for (long tick = from; tick <= nowTick; tick++) {
+            IntrusiveList.Node<PoolEntry<T, C>> node =
+                this.slots[(int) (tick & (SLOTS - 1))].getHead();
+            while (node != null) {
+                final PoolEntry<T, C> entry = node.getValue();
+                node = node.getNext();
+                callback.process(entry);
+            }
+        }
+        // Entries of the current tick may not be due yet, so that its slot
+        // is looked at again next time
+        if (nowTick - 1 > this.lastTick) {
+            this.lastTick = nowTick - 1;
+        }
+    }
+
+}
@@ -0,0 +1,233 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.pool;
+
+import original.apache.http.annotation.NotThreadSafe;
+
+/**
+ * Doubly-linked list of nodes owned by the list elements themselves. Nodes
+ * know the list they are linked into, so that adding and removing an
+ * element are constant time operations that do not allocate.
+ *
+ * @param <V> the element type.
+ * @since 4.3.5
+ */
+@NotThreadSafe
+final class IntrusiveList<V> {
+
+    /**
+     * List node of an element. An element may be linked into several lists
+     * at a time through separate nodes but each node into one list only.
+     */
+    static final class Node<V> {
+
+        private final V value;
+        private IntrusiveList<V> list;
+        private Node<V> prev;
+        private Node<V> next;
+
+        Node(final V value) {
+            super();
+            this.value = value;
+        }
+
+        V getValue() {
+            return this.value;
+        }
+
+        IntrusiveList<V> getList() {
+            return this.list;
+        }
+
+        Node<V> getNext() {
+            return this.next;
+        }
+
+        Node<V> getPrev() {
+            return this.prev;
+        }
+
+    }
+
+    private final Object key;
+    private Node<V> head;
+    private Node<V> tail;
+    private int size;
+
+    IntrusiveList(final Object key) {
+        super();
+        this.key = key;
+    }
+
+    IntrusiveList() {
+        this(null);
+    }
+
+    /**
+     * Returns the key this list is indexed by, if any.
+     */
+    Object getKey() {
+        return this.key;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    Node<V> getHead() {
+        return this.head;
+    }
+
+    Node<V> getTail() {
+        return this.tail;
+    }
+
+    V getFirst() {
+        return this.head != null ? this.head.value : null;
+    }
+
+    V getLast() {
+        return this.tail != null ? this.tail.value : null;
+    }
+
+    boolean contains(final Node<V> node) {
+        return node.list == this;
+    }
+
+    void addFirst(final Node<V> node) {
+        if (node.list != null) {
+            node.list.remove(node);
+        }
+        node.list = this;
+        node.prev = null;
+        node.next = this.head;
+        if (this.head != null) {
+            this.head.prev = node;
+        } else {
+            this.tail = node;
+        }
+        this.head = node;
+        this.size++;
+    }
+
+    void addLast(final Node<V> node) {
+        if (node.list != null) {
+            node.list.remove(node);
+        }
+        node.list = this;
+        node.next = null;
+        node.prev = this.tail;
+        if (this.tail != null) {
+            this.tail.next = node;
+        } else {
+            this.head = node;
+        }
+        this.tail = node;
+        this.size++;
+    }
+
+    /**
+     * Links the given node right after the reference node, or at the head
+     * of the list if the reference node is <code>null</code>.
+     */
+    void addAfter(final Node<V> ref, final Node<V> node) {
+        if (ref == null) {
+            addFirst(node);
+            return;
+        }
+        if (ref == this.tail) {
+            addLast(node);
+            return;
+        }
+        if (node.list != null) {
+            node.list.remove(node);
+        }
+        node.list = this;
+        node.prev = ref;
+        node.next = ref.next;
+        ref.next.prev = node;
+        ref.next = node;
+        this.size++;
+    }
+
+    /**
+     * Unlinks the given node.
+     *
+     * @return <code>false</code> if the node is not linked into this list.
+     */
+    boolean remove(final Node<V> node) {
+        if (node.list != this) {
+            return false;
+        }
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        } else {
+            this.head = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        } else {
+            this.tail = node.prev;
+        }
+        node.list = null;
+        node.prev = null;
+        node.next = null;
+        this.size--;
+        return true;
+    }
+
+    /**
+     * Unlinks and returns the first element.
+     */
+    V poll() {
+        final Node<V> node = this.head;
+        if (node == null) {
+            return null;
+        }
+        remove(node);
+        return node.value;
+    }
+
+    void clear() {
+        Node<V> node = this.head;
+        while (node != null) {
+            final Node<V> next = node.next;
+            node.list = null;
+            node.prev = null;
+            node.next = null;
+            node = next;
+        }
+        this.head = null;
+        this.tail = null;
+        this.size = 0;
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.pool;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import original.apache.http.annotation.ThreadSafe;
+import original.apache.http.util.Args;
+
+/**
+ * Total number of connections shared by one or more connection pools.
+ * <p/>
+ * Pools created with the same budget together allocate no more connections
+ * than its maximum. Each pool takes permits from a single atomic counter,
+ * so that pools sharing a budget do not share any lock. When a pool
+ * returns a permit and has no request of its own waiting for one, a request
+ * waiting in another pool is woken up. A pool running out of permits may
+ * also evict connections kept alive by the other pools.
+ *
+ * @since 4.3.5
+ */
+@ThreadSafe
+public final class PoolBudget {
+
+    private final AtomicInteger allocated;
+    private final List<AbstractConnPool<?, ?, ?>> pools;
+    private volatile int max;
+    private volatile int minimum;
+
+    public PoolBudget(final int max) {
+        super();
+        this.max = Args.notNegative(max, "Max total value");
+        this.allocated = new AtomicInteger(0);
+        this.pools = new CopyOnWriteArrayList<AbstractConnPool<?, ?, ?>>();
+    }
+
+    public int getMax() {
+        return this.max;
+    }
+
+    /**
+     * Sets the maximum total number of connections of all pools sharing
+     * this budget.
+     */
+    public void setMax(final int max) {
+        Args.notNegative(max, "Max total value");
+        this.max = max;
+        signal(null);
+    }
+
+    /**
+     * Returns the number of permits currently taken by the pools sharing
+     * this budget.
+     */
+    public int getAllocated() {
+        return this.allocated.get();
+    }
+
+    /**
+     * Returns the number of permits the pools may take beyond the minimums
+     * guaranteed to their routes.
+     */
+    int getSharedMax() {
+        return Math.max(0, this.max - this.minimum);
+    }
+
+    synchronized void addMinimum(final int delta) {
+        this.minimum += delta;
+    }
+
+    AtomicInteger getAllocatedCount() {
+        return this.allocated;
+    }
+
+    void join(final AbstractConnPool<?, ?, ?> pool) {
+        this.pools.add(pool);
+    }
+
+    void leave(final AbstractConnPool<?, ?, ?> pool) {
+        this.pools.remove(pool);
+    }
+
+    /**
+     * Wakes up a request waiting for a permit in a pool other than
+     * the given one.
+     */
+    void signal(final AbstractConnPool<?, ?, ?> source) {
+        for (final AbstractConnPool<?, ?, ?> pool: this.pools) {
+            if (pool != source && pool.signalCapacityWaiter()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Determines whether a pool other than the given one keeps connections
+     * alive that could be evicted.
+     */
+    boolean hasAvailable(final AbstractConnPool<?, ?, ?> source) {
+        for (final AbstractConnPool<?, ?, ?> pool: this.pools) {
+            if (pool != source && pool.hasAvailable()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Evicts a connection kept alive by a pool other than the given one.
+     *
+     * @return <code>false</code> if no connection could be evicted.
+     */
+    boolean evictIdle(final AbstractConnPool<?, ?, ?> source) {
+        for (final AbstractConnPool<?, ?, ?> pool: this.pools) {
+            if (pool != source && pool.hasAvailable() && pool.evictIdle()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -27,6 +27,7 @@
 package original.apache.http.pool;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import original.apache.http.annotation.GuardedBy;
 import original.apache.http.annotation.ThreadSafe;
@@ -65,6 +66,16 @@ public abstract class PoolEntry<T, C> {
 
     private volatile Object state;
 
+    // Nodes linking the entry into the lists of available entries
+    // of its route pool, guarded by the lock of the route pool
+    final IntrusiveList.Node<PoolEntry<T, C>> availableNode;
+    final IntrusiveList.Node<PoolEntry<T, C>> stateNode;
+    final IntrusiveList.Node<PoolEntry<T, C>> expiryNode;
+
+    // Set while the entry is kept in the affinity cache of the thread that
+    // released it rather than in the lists of available entries
+    private final AtomicBoolean parked;
+
     /**
      * Creates new <tt>PoolEntry</tt> instance.
      *
@@ -91,6 +102,10 @@ public abstract class PoolEntry<T, C> {
             this.validUnit = Long.MAX_VALUE;
         }
         this.expiry = this.validUnit;
+        this.availableNode = new IntrusiveList.Node<PoolEntry<T, C>>(this);
+        this.stateNode = new IntrusiveList.Node<PoolEntry<T, C>>(this);
+        this.expiryNode = new IntrusiveList.Node<PoolEntry<T, C>>(this);
+        this.parked = new AtomicBoolean(false);
     }
 
     /**
@@ -156,6 +171,22 @@ public abstract class PoolEntry<T, C> {
         return now >= this.expiry;
     }
 
+    boolean isParked() {
+        return this.parked.get();
+    }
+
+    boolean park() {
+        return this.parked.compareAndSet(false, true);
+    }
+
+    /**
+     * Takes the entry out of the affinity cache it has been parked in.
+     * Only one of the threads competing for a parked entry succeeds.
+     */
+    boolean unpark() {
+        return this.parked.compareAndSet(true, false);
+    }
+
     /**
      * Invalidates the pool entry and closes the pooled connection associated
      * with it.
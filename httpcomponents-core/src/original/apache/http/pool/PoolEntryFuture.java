@@ -34,26 +34,98 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
+import original.apache.http.annotation.GuardedBy;
 import original.apache.http.annotation.ThreadSafe;
 import original.apache.http.concurrent.FutureCallback;
 import original.apache.http.util.Args;
 
+/**
+ * Future for a pool entry.
+ * <p/>
+ * The future owns its own lock. Pools signal a waiting future through
+ * {@link #wakeup()} while holding at most the lock of a single route, so
+ * a pool lock may be held when acquiring the future lock but never the
+ * other way around. {@link #get(long, TimeUnit)} does not hold the future
+ * lock while the entry is being obtained.
+ */
 @ThreadSafe
 abstract class PoolEntryFuture<T> implements Future<T> {
 
     private final Lock lock;
+    private final Object state;
+    private final int priority;
     private final FutureCallback<T> callback;
     private final Condition condition;
     private volatile boolean cancelled;
     private volatile boolean completed;
-    private T result;
+    @GuardedBy("lock")
+    private boolean signalled;
+    @GuardedBy("lock")
+    private T delivered;
+    @GuardedBy("lock")
+    private boolean granted;
+    @GuardedBy("lock")
+    private boolean permitted;
+    private volatile T result;
+
+    // Nodes linking the future into the pending lists of its pool
+    final IntrusiveList.Node<PoolEntryFuture<T>> pendingNode;
+    final IntrusiveList.Node<PoolEntryFuture<T>> stateNode;
+    final IntrusiveList.Node<PoolEntryFuture<T>> capacityNode;
 
-    PoolEntryFuture(final Lock lock, final FutureCallback<T> callback) {
+    PoolEntryFuture(final Object state, final int priority, final FutureCallback<T> callback) {
         super();
-        this.lock = lock;
-        this.condition = lock.newCondition();
+        this.lock = new ReentrantLock();
+        this.condition = this.lock.newCondition();
+        this.state = state;
+        this.priority = priority;
         this.callback = callback;
+        this.pendingNode = new IntrusiveList.Node<PoolEntryFuture<T>>(this);
+        this.stateNode = new IntrusiveList.Node<PoolEntryFuture<T>>(this);
+        this.capacityNode = new IntrusiveList.Node<PoolEntryFuture<T>>(this);
+    }
+
+    PoolEntryFuture(final Object state, final FutureCallback<T> callback) {
+        this(state, 0, callback);
+    }
+
+    PoolEntryFuture(final FutureCallback<T> callback) {
+        this(null, 0, callback);
+    }
+
+    /**
+     * Returns the state requested by the lease operation.
+     */
+    public Object getState() {
+        return this.state;
+    }
+
+    /**
+     * Returns the priority of the lease operation. Higher values are served
+     * first.
+     */
+    public int getPriority() {
+        return this.priority;
+    }
+
+    /**
+     * Links the given node of a future into a list of futures ordered by
+     * priority, behind all futures of the same or a higher priority. Futures
+     * of equal priority are thus served in first-in first-out order, and
+     * queueing takes constant time as long as all futures are of the same
+     * priority.
+     */
+    static <T> void enqueue(
+            final IntrusiveList<PoolEntryFuture<T>> list,
+            final IntrusiveList.Node<PoolEntryFuture<T>> node) {
+        final int priority = node.getValue().getPriority();
+        IntrusiveList.Node<PoolEntryFuture<T>> ref = list.getTail();
+        while (ref != null && ref.getValue().getPriority() < priority) {
+            ref = ref.getPrev();
+        }
+        list.addAfter(ref, node);
     }
 
     public boolean cancel(final boolean mayInterruptIfRunning) {
@@ -94,45 +166,81 @@ abstract class PoolEntryFuture<T> implements Future<T> {
             final long timeout,
             final TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
         Args.notNull(unit, "Time unit");
-        this.lock.lock();
-        try {
+        synchronized (this) {
             if (this.completed) {
                 return this.result;
             }
-            this.result = getPoolEntry(timeout, unit);
-            this.completed = true;
-            if (this.callback != null) {
-                this.callback.completed(this.result);
+            final T entry;
+            try {
+                entry = getPoolEntry(timeout, unit);
+            } catch (final IOException ex) {
+                this.lock.lock();
+                try {
+                    this.completed = true;
+                    this.result = null;
+                } finally {
+                    this.lock.unlock();
+                }
+                if (this.callback != null) {
+                    this.callback.failed(ex);
+                }
+                throw new ExecutionException(ex);
             }
-            return result;
-        } catch (final IOException ex) {
-            this.completed = true;
-            this.result = null;
-            if (this.callback != null) {
-                this.callback.failed(ex);
+            this.lock.lock();
+            try {
+                if (!this.cancelled) {
+                    this.result = entry;
+                    this.completed = true;
+                    if (this.callback != null) {
+                        this.callback.completed(entry);
+                    }
+                    return entry;
+                }
+            } finally {
+                this.lock.unlock();
             }
-            throw new ExecutionException(ex);
-        } finally {
-            this.lock.unlock();
+            // Cancelled while the entry was being obtained
+            discard(entry);
+            throw new InterruptedException("Operation interrupted");
         }
     }
 
     protected abstract T getPoolEntry(
             long timeout, TimeUnit unit) throws IOException, InterruptedException, TimeoutException;
 
+    /**
+     * Disposes of an entry that has been obtained after the future
+     * has been cancelled.
+     */
+    protected void discard(final T entry) {
+    }
+
+    /**
+     * Waits until this future is signalled through {@link #wakeup()}, gets
+     * cancelled or the deadline passes. A signal delivered before this method
+     * is entered is not lost.
+     *
+     * @return <code>false</code> if the deadline has passed,
+     *   <code>true</code> otherwise.
+     */
     public boolean await(final Date deadline) throws InterruptedException {
         this.lock.lock();
         try {
             if (this.cancelled) {
                 throw new InterruptedException("Operation interrupted");
             }
-            final boolean success;
-            if (deadline != null) {
-                success = this.condition.awaitUntil(deadline);
-            } else {
-                this.condition.await();
-                success = true;
+            boolean success = true;
+            while (!this.signalled && !this.cancelled) {
+                if (deadline != null) {
+                    success = this.condition.awaitUntil(deadline);
+                    if (!success) {
+                        break;
+                    }
+                } else {
+                    this.condition.await();
+                }
             }
+            this.signalled = false;
             if (this.cancelled) {
                 throw new InterruptedException("Operation interrupted");
             }
@@ -143,9 +251,118 @@ abstract class PoolEntryFuture<T> implements Future<T> {
 
     }
 
+    /**
+     * Hands the given entry over to the waiting lease operation.
+     *
+     * @return <code>false</code> if this future has been cancelled or
+     *   has already been handed something over.
+     */
+    public boolean deliver(final T entry) {
+        this.lock.lock();
+        try {
+            if (this.cancelled || this.delivered != null || this.granted || this.permitted) {
+                return false;
+            }
+            this.delivered = entry;
+            this.signalled = true;
+            this.condition.signalAll();
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Hands a slot reserved for a new connection over to the waiting
+     * lease operation.
+     *
+     * @return <code>false</code> if this future has been cancelled or
+     *   has already been handed something over.
+     */
+    public boolean grant() {
+        this.lock.lock();
+        try {
+            if (this.cancelled || this.delivered != null || this.granted || this.permitted) {
+                return false;
+            }
+            this.granted = true;
+            this.signalled = true;
+            this.condition.signalAll();
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Hands a permit of the total connection budget over to the waiting
+     * lease operation. Unlike {@link #grant()}, no slot is reserved in the
+     * route pool of the lease operation.
+     *
+     * @return <code>false</code> if this future has been cancelled or
+     *   has already been handed something over.
+     */
+    public boolean grantPermit() {
+        this.lock.lock();
+        try {
+            if (this.cancelled || this.delivered != null || this.granted || this.permitted) {
+                return false;
+            }
+            this.permitted = true;
+            this.signalled = true;
+            this.condition.signalAll();
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns and clears the entry handed over by {@link #deliver(Object)}.
+     */
+    public T takeDelivered() {
+        this.lock.lock();
+        try {
+            final T entry = this.delivered;
+            this.delivered = null;
+            return entry;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns and clears the flag set by {@link #grant()}.
+     */
+    public boolean takeGranted() {
+        this.lock.lock();
+        try {
+            final boolean b = this.granted;
+            this.granted = false;
+            return b;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns and clears the flag set by {@link #grantPermit()}.
+     */
+    public boolean takePermit() {
+        this.lock.lock();
+        try {
+            final boolean b = this.permitted;
+            this.permitted = false;
+            return b;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
     public void wakeup() {
         this.lock.lock();
         try {
+            this.signalled = true;
             this.condition.signalAll();
         } finally {
             this.lock.unlock();
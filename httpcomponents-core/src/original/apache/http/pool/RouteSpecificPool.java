@@ -26,29 +26,76 @@
  */
 package original.apache.http.pool;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
+import original.apache.http.annotation.GuardedBy;
 import original.apache.http.annotation.NotThreadSafe;
 import original.apache.http.util.Args;
 import original.apache.http.util.Asserts;
 
+/**
+ * Pool of connections of a single route.
+ * <p/>
+ * Available entries and pending futures are kept in intrusive lists, most
+ * recently used entries first and futures by priority, oldest first within
+ * the same priority. Both are additionally
+ * indexed by state, so that all operations but shutdown and enumeration
+ * take constant time regardless of the size of the pool. Available entries
+ * with an expiry deadline are also tracked by an {@link ExpiryWheel}.
+ * <p/>
+ * Entries parked in the affinity cache of a thread remain in the set of
+ * leased entries, but are counted as neither leased nor busy. They are
+ * parked and taken back without the lock held, and reclaimed by the pool
+ * with the lock held.
+ */
 @NotThreadSafe
 abstract class RouteSpecificPool<T, C, E extends PoolEntry<T, C>> {
 
     private final T route;
+    private final Lock lock;
     private final Set<E> leased;
-    private final LinkedList<E> available;
-    private final LinkedList<PoolEntryFuture<E>> pending;
+    private final IntrusiveList<PoolEntry<T, C>> available;
+    private final Map<Object, IntrusiveList<PoolEntry<T, C>>> availableByState;
+    private final ExpiryWheel<T, C> expiryWheel;
+    private final IntrusiveList<PoolEntryFuture<E>> pending;
+    private final Map<Object, IntrusiveList<PoolEntryFuture<E>>> pendingByState;
+    private final AtomicInteger parked;
+
+    @GuardedBy("lock")
+    private int reserved;
+
+    @GuardedBy("lock")
+    private int guaranteed;
+
+    // Fair share scheduling state, guarded by the pending lock of the parent pool
+    final IntrusiveList.Node<RouteSpecificPool<T, C, E>> fairNode;
+    final IntrusiveList<PoolEntryFuture<E>> capacityWaiters;
+    int deficit;
+    int fairWeight;
+
+    @GuardedBy("lock")
+    private boolean retired;
 
     RouteSpecificPool(final T route) {
         super();
         this.route = route;
+        this.lock = new ReentrantLock();
         this.leased = new HashSet<E>();
-        this.available = new LinkedList<E>();
-        this.pending = new LinkedList<PoolEntryFuture<E>>();
+        this.available = new IntrusiveList<PoolEntry<T, C>>();
+        this.availableByState = new HashMap<Object, IntrusiveList<PoolEntry<T, C>>>();
+        this.expiryWheel = new ExpiryWheel<T, C>(System.currentTimeMillis());
+        this.pending = new IntrusiveList<PoolEntryFuture<E>>();
+        this.pendingByState = new HashMap<Object, IntrusiveList<PoolEntryFuture<E>>>();
+        this.parked = new AtomicInteger(0);
+        this.fairNode = new IntrusiveList.Node<RouteSpecificPool<T, C, E>>(this);
+        this.capacityWaiters = new IntrusiveList<PoolEntryFuture<E>>(this);
     }
 
     protected abstract E createEntry(C conn);
@@ -57,8 +104,28 @@ abstract class RouteSpecificPool<T, C, E extends PoolEntry<T, C>> {
         return route;
     }
 
+    /**
+     * Returns the lock guarding the state of this pool. All other methods
+     * of this class must be called with the lock held.
+     */
+    public final Lock getLock() {
+        return this.lock;
+    }
+
+    /**
+     * Returns <code>true</code> if this pool has been dropped from the route
+     * map of its parent pool and must no longer be used.
+     */
+    public boolean isRetired() {
+        return this.retired;
+    }
+
+    public void retire() {
+        this.retired = true;
+    }
+
     public int getLeasedCount() {
-        return this.leased.size();
+        return this.leased.size() - this.parked.get();
     }
 
     public int getPendingCount() {
@@ -70,46 +137,201 @@ abstract class RouteSpecificPool<T, C, E extends PoolEntry<T, C>> {
     }
 
     public int getAllocatedCount() {
-        return this.available.size() + this.leased.size();
+        return this.available.size() + this.leased.size() + this.reserved;
+    }
+
+    /**
+     * Returns the number of connections leased or being created.
+     */
+    public int getBusyCount() {
+        return getLeasedCount() + this.reserved;
+    }
+
+    /**
+     * Returns the number of entries parked in the affinity caches of
+     * threads. May be called without the lock held.
+     */
+    public int getParkedCount() {
+        return this.parked.get();
+    }
+
+    /**
+     * Accounts for a leased entry the caller has parked. May be called
+     * without the lock held.
+     */
+    public void parked() {
+        this.parked.incrementAndGet();
+    }
+
+    /**
+     * Accounts for a parked entry the caller has taken back as leased.
+     * May be called without the lock held.
+     */
+    public void unparked() {
+        this.parked.decrementAndGet();
+    }
+
+    /**
+     * Takes all entries parked in affinity caches back into the list of
+     * available entries.
+     *
+     * @return number of entries reclaimed.
+     */
+    public int reclaimParked() {
+        int reclaimed = 0;
+        final Iterator<E> it = this.leased.iterator();
+        while (it.hasNext() && this.parked.get() > 0) {
+            final E entry = it.next();
+            if (entry.isParked() && entry.unpark()) {
+                this.parked.decrementAndGet();
+                it.remove();
+                insertAvailable(entry);
+                reclaimed++;
+            }
+        }
+        return reclaimed;
+    }
+
+    /**
+     * Returns the number of allocated connections covered by the guaranteed
+     * minimum of the route rather than by permits of the total budget.
+     */
+    public int getGuaranteedCount() {
+        return this.guaranteed;
+    }
+
+    public void acquireGuaranteed() {
+        this.guaranteed++;
+    }
+
+    public void releaseGuaranteed() {
+        Asserts.check(this.guaranteed > 0, "No guaranteed connection has been allocated");
+        this.guaranteed--;
+    }
+
+    /**
+     * Returns the number of allocated connections that hold permits of
+     * the total budget.
+     */
+    public int getSharedCount() {
+        return getAllocatedCount() - this.guaranteed;
+    }
+
+    /**
+     * Returns the number of connections being created for this route.
+     */
+    public int getReservedCount() {
+        return this.reserved;
+    }
+
+    /**
+     * Reserves a slot for a connection that is about to be created
+     * without the pool lock being held.
+     */
+    public void reserve() {
+        this.reserved++;
+    }
+
+    public void unreserve() {
+        Asserts.check(this.reserved > 0, "No connection slot has been reserved");
+        this.reserved--;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E cast(final PoolEntry<T, C> entry) {
+        return (E) entry;
+    }
+
+    private void addAvailable(final E entry) {
+        final Object state = entry.getState();
+        IntrusiveList<PoolEntry<T, C>> list = this.availableByState.get(state);
+        if (list == null) {
+            list = new IntrusiveList<PoolEntry<T, C>>(state);
+            this.availableByState.put(state, list);
+        }
+        list.addFirst(entry.stateNode);
+        this.available.addFirst(entry.availableNode);
+        this.expiryWheel.add(entry);
+    }
+
+    /**
+     * Links an entry released some time ago into the lists of available
+     * entries by the time it was last updated, keeping them ordered newest
+     * first as {@link #closeIdle(long)} relies on.
+     */
+    private void insertAvailable(final E entry) {
+        final Object state = entry.getState();
+        IntrusiveList<PoolEntry<T, C>> list = this.availableByState.get(state);
+        if (list == null) {
+            list = new IntrusiveList<PoolEntry<T, C>>(state);
+            this.availableByState.put(state, list);
+        }
+        insertByUpdated(list, entry.stateNode);
+        insertByUpdated(this.available, entry.availableNode);
+        this.expiryWheel.add(entry);
+    }
+
+    private static <T, C> void insertByUpdated(
+            final IntrusiveList<PoolEntry<T, C>> list,
+            final IntrusiveList.Node<PoolEntry<T, C>> node) {
+        final long updated = node.getValue().getUpdated();
+        IntrusiveList.Node<PoolEntry<T, C>> ref = list.getTail();
+        while (ref != null && ref.getValue().getUpdated() < updated) {
+            ref = ref.getPrev();
+        }
+        list.addAfter(ref, node);
+    }
+
+    private boolean removeAvailable(final PoolEntry<T, C> entry) {
+        if (!this.available.remove(entry.availableNode)) {
+            return false;
+        }
+        final IntrusiveList<PoolEntry<T, C>> list = entry.stateNode.getList();
+        if (list != null) {
+            list.remove(entry.stateNode);
+            if (list.isEmpty()) {
+                this.availableByState.remove(list.getKey());
+            }
+        }
+        this.expiryWheel.remove(entry);
+        return true;
+    }
+
+    private E takeAvailable(final Object state) {
+        final IntrusiveList<PoolEntry<T, C>> list = this.availableByState.get(state);
+        if (list == null) {
+            return null;
+        }
+        final E entry = cast(list.getFirst());
+        removeAvailable(entry);
+        this.leased.add(entry);
+        return entry;
     }
 
     public E getFree(final Object state) {
         if (!this.available.isEmpty()) {
             if (state != null) {
-                final Iterator<E> it = this.available.iterator();
-                while (it.hasNext()) {
-                    final E entry = it.next();
-                    if (state.equals(entry.getState())) {
-                        it.remove();
-                        this.leased.add(entry);
-                        return entry;
-                    }
-                }
-            }
-            final Iterator<E> it = this.available.iterator();
-            while (it.hasNext()) {
-                final E entry = it.next();
-                if (entry.getState() == null) {
-                    it.remove();
-                    this.leased.add(entry);
+                final E entry = takeAvailable(state);
+                if (entry != null) {
                     return entry;
                 }
             }
+            return takeAvailable(null);
         }
         return null;
     }
 
+    public boolean isLeased(final E entry) {
+        return this.leased.contains(entry);
+    }
+
     public E getLastUsed() {
-        if (!this.available.isEmpty()) {
-            return this.available.getLast();
-        } else {
-            return null;
-        }
+        return cast(this.available.getLast());
     }
 
     public boolean remove(final E entry) {
         Args.notNull(entry, "Pool entry");
-        if (!this.available.remove(entry)) {
+        if (!removeAvailable(entry)) {
             if (!this.leased.remove(entry)) {
                 return false;
             }
@@ -122,7 +344,7 @@ abstract class RouteSpecificPool<T, C, E extends PoolEntry<T, C>> {
         final boolean found = this.leased.remove(entry);
         Asserts.check(found, "Entry %s has not been leased from this pool", entry);
         if (reusable) {
-            this.available.addFirst(entry);
+            addAvailable(entry);
         }
     }
 
@@ -136,32 +358,187 @@ abstract class RouteSpecificPool<T, C, E extends PoolEntry<T, C>> {
         if (future == null) {
             return;
         }
-        this.pending.add(future);
+        final Object state = future.getState();
+        IntrusiveList<PoolEntryFuture<E>> list = this.pendingByState.get(state);
+        if (list == null) {
+            list = new IntrusiveList<PoolEntryFuture<E>>(state);
+            this.pendingByState.put(state, list);
+        }
+        PoolEntryFuture.enqueue(list, future.stateNode);
+        PoolEntryFuture.enqueue(this.pending, future.pendingNode);
     }
 
     public PoolEntryFuture<E> nextPending() {
-        return this.pending.poll();
+        final PoolEntryFuture<E> future = this.pending.getFirst();
+        if (future != null) {
+            unqueue(future);
+        }
+        return future;
     }
 
-    public void unqueue(final PoolEntryFuture<E> future) {
+    /**
+     * Hands the given entry over to the first pending future whose state
+     * is compatible with that of the entry. The entry remains leased.
+     * Futures of normal priority are skipped over unless fewer than
+     * <code>normalLimit</code> connections would be busy without the entry.
+     *
+     * @return the future the entry has been handed over to or
+     *   <code>null</code> if there is none.
+     */
+    public PoolEntryFuture<E> handOff(final E entry, final int normalLimit) {
+        final boolean normalAllowed = getBusyCount() - 1 < normalLimit;
+        final Object state = entry.getState();
+        final IntrusiveList<PoolEntryFuture<E>> list;
+        if (state == null) {
+            list = this.pending;
+        } else {
+            list = this.pendingByState.get(state);
+            if (list == null) {
+                return null;
+            }
+        }
+        // Cancelled futures are skipped over until they unqueue themselves
+        IntrusiveList.Node<PoolEntryFuture<E>> node = list.getHead();
+        while (node != null) {
+            final PoolEntryFuture<E> future = node.getValue();
+            node = node.getNext();
+            if (future.getPriority() <= 0 && !normalAllowed) {
+                break;
+            }
+            if (future.deliver(entry)) {
+                unqueue(future);
+                return future;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reserves a slot on behalf of the first pending future. Futures of
+     * normal priority are skipped over unless fewer than
+     * <code>normalLimit</code> connections are busy.
+     *
+     * @return the future the slot has been granted to or
+     *   <code>null</code> if there is none.
+     */
+    public PoolEntryFuture<E> grant(final int normalLimit) {
+        final boolean normalAllowed = getBusyCount() < normalLimit;
+        IntrusiveList.Node<PoolEntryFuture<E>> node = this.pending.getHead();
+        while (node != null) {
+            final PoolEntryFuture<E> future = node.getValue();
+            node = node.getNext();
+            if (future.getPriority() <= 0 && !normalAllowed) {
+                break;
+            }
+            if (future.grant()) {
+                unqueue(future);
+                this.reserved++;
+                return future;
+            }
+        }
+        return null;
+    }
+
+    public boolean unqueue(final PoolEntryFuture<E> future) {
         if (future == null) {
-            return;
+            return false;
         }
+        if (!this.pending.remove(future.pendingNode)) {
+            return false;
+        }
+        final IntrusiveList<PoolEntryFuture<E>> list = future.stateNode.getList();
+        if (list != null) {
+            list.remove(future.stateNode);
+            if (list.isEmpty()) {
+                this.pendingByState.remove(list.getKey());
+            }
+        }
+        return true;
+    }
 
-        this.pending.remove(future);
+    /**
+     * Enumerates available entries, dropping those closed by the callback.
+     *
+     * @return number of entries dropped.
+     */
+    public int enumAvailable(final PoolEntryCallback<T, C> callback) {
+        int removed = 0;
+        IntrusiveList.Node<PoolEntry<T, C>> node = this.available.getHead();
+        while (node != null) {
+            final PoolEntry<T, C> entry = node.getValue();
+            node = node.getNext();
+            callback.process(entry);
+            if (entry.isClosed()) {
+                removeAvailable(entry);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Closes and drops available entries that have expired by the given
+     * time. Only the entries due according to the expiry wheel are looked at.
+     *
+     * @return number of entries dropped.
+     */
+    public int closeExpired(final long now) {
+        final int before = this.available.size();
+        this.expiryWheel.advance(now, new PoolEntryCallback<T, C>() {
+
+            public void process(final PoolEntry<T, C> entry) {
+                if (entry.isExpired(now)) {
+                    removeAvailable(entry);
+                    entry.close();
+                }
+            }
+
+        });
+        return before - this.available.size();
+    }
+
+    /**
+     * Closes and drops available entries last updated no later than
+     * the given deadline. Available entries are kept in the order they have
+     * been released in, so only the least recently used ones are looked at.
+     *
+     * @return number of entries dropped.
+     */
+    public int closeIdle(final long deadline) {
+        int removed = 0;
+        for (;;) {
+            final PoolEntry<T, C> entry = this.available.getLast();
+            if (entry == null || entry.getUpdated() > deadline) {
+                break;
+            }
+            removeAvailable(entry);
+            entry.close();
+            removed++;
+        }
+        return removed;
+    }
+
+    public void enumLeased(final PoolEntryCallback<T, C> callback) {
+        for (final E entry: this.leased) {
+            if (!entry.isParked()) {
+                callback.process(entry);
+            }
+        }
     }
 
     public void shutdown() {
-        for (final PoolEntryFuture<E> future: this.pending) {
+        this.retired = true;
+        PoolEntryFuture<E> future;
+        while ((future = nextPending()) != null) {
             future.cancel(true);
         }
-        this.pending.clear();
-        for (final E entry: this.available) {
+        PoolEntry<T, C> entry;
+        while ((entry = this.available.getFirst()) != null) {
+            removeAvailable(entry);
             entry.close();
         }
-        this.available.clear();
-        for (final E entry: this.leased) {
-            entry.close();
+        for (final E leasedEntry: this.leased) {
+            leasedEntry.close();
         }
         this.leased.clear();
     }
@@ -172,9 +549,11 @@ abstract class RouteSpecificPool<T, C, E extends PoolEntry<T, C>> {
         buffer.append("[route: ");
         buffer.append(this.route);
         buffer.append("][leased: ");
-        buffer.append(this.leased.size());
+        buffer.append(getLeasedCount());
         buffer.append("][available: ");
-        buffer.append(this.available.size());
+        buffer.append(this.available.size() + this.parked.get());
+        buffer.append("][reserved: ");
+        buffer.append(this.reserved);
         buffer.append("][pending: ");
         buffer.append(this.pending.size());
         buffer.append("]");
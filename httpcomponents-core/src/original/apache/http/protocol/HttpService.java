@@ -46,6 +46,7 @@ import original.apache.http.annotation.Immutable;
 import original.apache.http.entity.ByteArrayEntity;
 import original.apache.http.impl.DefaultConnectionReuseStrategy;
 import original.apache.http.impl.DefaultHttpResponseFactory;
+import original.apache.http.io.BufferRecycler;
 import original.apache.http.params.HttpParams;
 import original.apache.http.util.Args;
 import original.apache.http.util.EncodingUtils;
@@ -363,6 +364,9 @@ public class HttpService {
 
         if (!this.connStrategy.keepAlive(response, context)) {
             conn.close();
+        } else if (conn instanceof BufferRecycler) {
+            // Do not hold on to the session buffers until the next request
+            ((BufferRecycler) conn).recycleBuffers();
         }
     }
 
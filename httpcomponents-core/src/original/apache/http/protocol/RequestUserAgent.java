@@ -33,6 +33,7 @@ import original.apache.http.HttpException;
 import original.apache.http.HttpRequest;
 import original.apache.http.HttpRequestInterceptor;
 import original.apache.http.annotation.Immutable;
+import original.apache.http.message.EncodedHeader;
 import original.apache.http.params.CoreProtocolPNames;
 import original.apache.http.params.HttpParams;
 import original.apache.http.util.Args;
@@ -47,11 +48,12 @@ import original.apache.http.util.Args;
 @Immutable
 public class RequestUserAgent implements HttpRequestInterceptor {
 
-    private final String userAgent;
+    private final EncodedHeader userAgentHeader;
 
     public RequestUserAgent(final String userAgent) {
         super();
-        this.userAgent = userAgent;
+        // The same header is added to every request, encoded only once
+        this.userAgentHeader = userAgent != null ? new EncodedHeader(HTTP.USER_AGENT, userAgent) : null;
     }
 
     public RequestUserAgent() {
@@ -67,11 +69,10 @@ public class RequestUserAgent implements HttpRequestInterceptor {
             if (params != null) {
                 s = (String) params.getParameter(CoreProtocolPNames.USER_AGENT);
             }
-            if (s == null) {
-                s = this.userAgent;
-            }
             if (s != null) {
                 request.addHeader(HTTP.USER_AGENT, s);
+            } else if (this.userAgentHeader != null) {
+                request.addHeader(this.userAgentHeader);
             }
         }
     }
@@ -0,0 +1,337 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package original.apache.http.pool;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestConnPool {
+
+    static class LocalConnection {
+
+        private volatile boolean open = true;
+
+        public void close() {
+            this.open = false;
+        }
+
+        public boolean isOpen() {
+            return this.open;
+        }
+
+    }
+
+    static class LocalConnFactory implements ConnFactory<String, LocalConnection> {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        public LocalConnection create(final String route) throws IOException {
+            this.count.incrementAndGet();
+            return new LocalConnection();
+        }
+
+        public int getCount() {
+            return this.count.get();
+        }
+
+    }
+
+    static class LocalPoolEntry extends PoolEntry<String, LocalConnection> {
+
+        public LocalPoolEntry(final String route, final LocalConnection conn) {
+            super(null, route, conn);
+        }
+
+        @Override
+        public void close() {
+            getConnection().close();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return !getConnection().isOpen();
+        }
+
+    }
+
+    static class LocalConnPool extends AbstractConnPool<String, LocalConnection, LocalPoolEntry> {
+
+        public LocalConnPool(
+                final ConnFactory<String, LocalConnection> connFactory,
+                final int defaultMaxPerRoute, final int maxTotal) {
+            super(connFactory, defaultMaxPerRoute, maxTotal);
+        }
+
+        @Override
+        protected LocalPoolEntry createEntry(final String route, final LocalConnection conn) {
+            return new LocalPoolEntry(route, conn);
+        }
+
+    }
+
+    static class LeaseThread extends Thread {
+
+        private final Future<LocalPoolEntry> future;
+
+        private volatile LocalPoolEntry entry;
+        private volatile Exception ex;
+
+        LeaseThread(final Future<LocalPoolEntry> future) {
+            super();
+            this.future = future;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                this.entry = this.future.get(5, TimeUnit.SECONDS);
+            } catch (final Exception ex) {
+                this.ex = ex;
+            }
+        }
+
+        public LocalPoolEntry getEntry() {
+            return this.entry;
+        }
+
+        public Exception getException() {
+            return this.ex;
+        }
+
+    }
+
+    private static LocalPoolEntry lease(final LocalConnPool pool, final String route) throws Exception {
+        return pool.lease(route, null).get(1, TimeUnit.SECONDS);
+    }
+
+    private static void release(final LocalConnPool pool, final LocalPoolEntry entry) {
+        entry.updateExpiry(0, TimeUnit.MILLISECONDS);
+        pool.release(entry, true);
+    }
+
+    private static void awaitPending(final LocalConnPool pool, final int pending) throws Exception {
+        for (int i = 0; i < 500 && pool.getTotalStats().getPending() != pending; i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(pending, pool.getTotalStats().getPending());
+    }
+
+    @Test
+    public void testLeaseRelease() throws Exception {
+        final LocalConnFactory connFactory = new LocalConnFactory();
+        final LocalConnPool pool = new LocalConnPool(connFactory, 2, 10);
+
+        final LocalPoolEntry entry1 = lease(pool, "somehost");
+        final LocalPoolEntry entry2 = lease(pool, "somehost");
+        final LocalPoolEntry entry3 = lease(pool, "otherhost");
+        Assert.assertEquals(3, connFactory.getCount());
+        Assert.assertEquals(3, pool.getTotalStats().getLeased());
+        Assert.assertEquals(2, pool.getStats("somehost").getLeased());
+
+        release(pool, entry1);
+        pool.release(entry2, false);
+        release(pool, entry3);
+        Assert.assertTrue(entry2.isClosed());
+        Assert.assertEquals(0, pool.getTotalStats().getLeased());
+        Assert.assertEquals(2, pool.getTotalStats().getAvailable());
+        Assert.assertEquals(1, pool.getStats("somehost").getAvailable());
+
+        final LocalPoolEntry entry4 = lease(pool, "somehost");
+        Assert.assertSame(entry1, entry4);
+        Assert.assertEquals(3, connFactory.getCount());
+        release(pool, entry4);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testLeaseTimeoutWhenExhausted() throws Exception {
+        final LocalConnPool pool = new LocalConnPool(new LocalConnFactory(), 1, 10);
+
+        final LocalPoolEntry entry1 = lease(pool, "somehost");
+        final Future<LocalPoolEntry> future = pool.lease("somehost", null);
+        try {
+            future.get(50, TimeUnit.MILLISECONDS);
+            Assert.fail("TimeoutException should have been thrown");
+        } catch (final TimeoutException expected) {
+        }
+        Assert.assertEquals(0, pool.getTotalStats().getPending());
+        Assert.assertEquals(1, pool.getTotalStats().getLeased());
+        release(pool, entry1);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testReleaseHandsOffToWaiter() throws Exception {
+        final LocalConnFactory connFactory = new LocalConnFactory();
+        final LocalConnPool pool = new LocalConnPool(connFactory, 1, 10);
+
+        final LocalPoolEntry entry1 = lease(pool, "somehost");
+        final LeaseThread t = new LeaseThread(pool.lease("somehost", null));
+        t.start();
+        awaitPending(pool, 1);
+
+        release(pool, entry1);
+        t.join(5000);
+        Assert.assertNull(t.getException());
+        Assert.assertSame(entry1, t.getEntry());
+        Assert.assertEquals(1, connFactory.getCount());
+        Assert.assertEquals(1, pool.getTotalStats().getLeased());
+        Assert.assertEquals(0, pool.getTotalStats().getAvailable());
+        Assert.assertEquals(0, pool.getTotalStats().getPending());
+        release(pool, entry1);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testCloseIdle() throws Exception {
+        final LocalConnPool pool = new LocalConnPool(new LocalConnFactory(), 2, 10);
+
+        final LocalPoolEntry entry1 = lease(pool, "somehost");
+        final LocalPoolEntry entry2 = lease(pool, "somehost");
+        release(pool, entry1);
+        Thread.sleep(200);
+        release(pool, entry2);
+
+        pool.closeIdle(100, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(entry1.isClosed());
+        Assert.assertFalse(entry2.isClosed());
+        Assert.assertEquals(1, pool.getTotalStats().getAvailable());
+
+        pool.closeIdle(0, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(entry2.isClosed());
+        Assert.assertEquals(0, pool.getTotalStats().getAvailable());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testCloseIdleReclaimsParked() throws Exception {
+        final LocalConnPool pool = new LocalConnPool(new LocalConnFactory(), 2, 10);
+        pool.setThreadAffinity(true);
+
+        final LocalPoolEntry entry1 = lease(pool, "somehost");
+        final LocalPoolEntry entry2 = lease(pool, "somehost");
+        // The first entry is parked with this thread, the second one
+        // goes back to the route as the thread already holds an entry
+        release(pool, entry1);
+        Thread.sleep(200);
+        release(pool, entry2);
+        Assert.assertEquals(2, pool.getTotalStats().getAvailable());
+
+        pool.closeIdle(100, TimeUnit.MILLISECONDS);
+        Assert.assertTrue(entry1.isClosed());
+        Assert.assertFalse(entry2.isClosed());
+        Assert.assertEquals(1, pool.getTotalStats().getAvailable());
+
+        final LocalPoolEntry entry3 = lease(pool, "somehost");
+        Assert.assertSame(entry2, entry3);
+        release(pool, entry3);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testCloseExpired() throws Exception {
+        final LocalConnPool pool = new LocalConnPool(new LocalConnFactory(), 2, 10);
+
+        final LocalPoolEntry entry1 = lease(pool, "somehost");
+        final LocalPoolEntry entry2 = lease(pool, "somehost");
+        entry1.updateExpiry(1, TimeUnit.MILLISECONDS);
+        pool.release(entry1, true);
+        entry2.updateExpiry(60, TimeUnit.SECONDS);
+        pool.release(entry2, true);
+        Thread.sleep(50);
+
+        pool.closeExpired();
+        Assert.assertTrue(entry1.isClosed());
+        Assert.assertFalse(entry2.isClosed());
+        Assert.assertEquals(1, pool.getTotalStats().getAvailable());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testShutdownWhileLeased() throws Exception {
+        final LocalConnPool pool = new LocalConnPool(new LocalConnFactory(), 1, 10);
+
+        final LocalPoolEntry entry1 = lease(pool, "somehost");
+        final LocalPoolEntry entry2 = lease(pool, "otherhost");
+        release(pool, entry2);
+        final LeaseThread t = new LeaseThread(pool.lease("somehost", null));
+        t.start();
+        awaitPending(pool, 1);
+
+        pool.shutdown();
+        Assert.assertTrue(pool.isShutdown());
+        Assert.assertTrue(entry1.isClosed());
+        Assert.assertTrue(entry2.isClosed());
+
+        t.join(5000);
+        Assert.assertFalse(t.isAlive());
+        Assert.assertNull(t.getEntry());
+        Assert.assertNotNull(t.getException());
+
+        // Releasing a connection leased before the shutdown is a no-op
+        release(pool, entry1);
+        Assert.assertTrue(entry1.isClosed());
+        Assert.assertEquals(0, pool.getTotalStats().getAvailable());
+
+        try {
+            pool.lease("somehost", null);
+            Assert.fail("IllegalStateException should have been thrown");
+        } catch (final IllegalStateException expected) {
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void testLeaseFailure() throws Exception {
+        final ConnFactory<String, LocalConnection> connFactory = new ConnFactory<String, LocalConnection>() {
+
+            public LocalConnection create(final String route) throws IOException {
+                throw new IOException("Oppsie");
+            }
+
+        };
+        final LocalConnPool pool = new LocalConnPool(connFactory, 2, 10);
+        try {
+            pool.lease("somehost", null).get();
+            Assert.fail("ExecutionException should have been thrown");
+        } catch (final ExecutionException expected) {
+            Assert.assertTrue(expected.getCause() instanceof IOException);
+        }
+        Assert.assertEquals(0, pool.getTotalStats().getLeased());
+        Assert.assertEquals(0, pool.getTotalStats().getAvailable());
+        pool.shutdown();
+    }
+
+}